@@ -23,6 +23,7 @@ import org.entcore.auth.controllers.AuthController;
 import org.entcore.auth.controllers.ConfigurationController;
 import org.entcore.auth.controllers.SamlController;
 import org.entcore.auth.security.AuthResourcesProvider;
+import org.entcore.auth.security.PasswordHashing;
 import org.entcore.auth.security.SamlValidator;
 import org.entcore.auth.services.ConfigurationService;
 import org.entcore.auth.services.impl.DefaultConfigurationService;
@@ -54,6 +55,12 @@ public class Auth extends BaseServer {
 		super.start();
 		setDefaultResourceFilter(new AuthResourcesProvider(new Neo(vertx, eb, container.logger())));
 
+		final int hashingInstances = config.getInteger("password-hashing-instances",
+				Runtime.getRuntime().availableProcessors());
+		PasswordHashing.getInstance().deploy(container, eb, hashingInstances,
+				config.getInteger("password-hashing-max-pending", 200),
+				config.getLong("password-hashing-timeout", 30000l));
+
 		final UserAuthAccount userAuthAccount = new DefaultUserAuthAccount(vertx, container);
 		final EventStore eventStore = EventStoreFactory.getFactory().getEventStore(Auth.class.getSimpleName());
 
@@ -68,7 +68,6 @@ import jp.eisbahn.oauth2.server.fetcher.clientcredential.ClientCredentialFetcher
 import jp.eisbahn.oauth2.server.granttype.GrantHandlerProvider;
 import jp.eisbahn.oauth2.server.granttype.impl.DefaultGrantHandlerProvider;
 import jp.eisbahn.oauth2.server.models.AuthInfo;
-import jp.eisbahn.oauth2.server.models.Request;
 
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
@@ -83,6 +82,7 @@ import org.vertx.java.core.spi.cluster.ClusterManager;
 import org.vertx.java.platform.Container;
 import org.entcore.auth.oauth.HttpServerRequestAdapter;
 import org.entcore.auth.oauth.JsonRequestAdapter;
+import org.entcore.auth.oauth.AccessTokenCache;
 import org.entcore.auth.oauth.OAuthDataHandler;
 import org.entcore.auth.oauth.OAuthDataHandlerFactory;
 import org.entcore.auth.users.UserAuthAccount;
@@ -117,6 +117,7 @@ public class AuthController extends BaseController {
 			Map<String, fr.wseduc.webutils.security.SecuredAction> securedActions) {
 		super.init(vertx, container, rm, securedActions);
 		oauthDataFactory = new OAuthDataHandlerFactory(Neo4j.getInstance(), MongoDb.getInstance());
+		AccessTokenCache.getInstance().init(vertx, container.config().getObject("oauth-token-cache"));
 		GrantHandlerProvider grantHandlerProvider = new DefaultGrantHandlerProvider();
 		ClientCredentialFetcher clientCredentialFetcher = new ClientCredentialFetcherImpl();
 		token = new Token();
@@ -204,11 +205,15 @@ public class AuthController extends BaseController {
 
 			@Override
 			protected void handle() {
-				Request req = new HttpServerRequestAdapter(request);
+				final HttpServerRequestAdapter req = new HttpServerRequestAdapter(request);
 				token.handleRequest(req, new Handler<Response>() {
 
 					@Override
 					public void handle(Response response) {
+						if (req.isTemporarilyUnavailable()) {
+							renderJson(request, new JsonObject().putString("error", "temporarily_unavailable"), 503);
+							return;
+						}
 						renderJson(request, new JsonObject(response.getBody()), response.getCode());
 					}
 				});
@@ -300,7 +305,8 @@ public class AuthController extends BaseController {
 					callBack.append(container.config()
 							.getObject("authenticationServer").getString("loginCallback"));
 				}
-				DataHandler data = oauthDataFactory.create(new HttpServerRequestAdapter(request));
+				final HttpServerRequestAdapter adapter = new HttpServerRequestAdapter(request);
+				DataHandler data = oauthDataFactory.create(adapter);
 				final String login = request.formAttributes().get("email");
 				final String password = request.formAttributes().get("password");
 				data.getUserId(login, password, new Handler<String>() {
@@ -346,6 +352,10 @@ public class AuthController extends BaseController {
 											public void handle(Boolean passIsResetCode) {
 												if(passIsResetCode){
 													redirect(request, "/auth/reset/"+password+"?login="+login);
+												} else if (adapter.isTemporarilyUnavailable()) {
+													trace.info("Connexion impossible (surcharge) pour l'utilisateur " + login);
+													request.response().setStatusCode(503);
+													loginResult(request, "auth.error.temporarilyUnavailable", c);
 												} else {
 													trace.info("Erreur de connexion pour l'utilisateur " + login);
 													loginResult(request, "auth.error.authenticationFailed", c);
@@ -476,6 +486,10 @@ public class AuthController extends BaseController {
 			message.reply(new JsonObject());
 			return;
 		}
+		if ("tokenCacheStats".equals(message.body().getString("action"))) {
+			message.reply(AccessTokenCache.getInstance().stats().putString("status", "ok"));
+			return;
+		}
 		validToken(message);
 	}
 
@@ -0,0 +1,194 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.auth.oauth;
+
+import jp.eisbahn.oauth2.server.models.AccessToken;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local cache of the access tokens read by {@link OAuthDataHandler#getAccessToken}.
+ * An entry never outlives its token. Revoked tokens are evicted on every node through
+ * the {@link #INVALIDATION_ADDRESS} publication.
+ */
+public class AccessTokenCache {
+
+	public static final String INVALIDATION_ADDRESS = "auth.oauth.tokens.invalidate";
+	private static final int DEFAULT_MAX_SIZE = 10000;
+	private static final long DEFAULT_TTL = 5 * 60 * 1000;
+	private static final Logger log = LoggerFactory.getLogger(AccessTokenCache.class);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private Map<String, Entry> entries;
+	private EventBus eb;
+	private int maxSize;
+	private long ttl;
+	private boolean enabled = false;
+
+	private static final class Entry {
+		final String authId;
+		final long createdOn;
+		final long expiresIn;
+		final long expire;
+
+		private Entry(String authId, long createdOn, long expiresIn, long expire) {
+			this.authId = authId;
+			this.createdOn = createdOn;
+			this.expiresIn = expiresIn;
+			this.expire = expire;
+		}
+	}
+
+	private AccessTokenCache() {}
+
+	private static class AccessTokenCacheHolder {
+		private static final AccessTokenCache instance = new AccessTokenCache();
+	}
+
+	public static AccessTokenCache getInstance() {
+		return AccessTokenCacheHolder.instance;
+	}
+
+	public synchronized void init(Vertx vertx, JsonObject config) {
+		if (enabled) {
+			return;
+		}
+		final JsonObject conf = (config != null) ? config : new JsonObject();
+		if (!conf.getBoolean("enabled", true)) {
+			return;
+		}
+		maxSize = conf.getInteger("max-size", DEFAULT_MAX_SIZE);
+		ttl = conf.getLong("ttl", DEFAULT_TTL);
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+		eb = vertx.eventBus();
+		eb.registerHandler(INVALIDATION_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				String authId = message.body().getString("authId");
+				if (authId != null) {
+					invalidateLocal(authId);
+				}
+			}
+		});
+		enabled = true;
+		log.info("OAuth access token cache enabled : max-size " + maxSize + ", ttl " + ttl + " ms.");
+	}
+
+	public AccessToken get(String token) {
+		if (!enabled || token == null) {
+			return null;
+		}
+		Entry e;
+		synchronized (this) {
+			e = entries.get(token);
+			if (e != null && e.expire <= System.currentTimeMillis()) {
+				entries.remove(token);
+				e = null;
+			}
+		}
+		if (e == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		AccessToken t = new AccessToken();
+		t.setAuthId(e.authId);
+		t.setToken(token);
+		t.setCreatedOn(new Date(e.createdOn));
+		t.setExpiresIn(e.expiresIn);
+		return t;
+	}
+
+	public void put(AccessToken t) {
+		if (!enabled || t == null || t.getToken() == null || t.getCreatedOn() == null) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		final long createdOn = t.getCreatedOn().getTime();
+		final long expire = Math.min(createdOn + t.getExpiresIn() * 1000L, now + ttl);
+		if (expire <= now) {
+			return;
+		}
+		Entry e = new Entry(t.getAuthId(), createdOn, t.getExpiresIn(), expire);
+		synchronized (this) {
+			entries.put(t.getToken(), e);
+		}
+	}
+
+	/**
+	 * Evicts the tokens of the authorization on all the nodes.
+	 */
+	public void invalidate(String authId) {
+		if (!enabled || authId == null) {
+			return;
+		}
+		invalidateLocal(authId);
+		eb.publish(INVALIDATION_ADDRESS, new JsonObject().putString("authId", authId));
+	}
+
+	private void invalidateLocal(String authId) {
+		synchronized (this) {
+			Iterator<Entry> it = entries.values().iterator();
+			while (it.hasNext()) {
+				if (authId.equals(it.next().authId)) {
+					it.remove();
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public JsonObject stats() {
+		int size = 0;
+		if (enabled) {
+			synchronized (this) {
+				size = entries.size();
+			}
+		}
+		final long h = hits.get();
+		final long m = misses.get();
+		return new JsonObject()
+				.putBoolean("enabled", enabled)
+				.putNumber("size", size)
+				.putNumber("hits", h)
+				.putNumber("misses", m)
+				.putNumber("hitRatio", (h + m > 0) ? (double) h / (h + m) : 0d)
+				.putNumber("invalidations", invalidations.get());
+	}
+
+}
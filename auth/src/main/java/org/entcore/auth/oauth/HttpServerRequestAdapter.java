@@ -30,11 +30,24 @@ import jp.eisbahn.oauth2.server.models.Request;
 public class HttpServerRequestAdapter implements Request {
 
 	private final HttpServerRequest request;
+	private boolean temporarilyUnavailable = false;
 
 	public HttpServerRequestAdapter(HttpServerRequest request) {
 		this.request = request;
 	}
 
+	/**
+	 * @return true if the credentials could not be checked (password hashing overloaded or
+	 * unavailable) : the request must be answered with a temporary error, not invalid credentials.
+	 */
+	public boolean isTemporarilyUnavailable() {
+		return temporarilyUnavailable;
+	}
+
+	public void setTemporarilyUnavailable(boolean temporarilyUnavailable) {
+		this.temporarilyUnavailable = temporarilyUnavailable;
+	}
+
 	@Override
 	public String getParameter(String name) {
 		return request.formAttributes().get(name);
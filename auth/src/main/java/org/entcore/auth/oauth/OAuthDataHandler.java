@@ -24,6 +24,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.security.Md5;
 import fr.wseduc.webutils.security.Sha256;
 import jp.eisbahn.oauth2.server.async.Handler;
@@ -32,6 +33,7 @@ import jp.eisbahn.oauth2.server.models.AccessToken;
 import jp.eisbahn.oauth2.server.models.AuthInfo;
 import jp.eisbahn.oauth2.server.models.Request;
 
+import org.entcore.auth.security.PasswordHashing;
 import org.entcore.common.neo4j.Neo4j;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
@@ -39,7 +41,6 @@ import org.vertx.java.core.json.JsonObject;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import fr.wseduc.webutils.security.BCrypt;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
 
@@ -105,10 +106,9 @@ public class OAuthDataHandler extends DataHandler {
 					JsonArray result = res.body().getArray("result");
 					if ("ok".equals(res.body().getString("status")) &&
 							result != null && result.size() == 1) {
-						JsonObject r = result.get(0);
+						final JsonObject r = result.get(0);
 						String dbPassword;
 						if (r != null && (dbPassword = r.getString("password")) != null && !r.getBoolean("blockedProfile", false)) {
-							boolean success = false;
 							String hash = null;
 							try {
 								switch (dbPassword.length()) {
@@ -119,18 +119,25 @@ public class OAuthDataHandler extends DataHandler {
 										hash = Sha256.hash(password);
 										break;
 									default: // BCrypt
-										success = BCrypt.checkpw(password, dbPassword);
-								}
-								if (!success && hash != null) {
-									success = !dbPassword.trim().isEmpty() && dbPassword.equalsIgnoreCase(hash);
-									if (success) {
-										upgradeOldPassword(username, password);
-									}
+										PasswordHashing.getInstance().checkpw(password, dbPassword,
+												new org.vertx.java.core.Handler<Either<String, Boolean>>() {
+											@Override
+											public void handle(Either<String, Boolean> success) {
+												if (success.isLeft() && getRequest() instanceof HttpServerRequestAdapter) {
+													((HttpServerRequestAdapter) getRequest()).setTemporarilyUnavailable(true);
+												}
+												handler.handle(success.isRight() && Boolean.TRUE.equals(success.right().getValue()) ?
+														r.getString("userId") : null);
+											}
+										});
+										return;
 								}
 							} catch (NoSuchAlgorithmException e) {
 								log.error(e.getMessage(), e);
 							}
+							boolean success = hash != null && !dbPassword.trim().isEmpty() && dbPassword.equalsIgnoreCase(hash);
 							if (success) {
+								upgradeOldPassword(username, password);
 								handler.handle(r.getString("userId"));
 							} else {
 								handler.handle(null);
@@ -149,31 +156,40 @@ public class OAuthDataHandler extends DataHandler {
 	}
 
 	private void upgradeOldPassword(final String username, String password) {
-		String query =
-				"MATCH (u:User {login: {login}}) SET u.password = {password} " +
-				"RETURN u.id as id, HEAD(u.profiles) as profile ";
-		JsonObject params = new JsonObject()
-				.putString("login", username)
-				.putString("password", BCrypt.hashpw(password, BCrypt.gensalt()));
-		neo.execute(query, params, new org.vertx.java.core.Handler<Message<JsonObject>>() {
+		PasswordHashing.getInstance().hashpw(password, new org.vertx.java.core.Handler<String>() {
 			@Override
-			public void handle(Message<JsonObject> event) {
-				if (!"ok".equals(event.body().getString("status"))) {
-					log.error("Error updating old password for user " + username + " : " + event.body().getString("message"));
-				} else if (event.body().getArray("result") != null && event.body().getArray("result").size() == 1) {
-					// welcome message
-					JsonObject message = new JsonObject()
-							.putString("userId", event.body().getArray("result").<JsonObject>get(0).getString("id"))
-							.putString("profile", event.body().getArray("result").<JsonObject>get(0).getString("profile"))
-							.putObject("request", new JsonObject()
-									.putObject("headers", new JsonObject()
-													.putString("Accept-Language", getRequest().getHeader("Accept-Language"))
-													.putString("Host", getRequest().getHeader("Host"))
-													.putString("X-Forwarded-Host", getRequest().getHeader("X-Forwarded-Host"))
-									)
-							);
-					neo.getEventBus().publish("send.welcome.message", message);
+			public void handle(String hashedPassword) {
+				if (hashedPassword == null) {
+					log.error("Error hashing upgraded password for user " + username);
+					return;
 				}
+				String query =
+						"MATCH (u:User {login: {login}}) SET u.password = {password} " +
+						"RETURN u.id as id, HEAD(u.profiles) as profile ";
+				JsonObject params = new JsonObject()
+						.putString("login", username)
+						.putString("password", hashedPassword);
+				neo.execute(query, params, new org.vertx.java.core.Handler<Message<JsonObject>>() {
+					@Override
+					public void handle(Message<JsonObject> event) {
+						if (!"ok".equals(event.body().getString("status"))) {
+							log.error("Error updating old password for user " + username + " : " + event.body().getString("message"));
+						} else if (event.body().getArray("result") != null && event.body().getArray("result").size() == 1) {
+							// welcome message
+							JsonObject message = new JsonObject()
+									.putString("userId", event.body().getArray("result").<JsonObject>get(0).getString("id"))
+									.putString("profile", event.body().getArray("result").<JsonObject>get(0).getString("profile"))
+									.putObject("request", new JsonObject()
+											.putObject("headers", new JsonObject()
+															.putString("Accept-Language", getRequest().getHeader("Accept-Language"))
+															.putString("Host", getRequest().getHeader("Host"))
+															.putString("X-Forwarded-Host", getRequest().getHeader("X-Forwarded-Host"))
+											)
+									);
+							neo.getEventBus().publish("send.welcome.message", message);
+						}
+					}
+				});
 			}
 		});
 	}
@@ -285,6 +301,7 @@ public class OAuthDataHandler extends DataHandler {
 						});
 					} else { // revoke existing token and code with same authId
 						mongo.delete(ACCESS_TOKEN_COLLECTION, query);
+						AccessTokenCache.getInstance().invalidate(authInfo.getId());
 						mongo.delete(AUTH_INFO_COLLECTION,
 								new JsonObject().putString("_id", authInfo.getId()));
 						handler.handle(null);
@@ -398,6 +415,11 @@ public class OAuthDataHandler extends DataHandler {
 	@Override
 	public void getAccessToken(String token, final Handler<AccessToken> handler) {
 		if (token != null && !token.trim().isEmpty()) {
+			final AccessToken cached = AccessTokenCache.getInstance().get(token);
+			if (cached != null) {
+				handler.handle(cached);
+				return;
+			}
 			JsonObject query = new JsonObject()
 			.putString("token", token);
 			mongo.findOne(ACCESS_TOKEN_COLLECTION, query, new org.vertx.java.core.Handler<Message<JsonObject>>() {
@@ -412,6 +434,7 @@ public class OAuthDataHandler extends DataHandler {
 						t.setToken(r.getString("token"));
 						t.setCreatedOn(MongoDb.parseIsoDate(r.getObject("createdOn")));
 						t.setExpiresIn(r.getInteger("expiresIn"));
+						AccessTokenCache.getInstance().put(t);
 						handler.handle(t);
 					} else {
 						handler.handle(null);
@@ -0,0 +1,187 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2015
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.auth.security;
+
+import fr.wseduc.webutils.Either;
+import fr.wseduc.webutils.security.BCrypt;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+import org.vertx.java.platform.Container;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends BCrypt operations to the PasswordHashingWorker instances.
+ * The number of pending operations is bounded : over the limit, checks answer {@link #OVERLOADED}
+ * and hashes are null, so a login storm is rejected instead of piling up. Until the workers are
+ * deployed, operations run in the caller thread.
+ */
+public class PasswordHashing {
+
+	public static final String ADDRESS = "auth.password.hashing";
+	public static final String OVERLOADED = "password.hashing.overloaded";
+	public static final String UNAVAILABLE = "password.hashing.unavailable";
+	private static final Logger log = LoggerFactory.getLogger(PasswordHashing.class);
+
+	private static final long DEFAULT_TIMEOUT = 30 * 1000;
+
+	private volatile EventBus eb;
+	private int maxPending;
+	private long timeout = DEFAULT_TIMEOUT;
+	private final AtomicBoolean deploying = new AtomicBoolean(false);
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicInteger maxPendingReached = new AtomicInteger();
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	private PasswordHashing() {}
+
+	private static class PasswordHashingHolder {
+		private static final PasswordHashing instance = new PasswordHashing();
+	}
+
+	public static PasswordHashing getInstance() {
+		return PasswordHashingHolder.instance;
+	}
+
+	/**
+	 * Deploys the workers once for all the instances of the module (they share this singleton),
+	 * operations are sent to them once they are all registered.
+	 */
+	public void deploy(Container container, final EventBus eb, int instances, final int maxPending, long timeout) {
+		if (!deploying.compareAndSet(false, true)) {
+			return;
+		}
+		this.timeout = timeout;
+		container.deployWorkerVerticle(PasswordHashingWorker.class.getName(), new JsonObject(), instances,
+				false, new AsyncResultHandler<String>() {
+			@Override
+			public void handle(AsyncResult<String> ar) {
+				if (ar.succeeded()) {
+					init(eb, maxPending);
+				} else {
+					log.error("Error deploying password hashing workers, hashing stays in the caller thread.",
+							ar.cause());
+				}
+			}
+		});
+	}
+
+	public void init(EventBus eb, int maxPending) {
+		this.maxPending = maxPending;
+		this.eb = eb;
+	}
+
+	/**
+	 * @param handler receives whether the password matches, or {@link #OVERLOADED} when the queue is
+	 * full and {@link #UNAVAILABLE} when the workers fail or time out : neither means a wrong password.
+	 */
+	public void checkpw(String password, String hash, final Handler<Either<String, Boolean>> handler) {
+		if (eb == null) {
+			handler.handle(new Either.Right<String, Boolean>(BCrypt.checkpw(password, hash)));
+			return;
+		}
+		if (!acquire()) {
+			handler.handle(new Either.Left<String, Boolean>(OVERLOADED));
+			return;
+		}
+		JsonObject m = new JsonObject()
+				.putString("action", "checkpw")
+				.putString("password", password)
+				.putString("hash", hash);
+		eb.sendWithTimeout(ADDRESS, m, timeout, new Handler<AsyncResult<Message<JsonObject>>>() {
+			@Override
+			public void handle(AsyncResult<Message<JsonObject>> ar) {
+				release();
+				if (ar.succeeded() && "ok".equals(ar.result().body().getString("status"))) {
+					handler.handle(new Either.Right<String, Boolean>(ar.result().body().getBoolean("result", false)));
+				} else {
+					log.error("Error checking password : " + errorMessage(ar));
+					handler.handle(new Either.Left<String, Boolean>(UNAVAILABLE));
+				}
+			}
+		});
+	}
+
+	public void hashpw(String password, final Handler<String> handler) {
+		if (eb == null) {
+			handler.handle(BCrypt.hashpw(password, BCrypt.gensalt()));
+			return;
+		}
+		if (!acquire()) {
+			handler.handle(null);
+			return;
+		}
+		JsonObject m = new JsonObject()
+				.putString("action", "hashpw")
+				.putString("password", password);
+		eb.sendWithTimeout(ADDRESS, m, timeout, new Handler<AsyncResult<Message<JsonObject>>>() {
+			@Override
+			public void handle(AsyncResult<Message<JsonObject>> ar) {
+				release();
+				if (ar.succeeded() && "ok".equals(ar.result().body().getString("status"))) {
+					handler.handle(ar.result().body().getString("result"));
+				} else {
+					log.error("Error hashing password : " + errorMessage(ar));
+					handler.handle(null);
+				}
+			}
+		});
+	}
+
+	private static String errorMessage(AsyncResult<Message<JsonObject>> ar) {
+		return ar.failed() ? ar.cause().getMessage() : ar.result().body().getString("message");
+	}
+
+	private boolean acquire() {
+		final int p = pending.incrementAndGet();
+		if (p > maxPending) {
+			pending.decrementAndGet();
+			rejected.incrementAndGet();
+			log.warn("Password hashing queue is full (" + maxPending + " pending operations).");
+			return false;
+		}
+		int max;
+		while ((max = maxPendingReached.get()) < p && !maxPendingReached.compareAndSet(max, p));
+		return true;
+	}
+
+	private void release() {
+		pending.decrementAndGet();
+		processed.incrementAndGet();
+	}
+
+	public JsonObject stats() {
+		return new JsonObject()
+				.putNumber("pending", pending.get())
+				.putNumber("maxPendingReached", maxPendingReached.get())
+				.putNumber("processed", processed.get())
+				.putNumber("rejected", rejected.get());
+	}
+
+}
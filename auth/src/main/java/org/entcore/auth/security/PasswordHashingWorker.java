@@ -0,0 +1,68 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2015
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.auth.security;
+
+import fr.wseduc.webutils.security.BCrypt;
+import org.vertx.java.busmods.BusModBase;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Worker verticle hashing and checking passwords with BCrypt, to keep
+ * these CPU bound operations off the event loops.
+ */
+public class PasswordHashingWorker extends BusModBase implements Handler<Message<JsonObject>> {
+
+	@Override
+	public void start() {
+		super.start();
+		vertx.eventBus().registerLocalHandler(PasswordHashing.ADDRESS, this);
+	}
+
+	@Override
+	public void handle(Message<JsonObject> message) {
+		final String password = message.body().getString("password");
+		if (password == null) {
+			sendError(message, "invalid.password");
+			return;
+		}
+		try {
+			switch (message.body().getString("action", "")) {
+				case "checkpw":
+					final String hash = message.body().getString("hash");
+					if (hash == null) {
+						sendError(message, "invalid.hash");
+						return;
+					}
+					sendOK(message, new JsonObject().putBoolean("result", BCrypt.checkpw(password, hash)));
+					break;
+				case "hashpw":
+					sendOK(message, new JsonObject().putString("result", BCrypt.hashpw(password, BCrypt.gensalt())));
+					break;
+				default:
+					sendError(message, "invalid.action");
+			}
+		} catch (RuntimeException e) {
+			sendError(message, e.getMessage(), e);
+		}
+	}
+
+}
@@ -27,6 +27,7 @@ import fr.wseduc.webutils.Either;
 
 import fr.wseduc.webutils.I18n;
 import fr.wseduc.webutils.email.EmailSender;
+import org.entcore.auth.security.PasswordHashing;
 import org.entcore.common.email.EmailFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
@@ -43,7 +44,6 @@ import org.entcore.common.validation.StringValidation;
 
 import fr.wseduc.webutils.Server;
 import fr.wseduc.webutils.http.Renders;
-import fr.wseduc.webutils.security.BCrypt;
 
 public class DefaultUserAuthAccount implements UserAuthAccount {
 
@@ -75,9 +75,10 @@ public class DefaultUserAuthAccount implements UserAuthAccount {
 	}
 
 	@Override
-	public void activateAccount(final String login, String activationCode, final String password,
-			String email, String phone, final HttpServerRequest request, final Handler<Either<String, String>> handler) {
-		String query =
+	public void activateAccount(final String login, final String activationCode, final String password,
+			final String email, final String phone, final HttpServerRequest request,
+			final Handler<Either<String, String>> handler) {
+		final String query =
 				"MATCH (n:User) " +
 				"WHERE n.login = {login} AND n.activationCode = {activationCode} AND n.password IS NULL " +
 				"AND (NOT EXISTS(n.blocked) OR n.blocked = false) " +
@@ -86,53 +87,72 @@ public class DefaultUserAuthAccount implements UserAuthAccount {
 				"WHERE LENGTH(duplicates) = 0 " +
 				"SET n.password = {password}, n.activationCode = null, n.email = {email}, n.mobile = {phone} " +
 				"RETURN n.password as password, n.id as id, HEAD(n.profiles) as profile ";
-		Map<String, Object> params = new HashMap<>();
-		params.put("login", login);
-		params.put("activationCode", activationCode);
-		params.put("password", BCrypt.hashpw(password, BCrypt.gensalt()));
-		params.put("email", email);
-		params.put("phone", phone);
-		neo.send(query, params, new Handler<Message<JsonObject>>(){
-
+		PasswordHashing.getInstance().hashpw(password, new Handler<String>() {
 			@Override
-			public void handle(Message<JsonObject> res) {
-				if ("ok".equals(res.body().getString("status"))
-						&& res.body().getObject("result").getObject("0") != null) {
-					JsonObject jo = new JsonObject()
-							.putString("userId", res.body().getObject("result").getObject("0").getString("id"))
-							.putString("profile", res.body().getObject("result").getObject("0").getString("profile"))
-							.putObject("request", new JsonObject()
-									.putObject("headers", new JsonObject()
-											.putString("Accept-Language", I18n.acceptLanguage(request))
-											.putString("Host", Renders.getHost(request))
-									)
-							);
-					Server.getEventBus(vertx).publish("activation.ack", jo);
-					handler.handle(new Either.Right<String, String>(
-							res.body().getObject("result").getObject("0").getString("id")));
-				} else {
-					String q =
-							"MATCH (n:User) " +
-							"WHERE n.login = {login} AND n.activationCode IS NULL " +
-							"AND NOT(n.password IS NULL) " +
-							"RETURN n.password as password, n.id as id";
-					Map<String, Object> p = new HashMap<>();
-					p.put("login", login);
-					neo.send(q, p, new Handler<Message<JsonObject>>() {
-						@Override
-						public void handle(Message<JsonObject> event) {
-							if ("ok".equals(event.body().getString("status")) &&
-									event.body().getObject("result").getObject("0") != null &&
-									BCrypt.checkpw(password, event.body().getObject("result").getObject("0")
-											.getString("password", ""))) {
-								handler.handle(new Either.Right<String, String>(
-										event.body().getObject("result").getObject("0").getString("id")));
-							} else {
-								handler.handle(new Either.Left<String, String>("invalid.activation"));
-							}
-						}
-					});
+			public void handle(String hashedPassword) {
+				if (hashedPassword == null) {
+					handler.handle(new Either.Left<String, String>("invalid.activation"));
+					return;
 				}
+				Map<String, Object> params = new HashMap<>();
+				params.put("login", login);
+				params.put("activationCode", activationCode);
+				params.put("password", hashedPassword);
+				params.put("email", email);
+				params.put("phone", phone);
+				neo.send(query, params, new Handler<Message<JsonObject>>(){
+
+					@Override
+					public void handle(Message<JsonObject> res) {
+						if ("ok".equals(res.body().getString("status"))
+								&& res.body().getObject("result").getObject("0") != null) {
+							JsonObject jo = new JsonObject()
+									.putString("userId", res.body().getObject("result").getObject("0").getString("id"))
+									.putString("profile", res.body().getObject("result").getObject("0").getString("profile"))
+									.putObject("request", new JsonObject()
+											.putObject("headers", new JsonObject()
+													.putString("Accept-Language", I18n.acceptLanguage(request))
+													.putString("Host", Renders.getHost(request))
+											)
+									);
+							Server.getEventBus(vertx).publish("activation.ack", jo);
+							handler.handle(new Either.Right<String, String>(
+									res.body().getObject("result").getObject("0").getString("id")));
+						} else {
+							String q =
+									"MATCH (n:User) " +
+									"WHERE n.login = {login} AND n.activationCode IS NULL " +
+									"AND NOT(n.password IS NULL) " +
+									"RETURN n.password as password, n.id as id";
+							Map<String, Object> p = new HashMap<>();
+							p.put("login", login);
+							neo.send(q, p, new Handler<Message<JsonObject>>() {
+								@Override
+								public void handle(Message<JsonObject> event) {
+									if ("ok".equals(event.body().getString("status")) &&
+											event.body().getObject("result").getObject("0") != null) {
+										final JsonObject u = event.body().getObject("result").getObject("0");
+										PasswordHashing.getInstance().checkpw(password, u.getString("password", ""),
+												new Handler<Either<String, Boolean>>() {
+											@Override
+											public void handle(Either<String, Boolean> success) {
+												if (success.isRight() && Boolean.TRUE.equals(success.right().getValue())) {
+													handler.handle(new Either.Right<String, String>(u.getString("id")));
+												} else if (success.isLeft()) {
+													handler.handle(new Either.Left<String, String>(success.left().getValue()));
+												} else {
+													handler.handle(new Either.Left<String, String>("invalid.activation"));
+												}
+											}
+										});
+									} else {
+										handler.handle(new Either.Left<String, String>("invalid.activation"));
+									}
+								}
+							});
+						}
+					}
+				});
 			}
 		});
 	}
@@ -456,17 +476,26 @@ public class DefaultUserAuthAccount implements UserAuthAccount {
 		});
 	};
 
-	private void updatePassword(final Handler<Boolean> handler, String query, String password, Map<String, Object> params) {
-		final String pw = BCrypt.hashpw(password, BCrypt.gensalt());
-		params.put("password", pw);
-		neo.send(query, params, new Handler<Message<JsonObject>>(){
-
+	private void updatePassword(final Handler<Boolean> handler, final String query, String password,
+			final Map<String, Object> params) {
+		PasswordHashing.getInstance().hashpw(password, new Handler<String>() {
 			@Override
-			public void handle(Message<JsonObject> res) {
-				JsonObject r = res.body().getObject("result");
-				handler.handle("ok".equals(res.body().getString("status"))
-						&& r.getObject("0") != null
-						&& pw.equals(r.getObject("0").getString("pw")));
+			public void handle(final String pw) {
+				if (pw == null) {
+					handler.handle(false);
+					return;
+				}
+				params.put("password", pw);
+				neo.send(query, params, new Handler<Message<JsonObject>>(){
+
+					@Override
+					public void handle(Message<JsonObject> res) {
+						JsonObject r = res.body().getObject("result");
+						handler.handle("ok".equals(res.body().getString("status"))
+								&& r.getObject("0") != null
+								&& pw.equals(r.getObject("0").getString("pw")));
+					}
+				});
 			}
 		});
 	}
@@ -0,0 +1,219 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.events;
+
+import fr.wseduc.webutils.Either;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded ring buffer of events flushed as bulk writes when a batch is full or after a delay.
+ * Only one flush is in flight at a time ; when the buffer is full, the newest event is dropped
+ * (or the oldest one with the "oldest" drop policy).
+ * An added event is not persisted yet : it is lost if later dropped, if its bulk write fails
+ * or if the node stops abruptly. Those losses are only counted (see stats).
+ * A buffer belongs to the context (verticle instance) which created it, and is closed with it.
+ */
+public class EventBuffer {
+
+	public interface EventsWriter {
+		void storeEvents(JsonArray events, Handler<Either<String, Void>> handler);
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(EventBuffer.class);
+	private static final Map<Context, EventBuffer> buffers = new HashMap<>();
+
+	private final Vertx vertx;
+	private final Context owner;
+	private final EventsWriter writer;
+	private final JsonObject[] ring;
+	private final int batchSize;
+	private final boolean dropOldest;
+	private final long timerId;
+	private int head = 0;
+	private int size = 0;
+	private boolean flushing = false;
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong flushed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	private EventBuffer(Vertx vertx, JsonObject config, EventsWriter writer) {
+		this.vertx = vertx;
+		this.owner = vertx.currentContext();
+		this.writer = writer;
+		this.ring = new JsonObject[config.getInteger("capacity", 10000)];
+		this.batchSize = Math.min(config.getInteger("batch-size", 500), ring.length);
+		this.dropOldest = "oldest".equals(config.getString("drop-policy", "newest"));
+		this.timerId = vertx.setPeriodic(config.getLong("flush-delay", 1000l), new Handler<Long>() {
+			@Override
+			public void handle(Long event) {
+				flush();
+			}
+		});
+	}
+
+	/**
+	 * @return the buffer of the current context, created on first call.
+	 */
+	public static EventBuffer get(Vertx vertx, JsonObject config, EventsWriter writer) {
+		final Context context = vertx.currentContext();
+		synchronized (buffers) {
+			EventBuffer buffer = buffers.get(context);
+			if (buffer == null) {
+				buffer = new EventBuffer(vertx, config, writer);
+				buffers.put(context, buffer);
+			}
+			return buffer;
+		}
+	}
+
+	/**
+	 * @return false if the event is dropped because the buffer is full. With the "oldest" drop policy
+	 * the event is kept and an older one, already acknowledged, is dropped (only counted).
+	 */
+	public boolean add(JsonObject event) {
+		boolean full;
+		synchronized (this) {
+			if (size == ring.length) {
+				dropped.incrementAndGet();
+				if (!dropOldest) {
+					return false;
+				}
+				head = (head + 1) % ring.length;
+				size--;
+			}
+			ring[(head + size) % ring.length] = event;
+			size++;
+			queued.incrementAndGet();
+			full = size >= batchSize;
+		}
+		if (full) {
+			flush();
+		}
+		return true;
+	}
+
+	public void flush() {
+		final JsonArray events = new JsonArray();
+		synchronized (this) {
+			if (flushing || size == 0) {
+				return;
+			}
+			final int n = Math.min(size, batchSize);
+			for (int i = 0; i < n; i++) {
+				events.addObject(ring[head]);
+				ring[head] = null;
+				head = (head + 1) % ring.length;
+			}
+			size -= n;
+			flushing = true;
+		}
+		writer.storeEvents(events, new Handler<Either<String, Void>>() {
+			@Override
+			public void handle(Either<String, Void> res) {
+				boolean next;
+				synchronized (EventBuffer.this) {
+					flushing = false;
+					next = size >= batchSize;
+				}
+				if (res.isRight()) {
+					flushed.addAndGet(events.size());
+				} else {
+					failed.addAndGet(events.size());
+					log.error("Error storing " + events.size() + " events : " + res.left().getValue());
+				}
+				if (next) {
+					flush();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops the periodic flush and writes all the buffered events.
+	 */
+	public void close() {
+		vertx.cancelTimer(timerId);
+		synchronized (buffers) {
+			if (buffers.get(owner) == this) {
+				buffers.remove(owner);
+			}
+		}
+		final JsonArray events = new JsonArray();
+		synchronized (this) {
+			while (size > 0) {
+				events.addObject(ring[head]);
+				ring[head] = null;
+				head = (head + 1) % ring.length;
+				size--;
+			}
+		}
+		if (events.size() > 0) {
+			writer.storeEvents(events, new Handler<Either<String, Void>>() {
+				@Override
+				public void handle(Either<String, Void> res) {
+					if (res.isRight()) {
+						flushed.addAndGet(events.size());
+					} else {
+						failed.addAndGet(events.size());
+						log.error("Error storing events on close : " + res.left().getValue());
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Closes the buffer of the current context, if any : to be called when a verticle instance stops.
+	 */
+	public static void closeCurrent(Vertx vertx) {
+		final EventBuffer buffer;
+		synchronized (buffers) {
+			buffer = buffers.get(vertx.currentContext());
+		}
+		if (buffer != null) {
+			buffer.close();
+		}
+	}
+
+	public JsonObject stats() {
+		final int pending;
+		synchronized (this) {
+			pending = size;
+		}
+		return new JsonObject()
+				.putNumber("pending", pending)
+				.putNumber("queued", queued.get())
+				.putNumber("flushed", flushed.get())
+				.putNumber("dropped", dropped.get())
+				.putNumber("failed", failed.get());
+	}
+
+}
@@ -25,6 +25,7 @@ import org.entcore.common.events.EventStore;
 import org.entcore.common.neo4j.Neo4j;
 import org.entcore.common.user.UserInfos;
 import org.entcore.common.user.UserUtils;
+import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
@@ -34,12 +35,23 @@ import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 
 public abstract class GenericEventStore implements EventStore {
 
 	protected String module;
 	protected EventBus eventBus;
 	protected static final Logger logger = LoggerFactory.getLogger(GenericEventStore.class);
+	private static final int LOGINS_BATCH_SIZE = 500;
+	private static final long LOGINS_QUERY_TIMEOUT = 30 * 1000;
+	private final List<String[]> pendingLogins = new ArrayList<>();
+	private boolean loadingLogins = false;
 
 	@Override
 	public void createAndStoreEvent(String eventType, UserInfos user) {
@@ -67,28 +79,76 @@ public abstract class GenericEventStore implements EventStore {
 		createAndStoreEvent(eventType, request, null);
 	}
 
+	/**
+	 * The users of the events created from a login are loaded by one query per batch : the logins
+	 * received while a query is running are loaded together by the next one.
+	 */
 	@Override
 	public void createAndStoreEvent(final String eventType, final String login) {
+		synchronized (pendingLogins) {
+			pendingLogins.add(new String[] { eventType, login });
+			if (loadingLogins) {
+				return;
+			}
+			loadingLogins = true;
+		}
+		loadPendingLogins();
+	}
+
+	private void loadPendingLogins() {
+		final List<String[]> events;
+		synchronized (pendingLogins) {
+			if (pendingLogins.isEmpty()) {
+				loadingLogins = false;
+				return;
+			}
+			final List<String[]> batch = pendingLogins.subList(0, Math.min(pendingLogins.size(), LOGINS_BATCH_SIZE));
+			events = new ArrayList<>(batch);
+			batch.clear();
+		}
+		final Set<String> logins = new HashSet<>();
+		for (String[] e : events) {
+			logins.add(e[1]);
+		}
 		String query =
-				"MATCH (n:User {login : {login}}) " +
+				"UNWIND {logins} as login " +
+				"MATCH (n:User {login : login}) " +
 				"OPTIONAL MATCH n-[:IN]->(gp:ProfileGroup) " +
 				"OPTIONAL MATCH n-[:IN]->()-[:DEPENDS]->(s:Structure) " +
 				"OPTIONAL MATCH n-[:IN]->()-[:DEPENDS]->(c:Class) " +
 				"OPTIONAL MATCH n-[:IN]->()-[:HAS_PROFILE]->(p:Profile) " +
-				"RETURN distinct n.id as userId,  p.name as type, COLLECT(distinct gp.id) as profilGroupsIds, " +
+				"RETURN distinct login, n.id as userId,  p.name as type, COLLECT(distinct gp.id) as profilGroupsIds, " +
 				"COLLECT(distinct c.id) as classes, COLLECT(distinct s.id) as structures";
-		Neo4j.getInstance().execute(query, new JsonObject().putString("login", login),
-				new Handler<Message<JsonObject>>() {
+		Neo4j.getInstance().execute(query, new JsonObject().putArray("logins", new JsonArray(logins.toArray())),
+				LOGINS_QUERY_TIMEOUT, new Handler<AsyncResult<Message<JsonObject>>>() {
 			@Override
-			public void handle(Message<JsonObject> event) {
-				JsonArray res = event.body().getArray("result");
-				if ("ok".equals(event.body().getString("status")) && res.size() == 1) {
-					execute(UserUtils.sessionToUserInfos(
-							res.<JsonObject>get(0)), eventType, null, null);
+			public void handle(AsyncResult<Message<JsonObject>> ar) {
+				final Map<String, List<JsonObject>> users = new HashMap<>();
+				if (ar.succeeded() && "ok".equals(ar.result().body().getString("status"))) {
+					for (Object o : ar.result().body().getArray("result", new JsonArray())) {
+						if (!(o instanceof JsonObject)) continue;
+						final JsonObject u = (JsonObject) o;
+						final String login = (String) u.removeField("login");
+						List<JsonObject> l = users.get(login);
+						if (l == null) {
+							l = new ArrayList<>();
+							users.put(login, l);
+						}
+						l.add(u);
+					}
 				} else {
-					logger.error("Error : user " + login + " not found.");
+					logger.error("Error loading users of " + events.size() + " events : " +
+							(ar.failed() ? ar.cause().getMessage() : ar.result().body().getString("message")));
 				}
-
+				for (String[] e : events) {
+					final List<JsonObject> l = users.get(e[1]);
+					if (l != null && l.size() == 1) {
+						execute(UserUtils.sessionToUserInfos(l.get(0)), e[0], null, null);
+					} else {
+						logger.error("Error : user " + e[1] + " not found.");
+					}
+				}
+				loadPendingLogins();
 			}
 		});
 	}
@@ -21,17 +21,34 @@ package org.entcore.common.events.impl;
 
 import fr.wseduc.mongodb.MongoDb;
 import fr.wseduc.webutils.Either;
+import org.entcore.common.events.EventBuffer;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
-public class MongoDbEventStore extends GenericEventStore {
+public class MongoDbEventStore extends GenericEventStore implements EventBuffer.EventsWriter {
 
 	private final MongoDb mongoDb = MongoDb.getInstance();
 	private static final String COLLECTION = "events";
+	private EventBuffer eventBuffer;
 
+	/**
+	 * With an event buffer, success only means the event is queued : it is not yet in MongoDB and
+	 * can still be lost, dropped by the "oldest" drop policy, failed by its bulk write, or pending
+	 * on a crash. Events are traces, so this is traded for not waiting on MongoDB per event ;
+	 * the losses are counted in the buffer stats. Without a buffer, success means persisted.
+	 */
 	@Override
 	protected void storeEvent(final JsonObject event, final Handler<Either<String, Void>> handler) {
+		if (eventBuffer != null) {
+			if (eventBuffer.add(event)) {
+				handler.handle(new Either.Right<String, Void>(null));
+			} else {
+				handler.handle(new Either.Left<String, Void>("Events buffer full, event dropped : " + event.encode()));
+			}
+			return;
+		}
 		mongoDb.insert(COLLECTION, event, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> res) {
@@ -45,4 +62,26 @@ public class MongoDbEventStore extends GenericEventStore {
 		});
 	}
 
+	@Override
+	public void storeEvents(JsonArray events, final Handler<Either<String, Void>> handler) {
+		mongoDb.insert(COLLECTION, events, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> res) {
+				if ("ok".equals(res.body().getString("status"))) {
+					handler.handle(new Either.Right<String, Void>(null));
+				} else {
+					handler.handle(new Either.Left<String, Void>("Error : " + res.body().getString("message")));
+				}
+			}
+		});
+	}
+
+	public void setEventBuffer(EventBuffer eventBuffer) {
+		this.eventBuffer = eventBuffer;
+	}
+
+	public EventBuffer getEventBuffer() {
+		return eventBuffer;
+	}
+
 }
@@ -20,8 +20,10 @@
 package org.entcore.common.events.impl;
 
 import fr.wseduc.webutils.Server;
+import org.entcore.common.events.EventBuffer;
 import org.entcore.common.events.EventStore;
 import org.entcore.common.events.EventStoreFactory;
+import org.vertx.java.core.json.JsonObject;
 
 public class MongoDbEventStoreFactory extends EventStoreFactory {
 
@@ -30,7 +32,19 @@ public class MongoDbEventStoreFactory extends EventStoreFactory {
 		MongoDbEventStore eventStore =  new MongoDbEventStore();
 		eventStore.setEventBus(Server.getEventBus(vertx));
 		eventStore.setModule(module);
+		eventStore.setEventBuffer(getEventBuffer(eventStore));
 		return eventStore;
 	}
 
+	private EventBuffer getEventBuffer(MongoDbEventStore writer) {
+		if (vertx == null) {
+			return null;
+		}
+		JsonObject conf = (container != null) ? container.config().getObject("events-buffer") : null;
+		if (conf == null) {
+			conf = new JsonObject();
+		}
+		return conf.getBoolean("enabled", true) ? EventBuffer.get(vertx, conf, writer) : null;
+	}
+
 }
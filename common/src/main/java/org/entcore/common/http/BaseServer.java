@@ -29,6 +29,7 @@ import fr.wseduc.webutils.validation.JsonSchemaValidator;
 
 import org.entcore.common.controller.ConfController;
 import org.entcore.common.controller.RightsController;
+import org.entcore.common.events.EventBuffer;
 import org.entcore.common.events.EventStoreFactory;
 import org.entcore.common.http.filter.ActionFilter;
 import org.entcore.common.http.filter.HttpActionFilter;
@@ -41,6 +42,7 @@ import org.entcore.common.sql.DB;
 import org.entcore.common.sql.Sql;
 import org.entcore.common.user.RepositoryEvents;
 import org.entcore.common.user.RepositoryHandler;
+import org.entcore.common.user.SessionCache;
 import org.entcore.common.user.UserUtils;
 import org.entcore.common.utils.Config;
 import org.entcore.common.utils.Zip;
@@ -82,6 +84,7 @@ public abstract class BaseServer extends Server {
 
 		Config.getInstance().setConfig(config);
 		initModulesHelpers(node);
+		SessionCache.getInstance().init(vertx, config.getObject("session-cache"));
 
 		EventStoreFactory eventStoreFactory = EventStoreFactory.getFactory();
 		eventStoreFactory.setContainer(container);
@@ -102,6 +105,12 @@ public abstract class BaseServer extends Server {
 		SecurityHandler.setVertx(vertx);
 	}
 
+	@Override
+	public void stop() {
+		EventBuffer.closeCurrent(vertx);
+		super.stop();
+	}
+
 	@Override
 	protected void i18nMessages(HttpServerRequest request) {
 		String sessionId = CookieHelper.getInstance().getSigned("oneSessionId", request);
@@ -22,17 +22,16 @@ package org.entcore.common.http.filter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
 
 import fr.wseduc.webutils.security.SecureHttpServerRequest;
 import org.entcore.common.http.response.DefaultPages;
+import org.entcore.common.user.SessionCache;
 import org.entcore.common.user.UserInfos;
 import org.entcore.common.user.UserUtils;
 import fr.wseduc.webutils.request.filter.Filter;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.http.HttpServerRequest;
-import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
 import fr.wseduc.webutils.http.Binding;
@@ -41,6 +40,7 @@ import fr.wseduc.webutils.security.ActionType;
 public class ActionFilter implements Filter {
 
 	private final Set<Binding> bindings;
+	private volatile BindingIndex bindingIndex;
 	private final EventBus eb;
 	private final ResourcesProvider provider;
 	private final boolean oauthEnabled;
@@ -109,7 +109,7 @@ public class ActionFilter implements Filter {
 								  Handler<Boolean> handler) {
 		Binding binding = requestBinding(request);
 		if (ActionType.WORKFLOW.equals(binding.getActionType())) {
-			authorizeWorkflowAction(session, binding, handler);
+			authorizeWorkflowAction(request, session, binding, handler);
 		} else if (ActionType.RESOURCE.equals(binding.getActionType())) {
 			authorizeResourceAction(request, session, binding, handler);
 		} else if (ActionType.AUTHENTICATED.equals(binding.getActionType())) {
@@ -129,17 +129,15 @@ public class ActionFilter implements Filter {
 		}
 	}
 
-	private void authorizeWorkflowAction(JsonObject session, Binding binding,
+	private void authorizeWorkflowAction(HttpServerRequest request, JsonObject session, Binding binding,
 										 Handler<Boolean> handler) {
-		JsonArray actions = session.getArray("authorizedActions");
-		if (binding != null && binding.getServiceMethod() != null
-				&& actions != null && actions.size() > 0) {
-			for (Object a: actions) {
-				JsonObject action = (JsonObject) a;
-				if (binding.getServiceMethod().equals(action.getString("name"))) {
-					handler.handle(true);
-					return;
-				}
+		if (binding != null && binding.getServiceMethod() != null) {
+			String sessionId = (request instanceof SecureHttpServerRequest) ?
+					((SecureHttpServerRequest) request).getAttribute(UserUtils.SESSION_ID_ATTRIBUTE) : null;
+			Set<String> actions = SessionCache.getInstance().authorizedActions(sessionId, session);
+			if (actions.contains(binding.getServiceMethod())) {
+				handler.handle(true);
+				return;
 			}
 		}
 		if (session.getObject("functions", new JsonObject()).containsField("SUPER_ADMIN")) {
@@ -150,16 +148,12 @@ public class ActionFilter implements Filter {
 	}
 
 	private Binding requestBinding(HttpServerRequest request) {
-		for (Binding binding: bindings) {
-			if (!request.method().equals(binding.getMethod().name())) {
-				continue;
-			}
-			Matcher m = binding.getUriPattern().matcher(request.path());
-			if (m.matches()) {
-				return binding;
-			}
+		BindingIndex index = bindingIndex;
+		if (index == null || index.size() != bindings.size()) {
+			index = new BindingIndex(bindings);
+			bindingIndex = index;
 		}
-		return null;
+		return index.lookup(request.method(), request.path());
 	}
 
 	private void clientIsAuthorizedByScope(SecureHttpServerRequest request, Handler<Boolean> handler) {
@@ -0,0 +1,117 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.common.http.filter;
+
+import fr.wseduc.webutils.http.Binding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bindings partitioned by HTTP method and indexed in a trie on the literal
+ * prefix of their uri pattern. A lookup only runs the regex of bindings whose
+ * literal prefix is a prefix of the request path, the longest prefixes first.
+ */
+final class BindingIndex {
+
+	private static final String REGEX_META = "\\.[]{}()*+?^$|";
+
+	private final Map<String, Node> roots = new HashMap<>();
+	private final int size;
+
+	private static final class Node {
+		private final Map<Character, Node> children = new HashMap<>();
+		private final List<Binding> bindings = new ArrayList<>();
+	}
+
+	BindingIndex(Set<Binding> bindings) {
+		if (bindings == null) {
+			size = 0;
+			return;
+		}
+		size = bindings.size();
+		for (Binding binding : bindings) {
+			if (binding.getMethod() == null || binding.getUriPattern() == null) continue;
+			final String method = binding.getMethod().name();
+			Node node = roots.get(method);
+			if (node == null) {
+				node = new Node();
+				roots.put(method, node);
+			}
+			final String prefix = literalPrefix(binding.getUriPattern().pattern());
+			for (int i = 0; i < prefix.length(); i++) {
+				final Character c = prefix.charAt(i);
+				Node child = node.children.get(c);
+				if (child == null) {
+					child = new Node();
+					node.children.put(c, child);
+				}
+				node = child;
+			}
+			node.bindings.add(binding);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	Binding lookup(String method, String path) {
+		Node node = roots.get(method);
+		if (node == null || path == null) {
+			return null;
+		}
+		final List<Node> visited = new ArrayList<>();
+		visited.add(node);
+		for (int i = 0; i < path.length(); i++) {
+			node = node.children.get(path.charAt(i));
+			if (node == null) break;
+			visited.add(node);
+		}
+		for (int i = visited.size() - 1; i >= 0; i--) {
+			for (Binding binding : visited.get(i).bindings) {
+				if (binding.getUriPattern().matcher(path).matches()) {
+					return binding;
+				}
+			}
+		}
+		return null;
+	}
+
+	static String literalPrefix(String pattern) {
+		if (pattern.indexOf('|') >= 0) {
+			return "";
+		}
+		int start = pattern.startsWith("^") ? 1 : 0;
+		int end = start;
+		while (end < pattern.length() && REGEX_META.indexOf(pattern.charAt(end)) < 0) {
+			end++;
+		}
+		// a quantifier applies to the previous char, which is then not a literal
+		if (end < pattern.length() && end > start && "*+?{".indexOf(pattern.charAt(end)) >= 0) {
+			end--;
+		}
+		return pattern.substring(start, end);
+	}
+
+}
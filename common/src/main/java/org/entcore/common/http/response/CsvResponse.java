@@ -0,0 +1,208 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.http.response;
+
+import fr.wseduc.webutils.Either;
+import org.entcore.common.neo4j.Neo4j;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import static org.entcore.common.neo4j.Neo4jResult.validResultHandler;
+
+/**
+ * Writes a CSV export to a chunked response page by page. The next page is only read once the
+ * previous one has been written and the response write queue is drained, so an export never
+ * holds more than one page in memory.
+ */
+public class CsvResponse {
+
+	private static final Logger log = LoggerFactory.getLogger(CsvResponse.class);
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+	private static final String SEPARATOR = ";";
+	private static final String LINE_SEPARATOR = "\n";
+
+	/**
+	 * Reads one page of rows. lastRow is the last row of the previous page, null for the first one.
+	 */
+	public interface Pages {
+		void read(int skip, int limit, JsonObject lastRow, Handler<Either<String, JsonArray>> handler);
+	}
+
+	public interface Formatter {
+		Object[] format(JsonObject row);
+	}
+
+	private final HttpServerResponse response;
+	private final String filename;
+	private final String[] header;
+	private boolean started = false;
+	private boolean closed = false;
+
+	public CsvResponse(HttpServerRequest request, String filename, String... header) {
+		this.response = request.response();
+		this.filename = filename;
+		this.header = header;
+		response.closeHandler(new Handler<Void>() {
+			@Override
+			public void handle(Void event) {
+				closed = true;
+			}
+		});
+	}
+
+	/**
+	 * Writes every page until one is shorter than pageSize. The response is only started by the
+	 * first page read, so a failure on it can still be answered with an error status ; a later
+	 * failure must abort the response.
+	 * @param handler receives the number of rows written.
+	 */
+	public void write(Pages pages, int pageSize, Formatter formatter, Handler<Either<String, Integer>> handler) {
+		read(pages, pageSize, formatter, 0, null, handler);
+	}
+
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * Ends the response, writing the header if no page has been written.
+	 */
+	public void end() {
+		if (closed) {
+			return;
+		}
+		start();
+		response.end();
+	}
+
+	/**
+	 * Closes the connection without ending the chunked body, so a client can't take an export
+	 * failed after its first page for a complete one.
+	 */
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		response.close();
+	}
+
+	private void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+		response.setChunked(true);
+		response.putHeader("Content-Type", "application/csv");
+		response.putHeader("Content-Disposition", "attachment; filename=" + filename);
+		if (header != null && header.length > 0) {
+			response.write(line(header), "UTF-8");
+		}
+	}
+
+	private void read(final Pages pages, final int pageSize, final Formatter formatter, final int skip,
+			final JsonObject lastRow, final Handler<Either<String, Integer>> handler) {
+		if (closed) {
+			handler.handle(new Either.Left<String, Integer>("closed"));
+			return;
+		}
+		if (response.writeQueueFull()) {
+			response.drainHandler(new Handler<Void>() {
+				@Override
+				public void handle(Void event) {
+					response.drainHandler(null);
+					read(pages, pageSize, formatter, skip, lastRow, handler);
+				}
+			});
+			return;
+		}
+		pages.read(skip, pageSize, lastRow, new Handler<Either<String, JsonArray>>() {
+			@Override
+			public void handle(Either<String, JsonArray> r) {
+				if (r.isLeft()) {
+					log.error("Error reading csv page : " + r.left().getValue());
+					handler.handle(new Either.Left<String, Integer>(r.left().getValue()));
+					return;
+				}
+				final JsonArray rows = r.right().getValue();
+				if (closed) {
+					handler.handle(new Either.Left<String, Integer>("closed"));
+					return;
+				}
+				start();
+				final StringBuilder sb = new StringBuilder();
+				JsonObject last = null;
+				for (Object o : rows) {
+					if (!(o instanceof JsonObject)) continue;
+					last = (JsonObject) o;
+					sb.append(line(formatter.format(last)));
+				}
+				if (sb.length() > 0) {
+					response.write(sb.toString(), "UTF-8");
+				}
+				if (rows.size() < pageSize) {
+					handler.handle(new Either.Right<String, Integer>(skip + rows.size()));
+				} else {
+					read(pages, pageSize, formatter, skip + rows.size(), last, handler);
+				}
+			}
+		});
+	}
+
+	private static String line(Object[] values) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sb.append(SEPARATOR);
+			}
+			sb.append('"');
+			if (values[i] != null) {
+				sb.append(values[i].toString().replace("\"", "\"\""));
+			}
+			sb.append('"');
+		}
+		return sb.append(LINE_SEPARATOR).toString();
+	}
+
+	/**
+	 * Pages of a Neo4j query using the {skip} and {limit} parameters, and {after} set to the
+	 * keyField value of the last row for keyset pagination.
+	 */
+	public static Pages neo4jPages(final String query, final JsonObject params, final String keyField) {
+		return new Pages() {
+			@Override
+			public void read(int skip, int limit, JsonObject lastRow, Handler<Either<String, JsonArray>> handler) {
+				final JsonObject p = (params != null) ? params.copy() : new JsonObject();
+				p.putNumber("skip", skip).putNumber("limit", limit);
+				if (keyField != null) {
+					final Object after = (lastRow != null) ? lastRow.getValue(keyField) : null;
+					p.putValue("after", (after != null) ? after : "");
+				}
+				Neo4j.getInstance().execute(query, p, validResultHandler(handler));
+			}
+		};
+	}
+
+}
@@ -19,6 +19,7 @@
 
 package org.entcore.common.neo4j;
 
+import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
@@ -61,6 +62,17 @@ public class Neo4j {
 		eb.send(address, jo, handler);
 	}
 
+	public void execute(String query, JsonObject params, long timeout,
+			Handler<AsyncResult<Message<JsonObject>>> handler) {
+		JsonObject jo = new JsonObject();
+		jo.putString("action", "execute");
+		jo.putString("query", query);
+		if (params != null) {
+			jo.putObject("params", params);
+		}
+		eb.sendWithTimeout(address, jo, timeout, handler);
+	}
+
 	public void execute(String query, Map<String,Object> params, Handler<Message<JsonObject>> handler) {
 		execute(query, new JsonObject(params), handler);
 	}
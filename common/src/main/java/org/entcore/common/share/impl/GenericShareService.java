@@ -32,7 +32,6 @@ import org.vertx.java.core.json.JsonObject;
 
 import java.util.*;
 
-import static org.entcore.common.user.UserUtils.findVisibleProfilsGroups;
 import static org.entcore.common.user.UserUtils.findVisibleUsers;
 
 public abstract class GenericShareService implements ShareService {
@@ -125,23 +124,15 @@ public abstract class GenericShareService implements ShareService {
 		});
 	}
 
-	// TODO improve query
 	protected void profilGroupIsVisible(String userId, final String groupId, final Handler<Boolean> handler) {
 		if (userId == null || groupId == null) {
 			handler.handle(false);
 			return;
 		}
-		findVisibleProfilsGroups(eb, userId, new Handler<JsonArray>() {
+		UserUtils.filterVisibles(eb, userId, null, new JsonArray().addString(groupId), new Handler<JsonArray>() {
 			@Override
-			public void handle(JsonArray visibleGroups) {
-				final List<String> visibleGroupsIds = new ArrayList<>();
-				for (int i = 0; i < visibleGroups.size(); i++) {
-					JsonObject j = visibleGroups.get(i);
-					if (j != null && j.getString("id") != null) {
-						visibleGroupsIds.add(j.getString("id"));
-					}
-				}
-				handler.handle(visibleGroupsIds.contains(groupId));
+			public void handle(JsonArray visibleIds) {
+				handler.handle(visibleIds != null && visibleIds.contains(groupId));
 			}
 		});
 	}
@@ -151,17 +142,10 @@ public abstract class GenericShareService implements ShareService {
 			handler.handle(false);
 			return;
 		}
-		findVisibleUsers(eb, userId, false, new Handler<JsonArray>() {
+		UserUtils.filterVisibles(eb, userId, new JsonArray().addString(userShareId), null, new Handler<JsonArray>() {
 			@Override
-			public void handle(JsonArray visibleUsers) {
-				final List<String> visibleUsersIds = new ArrayList<>();
-				for (int i = 0; i < visibleUsers.size(); i++) {
-					JsonObject j = visibleUsers.get(i);
-					if (j != null && j.getString("id") != null) {
-						visibleUsersIds.add(j.getString("id"));
-					}
-				}
-				handler.handle(visibleUsersIds.contains(userShareId));
+			public void handle(JsonArray visibleIds) {
+				handler.handle(visibleIds != null && visibleIds.contains(userShareId));
 			}
 		});
 	}
@@ -36,6 +36,7 @@ public class StorageFactory {
 	private JsonObject swift;
 	private JsonObject fs;
 	private String gridfsAddress;
+	private int gridfsPrefetchWindow = GridfsStorage.DEFAULT_PREFETCH_WINDOW;
 
 	public StorageFactory(Vertx vertx) {
 		this(vertx, null);
@@ -60,6 +61,9 @@ public class StorageFactory {
 		} else if (config != null && config.getString("gridfs-address") != null) {
 			this.gridfsAddress = config.getString("gridfs-address");
 		}
+		if (config != null) {
+			this.gridfsPrefetchWindow = config.getInteger("gridfs-prefetch-window", gridfsPrefetchWindow);
+		}
 
 	}
 
@@ -76,9 +80,10 @@ public class StorageFactory {
 				e.printStackTrace();
 			}
 		} else if (fs != null) {
-			storage = new FileStorage(vertx, fs.getString("path"), fs.getBoolean("flat", false));
+			storage = new FileStorage(vertx, fs.getString("path"), fs.getBoolean("flat", false),
+					fs.getBoolean("dedup", false));
 		} else {
-			storage = new GridfsStorage(vertx, Server.getEventBus(vertx), gridfsAddress);
+			storage = new GridfsStorage(vertx, Server.getEventBus(vertx), gridfsAddress, "fs", gridfsPrefetchWindow);
 		}
 		return storage;
 	}
@@ -24,14 +24,17 @@ import fr.wseduc.webutils.DefaultAsyncResult;
 import fr.wseduc.webutils.http.ETag;
 import org.entcore.common.storage.BucketStats;
 import org.entcore.common.storage.Storage;
-import org.entcore.common.storage.StorageException;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.AsyncResultHandler;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.file.AsyncFile;
+import org.vertx.java.core.file.FileProps;
 import org.vertx.java.core.file.FileSystem;
 import org.vertx.java.core.http.HttpServerFileUpload;
+import org.vertx.java.core.impl.BlockingAction;
+import org.vertx.java.core.impl.VertxInternal;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.http.HttpServerResponse;
 import org.vertx.java.core.json.JsonArray;
@@ -41,7 +44,16 @@ import org.vertx.java.core.logging.impl.LoggerFactory;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static fr.wseduc.webutils.Utils.isNotEmpty;
@@ -49,14 +61,36 @@ import static fr.wseduc.webutils.Utils.isNotEmpty;
 public class FileStorage implements Storage {
 
 	private static final Logger log = LoggerFactory.getLogger(FileStorage.class);
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final long STATS_TTL = 10 * 60 * 1000L;
 	private final String basePath;
 	private final FileSystem fs;
 	private final boolean flat;
+	private final boolean dedup;
+	private final VertxInternal vertx;
+	private final FileStorageDeduplicator deduplicator;
+	private final Set<String> deduplicating = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile BucketStats stats;
+	private volatile long statsTime;
 
 	public FileStorage(Vertx vertx, String basePath, boolean flat) {
+		this(vertx, basePath, flat, false);
+	}
+
+	/**
+	 * @param dedup store the contents once, the files being hard links to content addressed
+	 * blobs (see {@link FileStorageDeduplicator}).
+	 */
+	public FileStorage(Vertx vertx, String basePath, boolean flat, boolean dedup) {
 		this.basePath = (basePath != null && !basePath.endsWith("/")) ? basePath + "/" : basePath;
 		this.flat = flat;
 		this.fs = vertx.fileSystem();
+		this.vertx = (vertx instanceof VertxInternal) ? (VertxInternal) vertx : null;
+		if (dedup && this.vertx == null) {
+			log.warn("Deduplication needs worker threads, it is disabled for " + basePath);
+		}
+		this.dedup = dedup && this.vertx != null;
+		this.deduplicator = new FileStorageDeduplicator(this.basePath);
 	}
 
 	@Override
@@ -110,6 +144,9 @@ public class FileStorage implements Storage {
 								}
 							}
 						}
+						if ("ok".equals(res.getString("status", "ok"))) {
+							deduplicate(path);
+						}
 						handler.handle(res.putString("_id", id)
 								.putString("status", "ok")
 								.putObject("metadata", metadata));
@@ -172,20 +209,25 @@ public class FileStorage implements Storage {
 		final JsonObject res = new JsonObject();
 		try {
 			final String path = getPath(id);
+			final Handler<AsyncResult<Void>> writeHandler = new Handler<AsyncResult<Void>>() {
+				@Override
+				public void handle(AsyncResult<Void> event) {
+					if (event.succeeded()) {
+						res.putString("status", "ok").putString("_id", id);
+					} else {
+						res.putString("status", "error").putString("message", event.cause().getMessage());
+					}
+					handler.handle(res);
+				}
+			};
 			mkdirsIfNotExists(id, path, new AsyncResultHandler<Void>() {
 				@Override
 				public void handle(AsyncResult<Void> event) {
-					fs.writeFile(path, buff, new Handler<AsyncResult<Void>>() {
-						@Override
-						public void handle(AsyncResult<Void> event) {
-							if (event.succeeded()) {
-								res.putString("status", "ok").putString("_id", id);
-							} else {
-								res.putString("status", "error").putString("message", event.cause().getMessage());
-							}
-							handler.handle(res);
-						}
-					});
+					if (dedup) {
+						replaceFile(path, buff, writeHandler);
+					} else {
+						fs.writeFile(path, buff, writeHandler);
+					}
 				}
 			});
 		} catch (FileNotFoundException e) {
@@ -202,7 +244,15 @@ public class FileStorage implements Storage {
 				@Override
 				public void handle(AsyncResult<Void> event) {
 					if (event.succeeded()) {
-						copyFile(filename, path, handler);
+						copyFile(filename, path, new Handler<JsonObject>() {
+							@Override
+							public void handle(JsonObject event) {
+								if ("ok".equals(event.getString("status"))) {
+									deduplicate(path);
+								}
+								handler.handle(event);
+							}
+						});
 					} else {
 						handler.handle(new JsonObject().putString("status", "error")
 								.putString("message", event.cause().getMessage()));
@@ -242,8 +292,8 @@ public class FileStorage implements Storage {
 	}
 
 	@Override
-	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline,
-			JsonObject metadata, Handler<AsyncResult<Void>> resultHandler) {
+	public void sendFile(final String id, String downloadName, final HttpServerRequest request, boolean inline,
+			JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
 		final HttpServerResponse resp = request.response();
 		try {
 			final String path = getPath(id);
@@ -252,14 +302,48 @@ public class FileStorage implements Storage {
 				resp.putHeader("Content-Disposition", "attachment; filename=\"" + name + "\"");
 			}
 			ETag.addHeader(resp, id);
-			if (metadata != null && metadata.getString("content-type") != null) {
-				resp.putHeader("Content-Type", metadata.getString("content-type"));
-			}
-			if (resultHandler != null) {
-				resp.sendFile(path, resultHandler);
-			} else {
-				resp.sendFile(path);
+			final String contentType = (metadata != null) ? metadata.getString("content-type") : null;
+			if (contentType != null) {
+				resp.putHeader("Content-Type", contentType);
 			}
+			fs.props(path, new Handler<AsyncResult<FileProps>>() {
+				@Override
+				public void handle(AsyncResult<FileProps> event) {
+					if (event.failed()) {
+						resp.setStatusCode(404).setStatusMessage("Not Found").end();
+						if (resultHandler != null) {
+							resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+						}
+						return;
+					}
+					final long size = event.result().size();
+					final long lastModified = event.result().lastModifiedTime().getTime();
+					if (RangeRequests.notModified(request, id, lastModified)) {
+						if (resultHandler != null) {
+							resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+						}
+						return;
+					}
+					resp.putHeader("Last-Modified", RangeRequests.formatDate(lastModified));
+					final List<RangeRequests.Range> ranges = RangeRequests.ranges(request, id, lastModified, size);
+					if (ranges != null) {
+						RangeRequests.sendRanges(resp, ranges, size, contentType, new RangeRequests.RangeReader() {
+							@Override
+							public void read(RangeRequests.Range range, HttpServerResponse response,
+									Handler<AsyncResult<Void>> endHandler) {
+								readRange(path, range, response, endHandler);
+							}
+						}, resultHandler);
+						return;
+					}
+					resp.putHeader("Accept-Ranges", "bytes");
+					if (resultHandler != null) {
+						resp.sendFile(path, resultHandler);
+					} else {
+						resp.sendFile(path);
+					}
+				}
+			});
 		} catch (FileNotFoundException e) {
 			resp.setStatusCode(404).setStatusMessage("Not Found").end();
 			if (resultHandler != null) {
@@ -269,6 +353,54 @@ public class FileStorage implements Storage {
 		}
 	}
 
+	private void readRange(String path, final RangeRequests.Range range, final HttpServerResponse response,
+			final Handler<AsyncResult<Void>> endHandler) {
+		fs.open(path, null, true, false, false, new Handler<AsyncResult<AsyncFile>>() {
+			@Override
+			public void handle(AsyncResult<AsyncFile> event) {
+				if (event.failed()) {
+					log.error(event.cause().getMessage(), event.cause());
+					endHandler.handle(new DefaultAsyncResult<Void>(event.cause()));
+					return;
+				}
+				readRange(event.result(), range.start, range, response, endHandler);
+			}
+		});
+	}
+
+	private static void readRange(final AsyncFile file, final long position, final RangeRequests.Range range,
+			final HttpServerResponse response, final Handler<AsyncResult<Void>> endHandler) {
+		if (position > range.end) {
+			file.close();
+			endHandler.handle(new DefaultAsyncResult<>((Void) null));
+			return;
+		}
+		if (response.writeQueueFull()) {
+			response.drainHandler(new Handler<Void>() {
+				@Override
+				public void handle(Void event) {
+					response.drainHandler(null);
+					readRange(file, position, range, response, endHandler);
+				}
+			});
+			return;
+		}
+		final int length = (int) Math.min(READ_BUFFER_SIZE, range.end - position + 1);
+		file.read(new Buffer(length), 0, position, length, new Handler<AsyncResult<Buffer>>() {
+			@Override
+			public void handle(AsyncResult<Buffer> event) {
+				if (event.failed()) {
+					log.error(event.cause().getMessage(), event.cause());
+					file.close();
+					endHandler.handle(new DefaultAsyncResult<Void>(event.cause()));
+					return;
+				}
+				response.write(event.result());
+				readRange(file, position + length, range, response, endHandler);
+			}
+		});
+	}
+
 	@Override
 	public void removeFile(String id, final Handler<JsonObject> handler) {
 		final JsonObject res = new JsonObject();
@@ -338,7 +470,9 @@ public class FileStorage implements Storage {
 			mkdirsIfNotExists(newId, path, new AsyncResultHandler<Void>() {
 				@Override
 				public void handle(AsyncResult<Void> event) {
-					if (event.succeeded()) {
+					if (event.succeeded() && dedup) {
+						linkFile(sourcePath, path, newId, handler);
+					} else if (event.succeeded()) {
 						copyFile(sourcePath, path, handler);
 					} else {
 						handler.handle(new JsonObject().putString("status", "error")
@@ -353,6 +487,89 @@ public class FileStorage implements Storage {
 		}
 	}
 
+	/**
+	 * Links the copy to the source inode. If the source is being deduplicated, the link may still
+	 * get its previous inode, so the copy is deduplicated too.
+	 */
+	private void linkFile(String from, final String to, final String newId, final Handler<JsonObject> handler) {
+		final JsonObject res = new JsonObject();
+		final boolean sourceDeduplicating = deduplicating.contains(from);
+		fs.link(to, from, new AsyncResultHandler<Void>() {
+			@Override
+			public void handle(AsyncResult<Void> event) {
+				if (event.succeeded()) {
+					if (sourceDeduplicating) {
+						deduplicate(to);
+					}
+					res.putString("status", "ok").putString("_id", newId);
+				} else {
+					res.putString("status", "error").putString("message", event.cause().getMessage());
+					log.error(event.cause().getMessage(), event.cause());
+				}
+				handler.handle(res);
+			}
+		});
+	}
+
+	private void deduplicate(final String path) {
+		if (!dedup) {
+			return;
+		}
+		deduplicating.add(path);
+		new BlockingAction<Boolean>(vertx, new AsyncResultHandler<Boolean>() {
+			@Override
+			public void handle(AsyncResult<Boolean> event) {
+				deduplicating.remove(path);
+				if (event.failed()) {
+					log.error("Error deduplicating file " + path, event.cause());
+				}
+			}
+		}) {
+			@Override
+			public Boolean action() {
+				try {
+					return deduplicator.deduplicate(Paths.get(path));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}.run();
+	}
+
+	/**
+	 * Writes the buffer in a temporary file moved over the path, so an existing file shared with
+	 * other files (a hard link to a blob) is replaced instead of being truncated for all of them.
+	 */
+	private void replaceFile(final String path, final Buffer buff, final Handler<AsyncResult<Void>> handler) {
+		deduplicating.add(path);
+		new BlockingAction<Void>(vertx, new AsyncResultHandler<Void>() {
+			@Override
+			public void handle(AsyncResult<Void> event) {
+				deduplicating.remove(path);
+				handler.handle(event);
+			}
+		}) {
+			@Override
+			public Void action() {
+				final Path file = Paths.get(path);
+				final Path tmp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+				try {
+					Files.write(tmp, buff.getBytes());
+					Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					deduplicator.deduplicate(file);
+				} catch (IOException e) {
+					try {
+						Files.deleteIfExists(tmp);
+					} catch (IOException e1) {
+						log.error("Error deleting temporary file " + tmp, e1);
+					}
+					throw new RuntimeException(e);
+				}
+				return null;
+			}
+		}.run();
+	}
+
 	private void copyFile(String id, final String to, final Handler<JsonObject> handler) {
 		final JsonObject res = new JsonObject();
 		fs.copy(id, to, new AsyncResultHandler<Void>() {
@@ -421,9 +638,36 @@ public class FileStorage implements Storage {
 	}
 
 	@Override
-	public void stats(AsyncResultHandler<BucketStats> handler) {
-		// TODO implement
-		handler.handle(new DefaultAsyncResult<BucketStats>(new StorageException("Not implemented.")));
+	public void stats(final AsyncResultHandler<BucketStats> handler) {
+		final BucketStats s = stats;
+		if (s != null && System.currentTimeMillis() - statsTime < STATS_TTL) {
+			handler.handle(new DefaultAsyncResult<>(s));
+			return;
+		}
+		if (vertx == null) {
+			handler.handle(new DefaultAsyncResult<BucketStats>(
+					new UnsupportedOperationException("Stats need worker threads.")));
+			return;
+		}
+		new BlockingAction<BucketStats>(vertx, new AsyncResultHandler<BucketStats>() {
+			@Override
+			public void handle(AsyncResult<BucketStats> event) {
+				if (event.succeeded()) {
+					stats = event.result();
+					statsTime = System.currentTimeMillis();
+				}
+				handler.handle(event);
+			}
+		}) {
+			@Override
+			public BucketStats action() {
+				try {
+					return deduplicator.stats();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}.run();
 	}
 
 	private String getPath(String file) throws FileNotFoundException {
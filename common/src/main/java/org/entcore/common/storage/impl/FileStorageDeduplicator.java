@@ -0,0 +1,268 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2015
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.storage.impl;
+
+import org.entcore.common.storage.BucketStats;
+import org.vertx.java.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Content addressed blobs of a FileStorage. Each distinct content is kept once in the
+ * {@link #BLOBS_DIR} directory, named by its SHA-256, and files are hard links to it:
+ * the link count is the reference count, a copy is a new link and a remove an unlink.
+ * All the methods are blocking. Can be run from the command line to migrate an existing
+ * storage : FileStorageDeduplicator migrate|verify|gc|stats basePath
+ */
+public class FileStorageDeduplicator {
+
+	public static final String BLOBS_DIR = ".blobs";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Path basePath;
+	private final Path blobsPath;
+
+	public FileStorageDeduplicator(String basePath) {
+		this.basePath = Paths.get(basePath);
+		this.blobsPath = this.basePath.resolve(BLOBS_DIR);
+	}
+
+	/**
+	 * Replaces the file by a link to the blob of its content, creating the blob if needed.
+	 * @return true if the file now shares its content with other files.
+	 */
+	public boolean deduplicate(Path file) throws IOException {
+		final String hash = hash(file);
+		final Path blob = blobPath(hash);
+		if (!Files.exists(blob)) {
+			Files.createDirectories(blob.getParent());
+			try {
+				Files.createLink(blob, file);
+				return false;
+			} catch (FileAlreadyExistsException e) {
+				// the same content was stored concurrently : link the file to that blob
+			}
+		}
+		if (Files.isSameFile(blob, file)) {
+			return false;
+		}
+		// unique name, freed for the link : concurrent deduplications of a file don't collide
+		final Path tmp = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".dedup");
+		try {
+			Files.delete(tmp);
+			Files.createLink(tmp, blob);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		return true;
+	}
+
+	/**
+	 * Deduplicates all the files of the storage.
+	 */
+	public JsonObject migrate() throws IOException {
+		final long[] counters = new long[3];
+		walkFiles(new FileHandler() {
+			@Override
+			public void handle(Path file, BasicFileAttributes attrs) throws IOException {
+				counters[0]++;
+				if (deduplicate(file)) {
+					counters[1]++;
+					counters[2] += attrs.size();
+				}
+			}
+		});
+		return new JsonObject()
+				.putNumber("files", counters[0])
+				.putNumber("deduplicated", counters[1])
+				.putNumber("reclaimedSize", counters[2]);
+	}
+
+	/**
+	 * Checks that every blob content matches its name.
+	 */
+	public JsonObject verify() throws IOException {
+		final long[] counters = new long[3];
+		walkBlobs(new FileHandler() {
+			@Override
+			public void handle(Path blob, BasicFileAttributes attrs) throws IOException {
+				counters[0]++;
+				if (!blob.getFileName().toString().equals(hash(blob))) {
+					counters[1]++;
+				}
+				if (linksCount(blob) <= 1) {
+					counters[2]++;
+				}
+			}
+		});
+		return new JsonObject()
+				.putNumber("blobs", counters[0])
+				.putNumber("corrupted", counters[1])
+				.putNumber("orphans", counters[2]);
+	}
+
+	/**
+	 * Removes the blobs no longer referenced by any file.
+	 */
+	public JsonObject gc() throws IOException {
+		final long[] counters = new long[2];
+		walkBlobs(new FileHandler() {
+			@Override
+			public void handle(Path blob, BasicFileAttributes attrs) throws IOException {
+				if (linksCount(blob) <= 1) {
+					Files.delete(blob);
+					counters[0]++;
+					counters[1] += attrs.size();
+				}
+			}
+		});
+		return new JsonObject()
+				.putNumber("removed", counters[0])
+				.putNumber("reclaimedSize", counters[1]);
+	}
+
+	/**
+	 * Counts the files and the disk usage, each shared content being counted once.
+	 */
+	public BucketStats stats() throws IOException {
+		final Set<Object> inodes = new HashSet<>();
+		final BucketStats stats = new BucketStats();
+		walkFiles(new FileHandler() {
+			@Override
+			public void handle(Path file, BasicFileAttributes attrs) throws IOException {
+				stats.setObjectNumber(stats.getObjectNumber() + 1);
+				final Object key = attrs.fileKey();
+				if (key == null || inodes.add(key)) {
+					stats.setStorageSize(stats.getStorageSize() + attrs.size());
+				}
+			}
+		});
+		return stats;
+	}
+
+	private Path blobPath(String hash) {
+		return blobsPath.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+	}
+
+	private static int linksCount(Path file) throws IOException {
+		return ((Number) Files.getAttribute(file, "unix:nlink")).intValue();
+	}
+
+	static String hash(Path file) throws IOException {
+		final MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				md.update(buffer, 0, read);
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (byte b : md.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	private interface FileHandler {
+		void handle(Path file, BasicFileAttributes attrs) throws IOException;
+	}
+
+	private void walkFiles(final FileHandler handler) throws IOException {
+		Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				return dir.equals(blobsPath) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isRegularFile()) {
+					handler.handle(file, attrs);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void walkBlobs(final FileHandler handler) throws IOException {
+		if (!Files.isDirectory(blobsPath)) {
+			return;
+		}
+		Files.walkFileTree(blobsPath, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isRegularFile()) {
+					handler.handle(file, attrs);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage : FileStorageDeduplicator migrate|verify|gc|stats basePath");
+			System.exit(1);
+		}
+		final FileStorageDeduplicator deduplicator = new FileStorageDeduplicator(args[1]);
+		switch (args[0]) {
+			case "migrate":
+				System.out.println(deduplicator.migrate().encode());
+				break;
+			case "verify":
+				System.out.println(deduplicator.verify().encode());
+				break;
+			case "gc":
+				System.out.println(deduplicator.gc().encode());
+				break;
+			case "stats":
+				final BucketStats stats = deduplicator.stats();
+				System.out.println(new JsonObject()
+						.putNumber("objectNumber", stats.getObjectNumber())
+						.putNumber("storageSize", stats.getStorageSize()).encode());
+				break;
+			default:
+				System.err.println("Unknown command : " + args[0]);
+				System.exit(1);
+		}
+	}
+
+}
@@ -49,14 +49,19 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GridfsStorage implements Storage {
 
 	public static final long BUFFER_SIZE = 1024 * 1024l;
+	public static final int DEFAULT_PREFETCH_WINDOW = 4;
 	private final EventBus eb;
 	private final String gridfsAddress;
 	private final String bucket;
 	private final Vertx vertx;
+	private final int prefetchWindow;
 	private final MongoDb mongoDb = MongoDb.getInstance();
 	private static final Logger log = LoggerFactory.getLogger(GridfsStorage.class);
 
@@ -65,7 +70,12 @@ public class GridfsStorage implements Storage {
 	}
 
 	public GridfsStorage(Vertx vertx, EventBus eb, String gridfsAddress, String bucket) {
+		this(vertx, eb, gridfsAddress, bucket, DEFAULT_PREFETCH_WINDOW);
+	}
+
+	public GridfsStorage(Vertx vertx, EventBus eb, String gridfsAddress, String bucket, int prefetchWindow) {
 		this.eb = eb;
+		this.prefetchWindow = prefetchWindow;
 		String node = (String) vertx.sharedData().getMap("server").get("node");
 		if (node == null) {
 			node = "";
@@ -219,17 +229,17 @@ public class GridfsStorage implements Storage {
 
 	@Override
 	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata) {
-		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, request.response(), inline, metadata);
+		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, request, inline, metadata);
 	}
 
 	@Override
 	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata,
 			Handler<AsyncResult<Void>> resultHandler) {
-		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, request.response(), inline, metadata, resultHandler);
+		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, request, inline, metadata, resultHandler);
 	}
 
 	private static void gridfsReadChunkFile(final String id, final EventBus eb, final String gridfsAddress,
-			final WriteStream writeStream, final Handler<Chunk> handler) {
+			final WriteStream writeStream, final int prefetchWindow, final Handler<Chunk> handler) {
 		JsonObject find = new JsonObject();
 		find.putString("action", "countChunks");
 		find.putString("files_id", id);
@@ -251,47 +261,8 @@ public class GridfsStorage implements Storage {
 						if (number == null || number == 0l) {
 							handler.handle(null);
 						} else {
-							final Handler[] handlers = new Handler[number.intValue()];
-							handlers[handlers.length - 1] = new Handler<Chunk>() {
-								@Override
-								public void handle(Chunk chunk) {
-									handler.handle(chunk);
-									handler.handle(new Chunk(-1, null));
-								}
-							};
-							for (int i = number.intValue() - 2; i >= 0; i--) {
-								final int j = i;
-								handlers[i] = new Handler<Chunk>() {
-									@Override
-									public void handle(final Chunk chunk) {
-										if (writeStream != null && writeStream.writeQueueFull()) {
-											writeStream.drainHandler(new Handler<Void>() {
-												@Override
-												public void handle(Void event) {
-													log.debug("in drain handler");
-													writeStream.drainHandler(null);
-													handler.handle(chunk);
-													getChunk(id, j + 1, eb, gridfsAddress, new Handler<Chunk>() {
-														@Override
-														public void handle(Chunk res) {
-															handlers[j + 1].handle(res);
-														}
-													});
-												}
-											});
-										} else {
-											handler.handle(chunk);
-											getChunk(id, j + 1, eb, gridfsAddress, new Handler<Chunk>() {
-												@Override
-												public void handle(Chunk res) {
-													handlers[j + 1].handle(res);
-												}
-											});
-										}
-									}
-								};
-							}
-							getChunk(id, 0, eb, gridfsAddress, handlers[0]);
+							new ChunksReader(id, eb, gridfsAddress, writeStream, 0, number.intValue() - 1,
+									prefetchWindow, handler).start();
 						}
 					} else {
 						handler.handle(null);
@@ -327,17 +298,65 @@ public class GridfsStorage implements Storage {
 		});
 	}
 
-	private static void gridfsSendChunkFile(final String id, final String downloadName, final EventBus eb,
-									  final String gridfsAddress, final HttpServerResponse response, final boolean inline,
+	private void gridfsSendChunkFile(final String id, final String downloadName, final EventBus eb,
+									  final String gridfsAddress, final HttpServerRequest request, final boolean inline,
 									  final JsonObject metadata) {
-		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, response, inline, metadata, null);
+		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, request, inline, metadata, null);
 	}
 
-	private static void gridfsSendChunkFile(final String id, final String downloadName, final EventBus eb,
-									  final String gridfsAddress, final HttpServerResponse response, final boolean inline,
+	private void gridfsSendChunkFile(final String id, final String downloadName, final EventBus eb,
+									  final String gridfsAddress, final HttpServerRequest request, final boolean inline,
 									  final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
+		final HttpServerResponse response = request.response();
+		if (RangeRequests.notModified(request, id, null)) {
+			if (resultHandler != null) {
+				resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+			}
+			return;
+		}
+		if (request.headers().get("Range") == null) {
+			sendChunks(id, downloadName, request, inline, metadata, resultHandler);
+			return;
+		}
+		// the chunk size depends on the writer (persistor default or BUFFER_SIZE), read it with the length
+		request.pause();
+		mongoDb.findOne(bucket + ".files", new JsonObject().putString("_id", id),
+				new JsonObject().putNumber("chunkSize", 1).putNumber("length", 1), new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> event) {
+				request.resume();
+				final JsonObject file = event.body().getObject("result");
+				final Long chunkSize = (file != null) ? file.getLong("chunkSize") : null;
+				final Long size = (file != null) ? file.getLong("length") : null;
+				final List<RangeRequests.Range> ranges = ("ok".equals(event.body().getString("status")) &&
+						chunkSize != null && chunkSize > 0 && size != null) ?
+						RangeRequests.ranges(request, id, null, size) : null;
+				if (ranges == null) {
+					sendChunks(id, downloadName, request, inline, metadata, resultHandler);
+					return;
+				}
+				sendHeaders(id, downloadName, response, inline, metadata);
+				final String contentType = (metadata != null) ? metadata.getString("content-type") : null;
+				RangeRequests.sendRanges(response, ranges, size, contentType, new RangeRequests.RangeReader() {
+					@Override
+					public void read(RangeRequests.Range range, HttpServerResponse response,
+							Handler<AsyncResult<Void>> endHandler) {
+						readRange(id, range, chunkSize, response, endHandler);
+					}
+				}, resultHandler);
+			}
+		});
+	}
+
+	private void sendChunks(final String id, final String downloadName, final HttpServerRequest request,
+			final boolean inline, final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
+		final HttpServerResponse response = request.response();
+		final long size = (metadata != null) ? metadata.getLong("size", -1l) : -1l;
+		if (size >= 0) {
+			response.putHeader("Accept-Ranges", "bytes");
+		}
 		response.setChunked(true);
-		gridfsReadChunkFile(id, eb, gridfsAddress, response, new Handler<Chunk>() {
+		gridfsReadChunkFile(id, eb, gridfsAddress, response, prefetchWindow, new Handler<Chunk>() {
 			@Override
 			public void handle(Chunk chunk) {
 				if (chunk == null) {
@@ -355,32 +374,7 @@ public class GridfsStorage implements Storage {
 					return;
 				}
 				if (chunk.n == 0) {
-					if (!inline) {
-						String name = downloadName;
-						if (metadata != null && metadata.getString("filename") != null) {
-							String filename = metadata.getString("filename");
-							int fIdx = filename.lastIndexOf('.');
-							String fExt = null;
-							if (fIdx >= 0) {
-								fExt = filename.substring(fIdx);
-							}
-							int dIdx = downloadName.lastIndexOf('.');
-							String dExt = null;
-							if (dIdx >= 0) {
-								dExt = downloadName.substring(dIdx);
-							}
-							if (fExt != null && !fExt.equals(dExt)) {
-								name += fExt;
-							}
-						}
-						response.putHeader("Content-Disposition",
-								"attachment; filename=\"" + name + "\"");
-					} else {
-						ETag.addHeader(response, id);
-					}
-					if (metadata != null && metadata.getString("content-type") != null) {
-						response.putHeader("Content-Type", metadata.getString("content-type"));
-					}
+					sendHeaders(id, downloadName, response, inline, metadata);
 				}
 
 				response.write(chunk.data);
@@ -388,6 +382,75 @@ public class GridfsStorage implements Storage {
 		});
 	}
 
+	private static void sendHeaders(String id, String downloadName, HttpServerResponse response, boolean inline,
+			JsonObject metadata) {
+		if (!inline) {
+			String name = downloadName;
+			if (metadata != null && metadata.getString("filename") != null) {
+				String filename = metadata.getString("filename");
+				int fIdx = filename.lastIndexOf('.');
+				String fExt = null;
+				if (fIdx >= 0) {
+					fExt = filename.substring(fIdx);
+				}
+				int dIdx = downloadName.lastIndexOf('.');
+				String dExt = null;
+				if (dIdx >= 0) {
+					dExt = downloadName.substring(dIdx);
+				}
+				if (fExt != null && !fExt.equals(dExt)) {
+					name += fExt;
+				}
+			}
+			response.putHeader("Content-Disposition",
+					"attachment; filename=\"" + name + "\"");
+		} else {
+			ETag.addHeader(response, id);
+		}
+		if (metadata != null && metadata.getString("content-type") != null) {
+			response.putHeader("Content-Type", metadata.getString("content-type"));
+		}
+	}
+
+	private void readRange(final String id, final RangeRequests.Range range, final long chunkSize,
+			final HttpServerResponse response, final Handler<AsyncResult<Void>> endHandler) {
+		final int first = (int) (range.start / chunkSize);
+		final int last = (int) (range.end / chunkSize);
+		new ChunksReader(id, eb, gridfsAddress, response, first, last, prefetchWindow, new Handler<Chunk>() {
+			@Override
+			public void handle(Chunk chunk) {
+				if (chunk == null) {
+					endHandler.handle(new DefaultAsyncResult<Void>(
+							new IllegalStateException("Error reading chunks of file " + id)));
+					return;
+				}
+				if (chunk.eof()) {
+					endHandler.handle(new DefaultAsyncResult<>((Void) null));
+					return;
+				}
+				final int from = sliceStart(range, chunk.n, chunkSize);
+				final int to = sliceEnd(range, chunk.n, chunkSize, chunk.data.length());
+				if (from < to) {
+					response.write(chunk.data.getBuffer(from, to));
+				}
+			}
+		}).start();
+	}
+
+	/**
+	 * @return the offset in the chunk n of the first byte of the range.
+	 */
+	static int sliceStart(RangeRequests.Range range, int n, long chunkSize) {
+		return (int) Math.max(0, range.start - n * chunkSize);
+	}
+
+	/**
+	 * @return the offset in the chunk n following the last byte of the range.
+	 */
+	static int sliceEnd(RangeRequests.Range range, int n, long chunkSize, int chunkLength) {
+		return (int) Math.min(chunkLength, range.end - n * chunkSize + 1);
+	}
+
 	@Override
 	public void removeFile(String id, Handler<JsonObject> handler) {
 		FileUtils.gridfsRemoveFile(id, eb, gridfsAddress, handler);
@@ -460,6 +523,91 @@ public class GridfsStorage implements Storage {
 		});
 	}
 
+	/**
+	 * Reads the chunks first to last of a file with up to prefetchWindow getChunk requests in flight.
+	 * Chunks are handled in order, and no more chunks than the window are requested
+	 * ahead of the last handled one, so a full write queue stops the prefetch.
+	 */
+	private static class ChunksReader {
+		private final String id;
+		private final EventBus eb;
+		private final String gridfsAddress;
+		private final WriteStream writeStream;
+		private final int last;
+		private final int window;
+		private final Handler<Chunk> handler;
+		private final Map<Integer, Chunk> pending = new HashMap<>();
+		private int nextToRequest;
+		private int nextToHandle;
+		private boolean waitingDrain = false;
+		private boolean done = false;
+
+		private ChunksReader(String id, EventBus eb, String gridfsAddress, WriteStream writeStream,
+				int first, int last, int window, Handler<Chunk> handler) {
+			this.id = id;
+			this.eb = eb;
+			this.gridfsAddress = gridfsAddress;
+			this.writeStream = writeStream;
+			this.nextToRequest = first;
+			this.nextToHandle = first;
+			this.last = last;
+			this.window = Math.max(1, window);
+			this.handler = handler;
+		}
+
+		private void start() {
+			request();
+		}
+
+		private void request() {
+			while (!done && nextToRequest <= last && nextToRequest - nextToHandle < window) {
+				getChunk(id, nextToRequest++, eb, gridfsAddress, new Handler<Chunk>() {
+					@Override
+					public void handle(Chunk chunk) {
+						received(chunk);
+					}
+				});
+			}
+		}
+
+		private void received(Chunk chunk) {
+			if (done) return;
+			if (chunk == null) {
+				done = true;
+				pending.clear();
+				handler.handle(null);
+				return;
+			}
+			pending.put(chunk.n, chunk);
+			handleReceived();
+		}
+
+		private void handleReceived() {
+			while (!done && !waitingDrain && pending.containsKey(nextToHandle)) {
+				if (writeStream != null && writeStream.writeQueueFull()) {
+					waitingDrain = true;
+					writeStream.drainHandler(new Handler<Void>() {
+						@Override
+						public void handle(Void event) {
+							log.debug("in drain handler");
+							writeStream.drainHandler(null);
+							waitingDrain = false;
+							handleReceived();
+						}
+					});
+					return;
+				}
+				handler.handle(pending.remove(nextToHandle++));
+				if (nextToHandle > last) {
+					done = true;
+					handler.handle(new Chunk(-1, null));
+					return;
+				}
+			}
+			request();
+		}
+	}
+
 	private static class Chunk {
 		private final int n;
 		private final Buffer data;
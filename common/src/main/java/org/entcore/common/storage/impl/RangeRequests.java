@@ -0,0 +1,270 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2015
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.storage.impl;
+
+import fr.wseduc.webutils.DefaultAsyncResult;
+import fr.wseduc.webutils.http.ETag;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Conditional (If-None-Match, If-Modified-Since) and byte range (Range, If-Range) handling
+ * shared by the storage implementations. The content of each range is read by the backend.
+ */
+final class RangeRequests {
+
+	private static final int MAX_RANGES = 16;
+
+	private RangeRequests() {}
+
+	static final class Range {
+		final long start;
+		final long end;
+
+		Range(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		long length() {
+			return end - start + 1;
+		}
+	}
+
+	interface RangeReader {
+		/**
+		 * Writes the bytes of the range to the response, honouring its write queue,
+		 * then calls the end handler, failed with the cause if the content can't be read.
+		 */
+		void read(Range range, HttpServerResponse response, Handler<AsyncResult<Void>> endHandler);
+	}
+
+	/**
+	 * Ends the response with 304 when the client representation is still valid.
+	 * @param lastModified modification time in ms, null if unknown.
+	 */
+	static boolean notModified(HttpServerRequest request, String etag, Long lastModified) {
+		final String ifNoneMatch = request.headers().get("If-None-Match");
+		boolean notModified;
+		if (ifNoneMatch != null) {
+			notModified = ETag.check(request, etag);
+		} else {
+			final Date since = parseDate(request.headers().get("If-Modified-Since"));
+			notModified = since != null && lastModified != null && lastModified / 1000 <= since.getTime() / 1000;
+		}
+		if (notModified) {
+			final HttpServerResponse response = request.response();
+			ETag.addHeader(response, etag);
+			response.setStatusCode(304).setStatusMessage("Not Modified").end();
+		}
+		return notModified;
+	}
+
+	/**
+	 * @return the requested ranges, null when the whole content must be sent,
+	 * an empty list when no range can be satisfied.
+	 */
+	static List<Range> ranges(HttpServerRequest request, String etag, Long lastModified, long size) {
+		if (!ifRangeMatches(request.headers().get("If-Range"), etag, lastModified)) {
+			return null;
+		}
+		return parse(request.headers().get("Range"), size);
+	}
+
+	/**
+	 * @return the ranges of a Range header value, null if it is missing or invalid,
+	 * an empty list when no range can be satisfied.
+	 */
+	static List<Range> parse(String header, long size) {
+		if (header == null || !header.startsWith("bytes=") || size < 0) {
+			return null;
+		}
+		final String[] specs = header.substring(6).split(",");
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+		final List<Range> ranges = new ArrayList<>();
+		for (String spec : specs) {
+			spec = spec.trim();
+			final int idx = spec.indexOf('-');
+			if (idx < 0) {
+				return null;
+			}
+			long start, end;
+			try {
+				if (idx == 0) {
+					final long suffix = Long.parseLong(spec.substring(1));
+					if (suffix == 0) continue;
+					start = Math.max(0, size - suffix);
+					end = size - 1;
+				} else {
+					start = Long.parseLong(spec.substring(0, idx));
+					if (idx == spec.length() - 1) {
+						end = size - 1;
+					} else {
+						final long last = Long.parseLong(spec.substring(idx + 1));
+						if (last < start) {
+							return null;
+						}
+						end = Math.min(last, size - 1);
+					}
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (start < size) {
+				ranges.add(new Range(start, end));
+			}
+		}
+		return ranges;
+	}
+
+	static boolean ifRangeMatches(String ifRange, String etag, Long lastModified) {
+		if (ifRange == null) {
+			return true;
+		}
+		final String value = ifRange.trim();
+		if (value.startsWith("\"") || value.startsWith("W/")) {
+			return !value.startsWith("W/") && etag != null && etag.equals(value.replace("\"", ""));
+		}
+		final Date date = parseDate(value);
+		return date != null && lastModified != null && lastModified / 1000 == date.getTime() / 1000;
+	}
+
+	/**
+	 * Sends the ranges with a 206, as a multipart/byteranges body when there are several,
+	 * or a 416 when none can be satisfied.
+	 */
+	static void sendRanges(final HttpServerResponse response, final List<Range> ranges, final long size,
+			final String contentType, final RangeReader reader, final Handler<AsyncResult<Void>> resultHandler) {
+		if (ranges.isEmpty()) {
+			response.putHeader("Content-Range", "bytes */" + size);
+			response.setStatusCode(416).setStatusMessage("Requested Range Not Satisfiable").end();
+			done(resultHandler);
+			return;
+		}
+		response.putHeader("Accept-Ranges", "bytes");
+		response.setStatusCode(206).setStatusMessage("Partial Content");
+		if (ranges.size() == 1) {
+			final Range range = ranges.get(0);
+			if (contentType != null) {
+				response.putHeader("Content-Type", contentType);
+			}
+			response.putHeader("Content-Range", contentRange(range, size));
+			response.putHeader("Content-Length", String.valueOf(range.length()));
+			reader.read(range, response, new Handler<AsyncResult<Void>>() {
+				@Override
+				public void handle(AsyncResult<Void> read) {
+					end(response, read, resultHandler);
+				}
+			});
+			return;
+		}
+		final String boundary = UUID.randomUUID().toString().replace("-", "");
+		response.putHeader("Content-Type", "multipart/byteranges; boundary=" + boundary);
+		response.setChunked(true);
+		sendPart(response, ranges, 0, size, contentType, boundary, reader, resultHandler);
+	}
+
+	private static void sendPart(final HttpServerResponse response, final List<Range> ranges, final int idx,
+			final long size, final String contentType, final String boundary, final RangeReader reader,
+			final Handler<AsyncResult<Void>> resultHandler) {
+		if (idx >= ranges.size()) {
+			response.write("\r\n--" + boundary + "--\r\n");
+			end(response, new DefaultAsyncResult<>((Void) null), resultHandler);
+			return;
+		}
+		final Range range = ranges.get(idx);
+		final StringBuilder part = new StringBuilder("\r\n--").append(boundary).append("\r\n");
+		if (contentType != null) {
+			part.append("Content-Type: ").append(contentType).append("\r\n");
+		}
+		part.append("Content-Range: ").append(contentRange(range, size)).append("\r\n\r\n");
+		response.write(new Buffer(part.toString()));
+		reader.read(range, response, new Handler<AsyncResult<Void>>() {
+			@Override
+			public void handle(AsyncResult<Void> read) {
+				if (read.succeeded()) {
+					sendPart(response, ranges, idx + 1, size, contentType, boundary, reader, resultHandler);
+				} else {
+					end(response, read, resultHandler);
+				}
+			}
+		});
+	}
+
+	private static String contentRange(Range range, long size) {
+		return "bytes " + range.start + "-" + range.end + "/" + size;
+	}
+
+	/**
+	 * Ends the response, or closes it if a range failed : the result handler then gets the failure.
+	 */
+	private static void end(HttpServerResponse response, AsyncResult<Void> read,
+			Handler<AsyncResult<Void>> resultHandler) {
+		if (read.succeeded()) {
+			response.end();
+			done(resultHandler);
+		} else {
+			response.close();
+			if (resultHandler != null) {
+				resultHandler.handle(read);
+			}
+		}
+	}
+
+	private static void done(Handler<AsyncResult<Void>> resultHandler) {
+		if (resultHandler != null) {
+			resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+		}
+	}
+
+	static Date parseDate(String date) {
+		if (date == null) {
+			return null;
+		}
+		final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			return format.parse(date.trim());
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	static String formatDate(long date) {
+		final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(date));
+	}
+
+}
@@ -114,12 +114,21 @@ public class SwiftStorage implements Storage {
 
 	@Override
 	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata) {
+		if (RangeRequests.notModified(request, id, null)) {
+			return;
+		}
 		swiftClient.downloadFile(id, request, inline, downloadName, metadata, id);
 	}
 
 	@Override
 	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata,
 			Handler<AsyncResult<Void>> resultHandler) {
+		if (RangeRequests.notModified(request, id, null)) {
+			if (resultHandler != null) {
+				resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+			}
+			return;
+		}
 		swiftClient.downloadFile(id, request, inline, downloadName, metadata, id, resultHandler);
 	}
 
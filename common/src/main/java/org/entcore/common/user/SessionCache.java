@@ -0,0 +1,245 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.common.user;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local cache of sessions returned by the session module.
+ * Entries are bounded in number and in age, and are evicted when the session module
+ * publishes an invalidation on {@link #INVALIDATION_ADDRESS} (drop, attribute update, expiry).
+ * Invalidated session ids are remembered with the generation of their invalidation so that a
+ * find reply received after it is not cached.
+ */
+public class SessionCache {
+
+	public static final String INVALIDATION_ADDRESS = "wse.session.invalidate";
+	private static final int DEFAULT_MAX_SIZE = 10000;
+	private static final long DEFAULT_TTL = 60 * 1000;
+	private static final Logger log = LoggerFactory.getLogger(SessionCache.class);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong generation = new AtomicLong();
+	private Map<String, Entry> entries;
+	private Map<String, Long> tombstones;
+	private long forgottenGeneration = 0;
+	private int maxSize;
+	private long ttl;
+	private boolean enabled = false;
+
+	private static final class Entry {
+		final JsonObject session;
+		final String userId;
+		final Set<String> authorizedActions;
+		final long expire;
+
+		private Entry(JsonObject session, long expire) {
+			this.session = session;
+			this.userId = session.getString("userId");
+			this.authorizedActions = actionsNames(session);
+			this.expire = expire;
+		}
+	}
+
+	private SessionCache() {}
+
+	private static class SessionCacheHolder {
+		private static final SessionCache instance = new SessionCache();
+	}
+
+	public static SessionCache getInstance() {
+		return SessionCacheHolder.instance;
+	}
+
+	public synchronized void init(Vertx vertx, JsonObject config) {
+		if (enabled) {
+			return;
+		}
+		final JsonObject conf = (config != null) ? config : new JsonObject();
+		if (!conf.getBoolean("enabled", true)) {
+			return;
+		}
+		maxSize = conf.getInteger("max-size", DEFAULT_MAX_SIZE);
+		ttl = conf.getLong("ttl", DEFAULT_TTL);
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+		tombstones = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				if (size() > maxSize) {
+					forgottenGeneration = Math.max(forgottenGeneration, eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+		vertx.eventBus().registerHandler(INVALIDATION_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				JsonArray sessionIds = message.body().getArray("sessionIds");
+				if (sessionIds != null) {
+					for (Object sessionId : sessionIds) {
+						if (sessionId instanceof String) {
+							invalidate((String) sessionId);
+						}
+					}
+				}
+			}
+		});
+		enabled = true;
+		log.info("Session cache enabled : max-size " + maxSize + ", ttl " + ttl + " ms.");
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return a copy of the cached session, or null if absent or expired.
+	 */
+	public JsonObject get(String sessionId) {
+		if (!enabled || sessionId == null) {
+			return null;
+		}
+		Entry e;
+		synchronized (this) {
+			e = entries.get(sessionId);
+			if (e != null && e.expire < System.currentTimeMillis()) {
+				entries.remove(sessionId);
+				e = null;
+			}
+		}
+		if (e == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return e.session.copy();
+	}
+
+	/**
+	 * @return the generation to give to {@link #put(String, JsonObject, long)} once the session
+	 * requested now is received.
+	 */
+	public long generation() {
+		return generation.get();
+	}
+
+	/**
+	 * Caches a session fetched from the session module, unless it was invalidated since the
+	 * fetch started : a late reply must not bring back a dropped session.
+	 */
+	public void put(String sessionId, JsonObject session, long fetchGeneration) {
+		if (!enabled || sessionId == null || session == null) {
+			return;
+		}
+		Entry e = new Entry(session.copy(), System.currentTimeMillis() + ttl);
+		synchronized (this) {
+			final Long invalidated = tombstones.get(sessionId);
+			if ((invalidated != null && invalidated > fetchGeneration) || forgottenGeneration > fetchGeneration) {
+				return;
+			}
+			entries.put(sessionId, e);
+		}
+	}
+
+	/**
+	 * @return the names of the session authorized actions, shared with the unexpired cache entry
+	 * of this session when there is one, built from the session otherwise.
+	 */
+	public Set<String> authorizedActions(String sessionId, JsonObject session) {
+		if (enabled && sessionId != null) {
+			Entry e;
+			synchronized (this) {
+				e = entries.get(sessionId);
+				if (e != null && e.expire < System.currentTimeMillis()) {
+					entries.remove(sessionId);
+					e = null;
+				}
+			}
+			if (e != null && e.userId != null && e.userId.equals(session.getString("userId"))) {
+				return e.authorizedActions;
+			}
+		}
+		return actionsNames(session);
+	}
+
+	private static Set<String> actionsNames(JsonObject session) {
+		JsonArray actions = session.getArray("authorizedActions");
+		if (actions == null || actions.size() == 0) {
+			return Collections.emptySet();
+		}
+		Set<String> names = new HashSet<>(actions.size() * 2);
+		for (Object a : actions) {
+			if (a instanceof JsonObject) {
+				names.add(((JsonObject) a).getString("name"));
+			}
+		}
+		return Collections.unmodifiableSet(names);
+	}
+
+	public void invalidate(String sessionId) {
+		if (!enabled || sessionId == null) {
+			return;
+		}
+		synchronized (this) {
+			tombstones.remove(sessionId);
+			tombstones.put(sessionId, generation.incrementAndGet());
+			if (entries.remove(sessionId) != null) {
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	public JsonObject stats() {
+		int size = 0;
+		if (enabled) {
+			synchronized (this) {
+				size = entries.size();
+			}
+		}
+		return new JsonObject()
+				.putBoolean("enabled", enabled)
+				.putNumber("size", size)
+				.putNumber("hits", hits.get())
+				.putNumber("misses", misses.get())
+				.putNumber("invalidations", invalidations.get());
+	}
+
+}
@@ -0,0 +1,239 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.common.user;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binds a session JsonObject to UserInfos field by field, without the
+ * encode/parse round trip through Jackson. Unknown fields are kept in
+ * the other properties map, as the Jackson any-setter did.
+ */
+final class UserInfosBinder {
+
+	private UserInfosBinder() {}
+
+	static UserInfos bind(JsonObject session) {
+		final UserInfos u = new UserInfos();
+		for (String field : session.getFieldNames()) {
+			final Object value = session.getValue(field);
+			switch (field) {
+				case "userId":
+					u.setUserId(asString(value));
+					break;
+				case "externalId":
+					u.setExternalId(asString(value));
+					break;
+				case "firstName":
+					u.setFirstName(asString(value));
+					break;
+				case "lastName":
+					u.setLastName(asString(value));
+					break;
+				case "username":
+					u.setUsername(asString(value));
+					break;
+				case "birthDate":
+					u.setBirthDate(asString(value));
+					break;
+				case "level":
+					u.setLevel(asString(value));
+					break;
+				case "type":
+					u.setType(asString(value));
+					break;
+				case "login":
+					u.setLogin(asString(value));
+					break;
+				case "classNames":
+					u.setClassNames(asStringList(value));
+					break;
+				case "structureNames":
+					u.setStructureNames(asStringList(value));
+					break;
+				case "uai":
+					u.setUai(asStringList(value));
+					break;
+				case "childrenIds":
+					u.setChildrenIds(asStringList(value));
+					break;
+				case "groupsIds":
+				case "profilGroupsIds":
+					u.setGroupsIds(asStringList(value));
+					break;
+				case "classes":
+					u.setClasses(asStringList(value));
+					break;
+				case "structures":
+					u.setStructures(asStringList(value));
+					break;
+				case "federated":
+					u.setFederated((value instanceof Boolean) ? (Boolean) value : null);
+					break;
+				case "cache":
+					u.setCache((value instanceof JsonObject) ? ((JsonObject) value).toMap() : null);
+					break;
+				case "authorizedActions":
+					u.setAuthorizedActions(asActions(value));
+					break;
+				case "apps":
+					u.setApps(asApplications(value));
+					break;
+				case "widgets":
+					u.setWidgets(asWidgets(value));
+					break;
+				case "functions":
+					u.setFunctions(asFunctions(value));
+					break;
+				default:
+					u.setOtherProperty(field, unwrap(value));
+			}
+		}
+		return u;
+	}
+
+	private static List<UserInfos.Action> asActions(Object value) {
+		if (!(value instanceof JsonArray)) {
+			return null;
+		}
+		final JsonArray a = (JsonArray) value;
+		final List<UserInfos.Action> actions = new ArrayList<>(a.size());
+		for (Object o : a) {
+			if (!(o instanceof JsonObject)) continue;
+			final JsonObject j = (JsonObject) o;
+			final UserInfos.Action action = new UserInfos.Action();
+			action.setName(j.getString("name"));
+			action.setDisplayName(j.getString("displayName"));
+			action.setType(j.getString("type"));
+			actions.add(action);
+		}
+		return actions;
+	}
+
+	private static List<UserInfos.Application> asApplications(Object value) {
+		if (!(value instanceof JsonArray)) {
+			return null;
+		}
+		final JsonArray a = (JsonArray) value;
+		final List<UserInfos.Application> apps = new ArrayList<>(a.size());
+		for (Object o : a) {
+			if (!(o instanceof JsonObject)) continue;
+			final JsonObject j = (JsonObject) o;
+			final UserInfos.Application app = new UserInfos.Application();
+			app.setName(j.getString("name"));
+			app.setAddress(j.getString("address"));
+			app.setIcon(j.getString("icon"));
+			app.setTarget(j.getString("target"));
+			app.setDisplayName(j.getString("displayName"));
+			app.setDisplay(j.getBoolean("display", false));
+			app.setPrefix(j.getString("prefix"));
+			apps.add(app);
+		}
+		return apps;
+	}
+
+	private static List<UserInfos.Widget> asWidgets(Object value) {
+		if (!(value instanceof JsonArray)) {
+			return null;
+		}
+		final JsonArray a = (JsonArray) value;
+		final List<UserInfos.Widget> widgets = new ArrayList<>(a.size());
+		for (Object o : a) {
+			if (!(o instanceof JsonObject)) continue;
+			final JsonObject j = (JsonObject) o;
+			final UserInfos.Widget widget = new UserInfos.Widget();
+			widget.setId(j.getString("id"));
+			widget.setName(j.getString("name"));
+			widget.setPath(j.getString("path"));
+			widget.setJs(j.getString("js"));
+			widget.setI18n(j.getString("i18n"));
+			widget.setApplication(j.getString("application"));
+			widget.setMandatory(j.getBoolean("mandatory", false));
+			widgets.add(widget);
+		}
+		return widgets;
+	}
+
+	private static Map<String, UserInfos.Function> asFunctions(Object value) {
+		if (!(value instanceof JsonObject)) {
+			return null;
+		}
+		final JsonObject f = (JsonObject) value;
+		final Map<String, UserInfos.Function> functions = new HashMap<>();
+		for (String code : f.getFieldNames()) {
+			final JsonObject j = f.getObject(code);
+			if (j == null) continue;
+			final UserInfos.Function function = new UserInfos.Function();
+			function.setCode(j.getString("code"));
+			function.setFunctionName(j.getString("functionName"));
+			function.setScope(asStringList(j.getArray("scope")));
+			function.setStructureExternalIds(asStringList(j.getArray("structureExternalIds")));
+			final JsonObject s = j.getObject("subjects");
+			if (s != null) {
+				final Map<String, UserInfos.Subject> subjects = new HashMap<>();
+				for (String subjectCode : s.getFieldNames()) {
+					final JsonObject sj = s.getObject(subjectCode);
+					if (sj == null) continue;
+					final UserInfos.Subject subject = new UserInfos.Subject();
+					subject.setSubjectCode(sj.getString("subjectCode"));
+					subject.setSubjectName(sj.getString("subjectName"));
+					subject.setScope(asStringList(sj.getArray("scope")));
+					subject.setStructureExternalIds(asStringList(sj.getArray("structureExternalIds")));
+					subjects.put(subjectCode, subject);
+				}
+				function.setSubjects(subjects);
+			}
+			functions.put(code, function);
+		}
+		return functions;
+	}
+
+	private static String asString(Object value) {
+		return (value != null) ? value.toString() : null;
+	}
+
+	private static List<String> asStringList(Object value) {
+		if (!(value instanceof JsonArray)) {
+			return null;
+		}
+		final JsonArray a = (JsonArray) value;
+		final List<String> l = new ArrayList<>(a.size());
+		for (Object o : a) {
+			l.add(asString(o));
+		}
+		return l;
+	}
+
+	private static Object unwrap(Object value) {
+		if (value instanceof JsonObject) {
+			return ((JsonObject) value).toMap();
+		} else if (value instanceof JsonArray) {
+			return ((JsonArray) value).toList();
+		}
+		return value;
+	}
+
+}
@@ -19,7 +19,6 @@
 
 package org.entcore.common.user;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.wseduc.webutils.I18n;
 import fr.wseduc.webutils.request.CookieHelper;
 import fr.wseduc.webutils.security.SecureHttpServerRequest;
@@ -29,14 +28,16 @@ import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
-
-import java.io.IOException;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
 
 public class UserUtils {
 
+	private static final Logger log = LoggerFactory.getLogger(UserUtils.class);
 	private static final String COMMUNICATION_USERS = "wse.communication.users";
 	private static final String DIRECTORY = "directory";
 	private static final String SESSION_ADDRESS = "wse.session";
+	public static final String SESSION_ID_ATTRIBUTE = "oneSessionId";
 	private static final JsonArray usersTypes = new JsonArray().addString("User");
 	private static final JsonObject QUERY_VISIBLE_PROFILS_GROUPS = new JsonObject()
 			.putString("action", "visibleProfilsGroups");
@@ -261,6 +262,71 @@ public class UserUtils {
 		findUsers(eb, request, m, handler);
 	}
 
+	/**
+	 * Keeps the users and groups visible by userId.
+	 * @param handler receives the visible ids.
+	 */
+	public static void filterVisibles(final EventBus eb, String userId, JsonArray userIds, JsonArray groupIds,
+			final Handler<JsonArray> handler) {
+		JsonObject m = new JsonObject()
+				.putString("action", "visibleIds")
+				.putArray("userIds", (userIds != null) ? userIds : new JsonArray())
+				.putArray("groupIds", (groupIds != null) ? groupIds : new JsonArray());
+		findUsers(eb, userId, m, handler);
+	}
+
+	/**
+	 * Typeahead over the users and groups visible by userId, matching the prefixes of their names.
+	 * @param limit page size, capped at 50 by the communication module.
+	 * @param handler receives at most limit visibles, with the groups names translated.
+	 */
+	public static void searchVisibles(EventBus eb, String userId, String search, boolean itSelf, boolean myGroup,
+			String customReturn, JsonObject additionnalParams, int skip, int limit,
+			final String acceptLanguage, final Handler<JsonArray> handler) {
+		JsonObject m = querySearchVisibles(search, null, customReturn, additionnalParams, skip, limit)
+				.putBoolean("itself", itSelf)
+				.putBoolean("mygroup", myGroup);
+		findUsers(eb, userId, m, new Handler<JsonArray>() {
+			@Override
+			public void handle(JsonArray r) {
+				if (acceptLanguage != null) {
+					translateGroupsNames(r, acceptLanguage);
+				}
+				handler.handle(r);
+			}
+		});
+	}
+
+	/**
+	 * Typeahead over the users visible by the user of the request, matching the prefixes of their names.
+	 * The limit is capped at 50 by the communication module.
+	 */
+	public static void searchVisibleUsers(EventBus eb, HttpServerRequest request, String search, String preFilter,
+			String customReturn, JsonObject additionnalParams, int skip, int limit, Handler<JsonArray> handler) {
+		JsonObject m = querySearchVisibles(search, preFilter, customReturn, additionnalParams, skip, limit)
+				.putArray("expectedTypes", usersTypes);
+		findUsers(eb, request, m, handler);
+	}
+
+	private static JsonObject querySearchVisibles(String search, String preFilter, String customReturn,
+			JsonObject additionnalParams, int skip, int limit) {
+		JsonObject m = new JsonObject()
+				.putString("action", "searchVisibles")
+				.putString("search", search)
+				.putNumber("skip", skip)
+				.putNumber("limit", limit);
+		if (preFilter != null) {
+			m.putString("preFilter", preFilter);
+		}
+		if (customReturn != null) {
+			m.putString("customReturn", customReturn);
+		}
+		if (additionnalParams != null) {
+			m.putObject("additionnalParams", additionnalParams);
+		}
+		return m;
+	}
+
 	public static void getSession(EventBus eb, final HttpServerRequest request,
 								  final Handler<JsonObject> handler) {
 		if (request instanceof SecureHttpServerRequest &&
@@ -277,6 +343,19 @@ public class UserUtils {
 				handler.handle(null);
 				return;
 			} else {
+				if (oneSessionId != null && !oneSessionId.trim().isEmpty()) {
+					if (request instanceof SecureHttpServerRequest) {
+						((SecureHttpServerRequest) request).setAttribute(SESSION_ID_ATTRIBUTE, oneSessionId);
+					}
+					JsonObject session = SessionCache.getInstance().get(oneSessionId);
+					if (session != null) {
+						if (request instanceof SecureHttpServerRequest) {
+							((SecureHttpServerRequest) request).setSession(session);
+						}
+						handler.handle(session);
+						return;
+					}
+				}
 				request.pause();
 				JsonObject findSession = new JsonObject();
 				if (oneSessionId != null && !oneSessionId.trim().isEmpty()) {
@@ -292,8 +371,9 @@ public class UserUtils {
 		}
 	}
 
-	private static void findSession(EventBus eb, final HttpServerRequest request, JsonObject findSession,
+	private static void findSession(EventBus eb, final HttpServerRequest request, final JsonObject findSession,
 			final Handler<JsonObject> handler) {
+		final long generation = SessionCache.getInstance().generation();
 		eb.send(SESSION_ADDRESS, findSession, new Handler<Message<JsonObject>>() {
 
 			@Override
@@ -303,6 +383,9 @@ public class UserUtils {
 					request.resume();
 				}
 				if ("ok".equals(message.body().getString("status")) && session != null) {
+					if ("find".equals(findSession.getString("action"))) {
+						SessionCache.getInstance().put(findSession.getString("sessionId"), session, generation);
+					}
 					if (request instanceof SecureHttpServerRequest) {
 						((SecureHttpServerRequest) request).setSession(session);
 					}
@@ -315,6 +398,11 @@ public class UserUtils {
 	}
 
 	public static void getSession(EventBus eb, final String sessionId,  final Handler<JsonObject> handler) {
+		JsonObject session = SessionCache.getInstance().get(sessionId);
+		if (session != null) {
+			handler.handle(session);
+			return;
+		}
 		JsonObject findSession = new JsonObject()
 				.putString("action", "find")
 				.putString("sessionId", sessionId);
@@ -325,11 +413,10 @@ public class UserUtils {
 		if (session == null) {
 			return null;
 		}
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			return mapper.readValue(session.encode(), UserInfos.class);
-		} catch (IOException e) {
-			e.printStackTrace();
+			return UserInfosBinder.bind(session);
+		} catch (RuntimeException e) {
+			log.error("Error binding session to UserInfos.", e);
 			return null;
 		}
 	}
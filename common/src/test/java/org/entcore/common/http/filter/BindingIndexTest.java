@@ -0,0 +1,82 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.common.http.filter;
+
+import fr.wseduc.webutils.http.Binding;
+import fr.wseduc.webutils.http.HttpMethod;
+import fr.wseduc.webutils.security.ActionType;
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BindingIndexTest {
+
+	private static Binding binding(HttpMethod method, String pattern, String serviceMethod) {
+		return new Binding(method, Pattern.compile(pattern), serviceMethod, ActionType.WORKFLOW);
+	}
+
+	@Test
+	public void literalPrefix() {
+		assertEquals("/blog/", BindingIndex.literalPrefix("/blog/(?<id>[^\\/]+)"));
+		assertEquals("/blog/lis", BindingIndex.literalPrefix("/blog/list?"));
+		assertEquals("/blog/list", BindingIndex.literalPrefix("^/blog/list$"));
+		assertEquals("", BindingIndex.literalPrefix("/blog|/wiki"));
+		assertEquals("", BindingIndex.literalPrefix(".*"));
+	}
+
+	@Test
+	public void lookupByMethodAndPath() {
+		final Set<Binding> bindings = new LinkedHashSet<>();
+		bindings.add(binding(HttpMethod.GET, "/blog/list/all", "list"));
+		bindings.add(binding(HttpMethod.POST, "/blog", "create"));
+		bindings.add(binding(HttpMethod.GET, "/wiki/(?<id>[^\\/]+)", "wiki"));
+		final BindingIndex index = new BindingIndex(bindings);
+		assertEquals(3, index.size());
+		assertEquals("list", index.lookup("GET", "/blog/list/all").getServiceMethod());
+		assertEquals("create", index.lookup("POST", "/blog").getServiceMethod());
+		assertEquals("wiki", index.lookup("GET", "/wiki/123").getServiceMethod());
+		assertNull(index.lookup("POST", "/blog/list/all"));
+		assertNull(index.lookup("GET", "/wiki/123/456"));
+		assertNull(index.lookup("DELETE", "/blog"));
+		assertNull(index.lookup("GET", null));
+	}
+
+	/**
+	 * When several patterns match, the binding with the longest literal prefix wins, whatever
+	 * the iteration order of the bindings set (the former linear scan returned the first match).
+	 */
+	@Test
+	public void longestPrefixFirst() {
+		final Set<Binding> bindings = new LinkedHashSet<>();
+		bindings.add(binding(HttpMethod.GET, "/blog/.*", "generic"));
+		bindings.add(binding(HttpMethod.GET, "/blog/list/all", "specific"));
+		bindings.add(binding(HttpMethod.GET, ".*", "any"));
+		final BindingIndex index = new BindingIndex(bindings);
+		assertEquals("specific", index.lookup("GET", "/blog/list/all").getServiceMethod());
+		assertEquals("generic", index.lookup("GET", "/blog/other").getServiceMethod());
+		assertEquals("any", index.lookup("GET", "/wiki").getServiceMethod());
+	}
+
+}
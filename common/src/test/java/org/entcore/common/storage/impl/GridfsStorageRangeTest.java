@@ -0,0 +1,86 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.common.storage.impl;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GridfsStorageRangeTest {
+
+	// default chunk size of the persistor gridfsWriteUploadFile and gridfsWriteBuffer
+	private static final int DEFAULT_GRIDFS_CHUNK_SIZE = 255 * 1024;
+
+	private static byte[] content(int length) {
+		final byte[] content = new byte[length];
+		new Random(length).nextBytes(content);
+		return content;
+	}
+
+	private static byte[] read(byte[] content, RangeRequests.Range range, long chunkSize) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final int first = (int) (range.start / chunkSize);
+		final int last = (int) (range.end / chunkSize);
+		for (int n = first; n <= last; n++) {
+			final int chunkStart = (int) (n * chunkSize);
+			final byte[] chunk = Arrays.copyOfRange(content, chunkStart,
+					(int) Math.min(content.length, chunkStart + chunkSize));
+			final int from = GridfsStorage.sliceStart(range, n, chunkSize);
+			final int to = GridfsStorage.sliceEnd(range, n, chunkSize, chunk.length);
+			if (from < to) {
+				out.write(chunk, from, to - from);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static void assertRange(byte[] content, long chunkSize, long start, long end) {
+		final RangeRequests.Range range = new RangeRequests.Range(start, end);
+		final byte[] bytes = read(content, range, chunkSize);
+		assertEquals(range.length(), bytes.length);
+		assertArrayEquals(Arrays.copyOfRange(content, (int) start, (int) end + 1), bytes);
+	}
+
+	@Test
+	public void rangesOfDefaultChunkSizeFile() {
+		final byte[] content = content(3 * DEFAULT_GRIDFS_CHUNK_SIZE + 1000);
+		final long last = content.length - 1;
+		assertRange(content, DEFAULT_GRIDFS_CHUNK_SIZE, 0, 0);
+		assertRange(content, DEFAULT_GRIDFS_CHUNK_SIZE, 0, last);
+		assertRange(content, DEFAULT_GRIDFS_CHUNK_SIZE, DEFAULT_GRIDFS_CHUNK_SIZE - 1, DEFAULT_GRIDFS_CHUNK_SIZE);
+		assertRange(content, DEFAULT_GRIDFS_CHUNK_SIZE, 2 * DEFAULT_GRIDFS_CHUNK_SIZE, 2 * DEFAULT_GRIDFS_CHUNK_SIZE);
+		assertRange(content, DEFAULT_GRIDFS_CHUNK_SIZE, 300 * 1024, 700 * 1024);
+		assertRange(content, DEFAULT_GRIDFS_CHUNK_SIZE, last - 10, last);
+	}
+
+	@Test
+	public void rangesOfBufferSizeChunkFile() {
+		final byte[] content = content((int) (2 * GridfsStorage.BUFFER_SIZE + 7));
+		assertRange(content, GridfsStorage.BUFFER_SIZE, 0, content.length - 1);
+		assertRange(content, GridfsStorage.BUFFER_SIZE, GridfsStorage.BUFFER_SIZE - 3, GridfsStorage.BUFFER_SIZE + 3);
+		assertRange(content, GridfsStorage.BUFFER_SIZE, 300 * 1024, 700 * 1024);
+	}
+
+}
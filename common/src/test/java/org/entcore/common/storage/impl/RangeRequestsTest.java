@@ -0,0 +1,85 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.common.storage.impl;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RangeRequestsTest {
+
+	private static void assertRange(RangeRequests.Range range, long start, long end) {
+		assertEquals(start, range.start);
+		assertEquals(end, range.end);
+	}
+
+	@Test
+	public void parseSingleRanges() {
+		assertRange(RangeRequests.parse("bytes=0-99", 1000).get(0), 0, 99);
+		assertRange(RangeRequests.parse("bytes=900-", 1000).get(0), 900, 999);
+		assertRange(RangeRequests.parse("bytes=-100", 1000).get(0), 900, 999);
+		assertRange(RangeRequests.parse("bytes=-5000", 1000).get(0), 0, 999);
+		assertRange(RangeRequests.parse("bytes=500-5000", 1000).get(0), 500, 999);
+	}
+
+	@Test
+	public void parseMultipleRanges() {
+		final List<RangeRequests.Range> ranges = RangeRequests.parse("bytes=0-9, 20-29,-1", 100);
+		assertEquals(3, ranges.size());
+		assertRange(ranges.get(0), 0, 9);
+		assertRange(ranges.get(1), 20, 29);
+		assertRange(ranges.get(2), 99, 99);
+	}
+
+	@Test
+	public void parseUnsatisfiable() {
+		assertTrue(RangeRequests.parse("bytes=1000-", 1000).isEmpty());
+		assertTrue(RangeRequests.parse("bytes=-0", 1000).isEmpty());
+	}
+
+	@Test
+	public void parseInvalid() {
+		assertNull(RangeRequests.parse(null, 1000));
+		assertNull(RangeRequests.parse("items=0-1", 1000));
+		assertNull(RangeRequests.parse("bytes=0-1", -1));
+		assertNull(RangeRequests.parse("bytes=5-1", 1000));
+		assertNull(RangeRequests.parse("bytes=a-b", 1000));
+		assertNull(RangeRequests.parse("bytes=10", 1000));
+		assertNull(RangeRequests.parse("bytes=0-0,1-1,2-2,3-3,4-4,5-5,6-6,7-7,8-8,9-9,10-10,11-11," +
+				"12-12,13-13,14-14,15-15,16-16", 1000));
+	}
+
+	@Test
+	public void ifRange() {
+		final long lastModified = 1450000000000l;
+		assertTrue(RangeRequests.ifRangeMatches(null, "abc", null));
+		assertTrue(RangeRequests.ifRangeMatches("\"abc\"", "abc", null));
+		assertFalse(RangeRequests.ifRangeMatches("\"abd\"", "abc", null));
+		assertFalse(RangeRequests.ifRangeMatches("W/\"abc\"", "abc", null));
+		assertTrue(RangeRequests.ifRangeMatches(RangeRequests.formatDate(lastModified), null, lastModified));
+		assertFalse(RangeRequests.ifRangeMatches(RangeRequests.formatDate(lastModified - 2000), null, lastModified));
+	}
+
+}
@@ -0,0 +1,93 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.common.user;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UserInfosBinderTest {
+
+	private static final String SESSION = "{" +
+			"\"userId\":\"7b6dbd7e-e8f4-4ab6-8e2b-4d4e6bc2b3d2\"," +
+			"\"externalId\":\"F1234\"," +
+			"\"firstName\":\"Marie\"," +
+			"\"lastName\":\"Martin\"," +
+			"\"username\":\"Marie Martin\"," +
+			"\"birthDate\":\"1980-01-01\"," +
+			"\"level\":\"\"," +
+			"\"type\":\"ENSEIGNANT\"," +
+			"\"login\":\"marie.martin\"," +
+			"\"federated\":true," +
+			"\"classNames\":[\"c1\",\"c2\"]," +
+			"\"structureNames\":[\"Collège\"]," +
+			"\"uai\":[\"0771991W\"]," +
+			"\"childrenIds\":[]," +
+			"\"groupsIds\":[\"g1\",\"g2\"]," +
+			"\"classes\":[\"c1\",\"c2\"]," +
+			"\"structures\":[\"s1\"]," +
+			"\"cache\":{\"k\":\"v\",\"n\":1}," +
+			"\"authorizedActions\":[" +
+			"{\"name\":\"org.entcore.workspace.Workspace|view\",\"displayName\":\"workspace.view\",\"type\":\"SECURED_ACTION_WORKFLOW\"}," +
+			"{\"name\":\"org.entcore.blog.Blog|list\",\"displayName\":\"blog.list\",\"type\":\"SECURED_ACTION_WORKFLOW\"}]," +
+			"\"apps\":[{\"name\":\"Blog\",\"address\":\"/blog\",\"icon\":\"blog-large\",\"target\":\"\"," +
+			"\"displayName\":\"blog\",\"display\":true,\"prefix\":\"/blog\"}]," +
+			"\"widgets\":[{\"id\":\"w1\",\"name\":\"notes\",\"path\":\"/notes\",\"js\":\"/notes.js\"," +
+			"\"i18n\":\"/i18n\",\"application\":\"Portal\",\"mandatory\":false}]," +
+			"\"functions\":{\"ADMIN_LOCAL\":{\"code\":\"ADMIN_LOCAL\",\"functionName\":\"AdminLocal\"," +
+			"\"scope\":[\"s1\"],\"structureExternalIds\":[\"E1\"]," +
+			"\"subjects\":{\"MATH\":{\"subjectCode\":\"MATH\",\"subjectName\":\"Mathématiques\"," +
+			"\"scope\":[\"s1\"],\"structureExternalIds\":[\"E1\"]}}}}," +
+			"\"optionEnseignement\":[\"LATIN\"]," +
+			"\"hasPw\":true," +
+			"\"other\":{\"a\":[1,2]}" +
+			"}";
+
+	@Test
+	public void bindMatchesJacksonMapping() throws Exception {
+		final JsonObject session = new JsonObject(SESSION);
+		final ObjectMapper mapper = new ObjectMapper();
+		final UserInfos expected = mapper.readValue(session.encode(), UserInfos.class);
+		final UserInfos actual = UserInfosBinder.bind(session);
+		assertEquals(new JsonObject(mapper.writeValueAsString(expected)),
+				new JsonObject(mapper.writeValueAsString(actual)));
+	}
+
+	@Test
+	public void bindGroupsIdsAliases() throws Exception {
+		final JsonObject session = new JsonObject().putArray("profilGroupsIds",
+				new JsonObject("{\"a\":[\"g1\"]}").getArray("a"));
+		final ObjectMapper mapper = new ObjectMapper();
+		assertEquals(mapper.readValue(session.encode(), UserInfos.class).getGroupsIds(),
+				UserInfosBinder.bind(session).getGroupsIds());
+	}
+
+	@Test
+	public void bindNullValues() {
+		final JsonObject session = new JsonObject("{\"userId\":null,\"apps\":null}");
+		final UserInfos u = UserInfosBinder.bind(session);
+		assertNull(u.getUserId());
+		assertNull(u.getApps());
+	}
+
+}
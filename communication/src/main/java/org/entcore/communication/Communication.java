@@ -22,13 +22,23 @@ package org.entcore.communication;
 import org.entcore.common.http.BaseServer;
 import org.entcore.communication.controllers.CommunicationController;
 import org.entcore.communication.filters.CommunicationFilter;
+import org.entcore.communication.services.impl.CommunicationRepositoryEvents;
+import org.entcore.communication.services.impl.VisibilityIndex;
+import org.vertx.java.core.json.JsonObject;
 
 public class Communication extends BaseServer {
 
 	@Override
 	public void start() {
 		super.start();
-		addController(new CommunicationController());
+		CommunicationController communicationController = new CommunicationController();
+		final JsonObject indexConf = config.getObject("visibility-index");
+		if (indexConf != null && indexConf.getBoolean("enabled", true)) {
+			final VisibilityIndex visibilityIndex = VisibilityIndex.getInstance(vertx, indexConf);
+			communicationController.setVisibilityIndex(visibilityIndex);
+			setRepositoryEvents(new CommunicationRepositoryEvents(visibilityIndex));
+		}
+		addController(communicationController);
 		setDefaultResourceFilter(new CommunicationFilter());
 	}
 
@@ -35,6 +35,7 @@ import org.entcore.common.http.filter.AdminFilter;
 import org.entcore.common.http.filter.ResourceFilter;
 import org.entcore.communication.services.CommunicationService;
 import org.entcore.communication.services.impl.DefaultCommunicationService;
+import org.entcore.communication.services.impl.VisibilityIndex;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -49,7 +50,11 @@ import static org.entcore.common.http.response.DefaultResponseHandler.notEmptyRe
 
 public class CommunicationController extends BaseController {
 
-	private final CommunicationService communicationService = new DefaultCommunicationService();
+	private static final int DEFAULT_SEARCH_LIMIT = 10;
+	private static final int MAX_SEARCH_LIMIT = 50;
+
+	private CommunicationService communicationService = new DefaultCommunicationService();
+	private VisibilityIndex visibilityIndex;
 
 	@Get("/admin-console")
 	@SecuredAction(value = "", type = ActionType.RESOURCE)
@@ -178,6 +183,24 @@ public class CommunicationController extends BaseController {
 				JsonObject pa = message.body().getObject("additionnalParams");
 				communicationService.visibleManualGroups(userId, cr, pa, responseHandler);
 				break;
+			case "searchVisibles":
+				String search = message.body().getString("search");
+				if (search == null || search.trim().isEmpty()) {
+					message.reply(new JsonArray());
+					break;
+				}
+				int limit = Math.max(1, Math.min(
+						message.body().getInteger("limit", DEFAULT_SEARCH_LIMIT), MAX_SEARCH_LIMIT));
+				communicationService.searchVisibles(userId, search, expectedTypes,
+						message.body().getBoolean("itself", false), message.body().getBoolean("mygroup", false),
+						message.body().getString("preFilter"), message.body().getString("customReturn"),
+						message.body().getObject("additionnalParams"), message.body().getInteger("skip", 0),
+						limit, responseHandler);
+				break;
+			case "visibleIds":
+				communicationService.visibleIds(userId, message.body().getArray("userIds"),
+						message.body().getArray("groupIds"), responseHandler);
+				break;
 			default:
 				message.reply(new JsonArray());
 				break;
@@ -287,6 +310,10 @@ public class CommunicationController extends BaseController {
 				communicationService.applyRules(
 						message.body().getString("groupId"), responseHandler);
 				break;
+			case "visibilityIndexStats" :
+				message.reply((visibilityIndex != null) ? visibilityIndex.stats() :
+						new JsonObject().putBoolean("ready", false));
+				break;
 			default:
 				message.reply(new JsonObject().putString("status", "error")
 						.putString("message", "invalid.action"));
@@ -346,6 +373,11 @@ public class CommunicationController extends BaseController {
 		return d;
 	}
 
+	public void setVisibilityIndex(VisibilityIndex visibilityIndex) {
+		this.visibilityIndex = visibilityIndex;
+		this.communicationService = new DefaultCommunicationService(visibilityIndex);
+	}
+
 	private String getGroupId(HttpServerRequest request) {
 		String groupId = request.params().get("groupId");
 		if (groupId == null || groupId.trim().isEmpty()) {
@@ -64,6 +64,10 @@ public interface CommunicationService {
 			boolean profile, String preFilter, String customReturn, JsonObject additionnalParams,
 			Handler<Either<String, JsonArray>> handler);
 
+	void searchVisibles(String userId, String search, JsonArray expectedTypes, boolean itSelf, boolean myGroup,
+			String preFilter, String customReturn, JsonObject additionnalParams, int skip, int limit,
+			Handler<Either<String, JsonArray>> handler);
+
 	void usersCanSeeMe(String userId, final Handler<Either<String, JsonArray>> handler);
 
 	void visibleProfilsGroups(String userId, String customReturn, JsonObject additionnalParams,
@@ -72,4 +76,7 @@ public interface CommunicationService {
 	void visibleManualGroups(String userId, String customReturn, JsonObject additionnalParams,
 			Handler<Either<String, JsonArray>> handler);
 
+	void visibleIds(String userId, JsonArray userIds, JsonArray groupIds,
+			Handler<Either<String, JsonArray>> handler);
+
 }
@@ -0,0 +1,65 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.communication.services.impl;
+
+import org.entcore.common.user.RepositoryEvents;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+public class CommunicationRepositoryEvents implements RepositoryEvents {
+
+	private final VisibilityIndex visibilityIndex;
+
+	public CommunicationRepositoryEvents(VisibilityIndex visibilityIndex) {
+		this.visibilityIndex = visibilityIndex;
+	}
+
+	@Override
+	public void exportResources(String exportId, String userId, JsonArray groups, String exportPath,
+			String locale, String host, Handler<Boolean> handler) {
+
+	}
+
+	@Override
+	public void deleteGroups(JsonArray groups) {
+		visibilityIndex.remove(ids(groups, "group"));
+	}
+
+	@Override
+	public void deleteUsers(JsonArray users) {
+		visibilityIndex.remove(ids(users, "id"));
+	}
+
+	private static JsonArray ids(JsonArray a, String attr) {
+		JsonArray ids = new JsonArray();
+		if (a != null) {
+			for (Object o : a) {
+				if (!(o instanceof JsonObject)) continue;
+				String id = ((JsonObject) o).getString(attr);
+				if (id != null) {
+					ids.addString(id);
+				}
+			}
+		}
+		return ids;
+	}
+
+}
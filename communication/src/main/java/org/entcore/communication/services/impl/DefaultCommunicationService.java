@@ -40,9 +40,23 @@ public class DefaultCommunicationService implements CommunicationService {
 
 	private final Neo4j neo4j = Neo4j.getInstance();
 	private static final Logger log = LoggerFactory.getLogger(DefaultCommunicationService.class);
+	static final String SEARCH_RETURN =
+			"RETURN DISTINCT visibles.id as id, visibles.name as name, visibles.displayName as displayName, " +
+			"visibles.groupDisplayName as groupDisplayName, visibles.profiles[0] as profile " +
+			"ORDER BY name, displayName ";
+	private final VisibilityIndex visibilityIndex;
+
+	public DefaultCommunicationService() {
+		this(null);
+	}
+
+	public DefaultCommunicationService(VisibilityIndex visibilityIndex) {
+		this.visibilityIndex = visibilityIndex;
+	}
 
 	@Override
-	public void addLink(String startGroupId, String endGroupId, Handler<Either<String, JsonObject>> handler) {
+	public void addLink(final String startGroupId, final String endGroupId,
+			final Handler<Either<String, JsonObject>> handler) {
 		String query =
 				"MATCH (g1:Group {id : {startGroupId}}), (g2:Group {id : {endGroupId}}) " +
 				"SET g1.communiqueWith = coalesce(g1.communiqueWith, []) + {endGroupId} " +
@@ -51,11 +65,20 @@ public class DefaultCommunicationService implements CommunicationService {
 		JsonObject params = new JsonObject()
 				.putString("startGroupId", startGroupId)
 				.putString("endGroupId", endGroupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> r) {
+				if (r.isRight() && visibilityIndex != null) {
+					visibilityIndex.link(VisibilityGraph.COMMUNIQUE, startGroupId, endGroupId);
+				}
+				handler.handle(r);
+			}
+		}));
 	}
 
 	@Override
-	public void removeLink(String startGroupId, String endGroupId, Handler<Either<String, JsonObject>> handler) {
+	public void removeLink(final String startGroupId, final String endGroupId,
+			final Handler<Either<String, JsonObject>> handler) {
 		String query =
 				"MATCH (g1:Group {id : {startGroupId}})-[r:COMMUNIQUE]->(g2:Group {id : {endGroupId}}) " +
 				"SET g1.communiqueWith = FILTER(gId IN g1.communiqueWith WHERE gId <> {endGroupId}) " +
@@ -64,7 +87,15 @@ public class DefaultCommunicationService implements CommunicationService {
 		JsonObject params = new JsonObject()
 				.putString("startGroupId", startGroupId)
 				.putString("endGroupId", endGroupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> r) {
+				if (r.isRight() && visibilityIndex != null) {
+					visibilityIndex.unlink(VisibilityGraph.COMMUNIQUE, startGroupId, endGroupId);
+				}
+				handler.handle(r);
+			}
+		}));
 	}
 
 	@Override
@@ -88,7 +119,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"CREATE UNIQUE " + createRelationship +
 				"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().putString("groupId", groupId).putString("direction", direction.name());
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(refreshGroupHandler(groupId, handler)));
 	}
 
 	@Override
@@ -116,7 +147,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"DELETE r " +
 				"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().putString("groupId", groupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(refreshGroupHandler(groupId, handler)));
 	}
 
 	@Override
@@ -163,7 +194,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"CREATE UNIQUE " + createRelationship +
 				"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().putString("groupId", groupId).putString("direction", direction.name());
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(refreshGroupHandler(groupId, handler)));
 	}
 
 	@Override
@@ -195,11 +226,11 @@ public class DefaultCommunicationService implements CommunicationService {
 				"DELETE r " +
 				"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().putString("groupId", groupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(refreshGroupHandler(groupId, handler)));
 	}
 
 	@Override
-	public void initDefaultRules(JsonArray structureIds, JsonObject defaultRules,
+	public void initDefaultRules(final JsonArray structureIds, JsonObject defaultRules,
 			final Handler<Either<String, JsonObject>> handler) {
 		final StatementsBuilder s1 = new StatementsBuilder();
 		final StatementsBuilder s2 = new StatementsBuilder();
@@ -234,6 +265,9 @@ public class DefaultCommunicationService implements CommunicationService {
 									@Override
 									public void handle(Message<JsonObject> message) {
 										if ("ok".equals(message.body().getString("status"))) {
+											if (visibilityIndex != null) {
+												visibilityIndex.refreshStructures(structureIds);
+											}
 											handler.handle(new Either.Right<String, JsonObject>(new JsonObject()));
 											log.info("Default communication rules initialized.");
 										} else {
@@ -391,7 +425,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"WITH DISTINCT v " +
 				"SET v:Visible ";
 		s.add(setVisible, params);
-		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(handler));
+		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(refreshStructuresHandler(structureIds, handler)));
 	}
 
 	@Override
@@ -435,11 +469,11 @@ public class DefaultCommunicationService implements CommunicationService {
 				"WITH DISTINCT v " +
 				"SET v:Visible ";
 		s.add(setVisible, params);
-		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(handler));
+		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(refreshGroupHandler(groupId, handler)));
 	}
 
 	@Override
-	public void removeRules(String structureId, Handler<Either<String, JsonObject>> handler) {
+	public void removeRules(String structureId, final Handler<Either<String, JsonObject>> handler) {
 		String query;
 		JsonObject params =  new JsonObject();
 		if (structureId != null && !structureId.trim().isEmpty()) {
@@ -454,13 +488,32 @@ public class DefaultCommunicationService implements CommunicationService {
 					"OPTIONAL MATCH ()-[r1:COMMUNIQUE_DIRECT]->() " +
 					"DELETE r, r1 ";
 		}
-		neo4j.execute(query, params, validEmptyHandler(handler));
+		neo4j.execute(query, params, validEmptyHandler(new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> r) {
+				if (r.isRight() && visibilityIndex != null && visibilityIndex.isReady()) {
+					visibilityIndex.rebuild();
+				}
+				handler.handle(r);
+			}
+		}));
 	}
 
 	@Override
 	public void visibleUsers(String userId, String structureId, JsonArray expectedTypes, boolean itSelf,
 			boolean myGroup, boolean profile, String preFilter, String customReturn, JsonObject additionnalParams,
 			final Handler<Either<String, JsonArray>> handler) {
+		if (visibilityIndex != null && visibilityIndex.visibleUsers(userId, structureId, expectedTypes, itSelf,
+				myGroup, profile, preFilter, customReturn, additionnalParams, handler)) {
+			return;
+		}
+		graphVisibleUsers(userId, structureId, expectedTypes, itSelf, myGroup, profile, preFilter, customReturn,
+				additionnalParams, handler);
+	}
+
+	private void graphVisibleUsers(String userId, String structureId, JsonArray expectedTypes, boolean itSelf,
+			boolean myGroup, boolean profile, String preFilter, String customReturn, JsonObject additionnalParams,
+			final Handler<Either<String, JsonArray>> handler) {
 		StringBuilder query = new StringBuilder();
 		JsonObject params = new JsonObject();
 		String condition = itSelf ? "" : "AND m.id <> {userId} ";
@@ -513,6 +566,33 @@ public class DefaultCommunicationService implements CommunicationService {
 		neo4j.execute(query.toString(), params, validResultHandler(handler));
 	}
 
+	@Override
+	public void searchVisibles(String userId, String search, JsonArray expectedTypes, boolean itSelf,
+			boolean myGroup, String preFilter, String customReturn, JsonObject additionnalParams,
+			int skip, int limit, Handler<Either<String, JsonArray>> handler) {
+		if (visibilityIndex != null && visibilityIndex.searchVisibles(userId, search, expectedTypes, itSelf,
+				myGroup, preFilter, customReturn, additionnalParams, skip, limit, handler)) {
+			return;
+		}
+		final JsonObject params = (additionnalParams != null) ? additionnalParams.copy() : new JsonObject();
+		params.putNumber("skip", Math.max(skip, 0)).putNumber("limit", limit);
+		// same word prefix matching as the index
+		String filter = "";
+		int i = 0;
+		for (String term : VisibilityGraph.tokens(VisibilityGraph.fold(search))) {
+			if (term.isEmpty()) continue;
+			filter += "AND (CASE WHEN m:User THEN m.displayName ELSE m.name END) =~ {term" + i + "} ";
+			params.putString("term" + i, VisibilityGraph.wordPrefixPattern(term));
+			i++;
+		}
+		if (preFilter != null) {
+			filter += preFilter;
+		}
+		String r = (customReturn != null && !customReturn.trim().isEmpty()) ? customReturn : SEARCH_RETURN;
+		visibleUsers(userId, null, expectedTypes, itSelf, myGroup, false, filter,
+				r + " SKIP {skip} LIMIT {limit} ", params, handler);
+	}
+
 	@Override
 	public void usersCanSeeMe(String userId, Handler<Either<String, JsonArray>> handler) {
 		String query =
@@ -531,6 +611,15 @@ public class DefaultCommunicationService implements CommunicationService {
 	@Override
 	public void visibleProfilsGroups(String userId, String customReturn, JsonObject additionnalParams,
 			Handler<Either<String, JsonArray>> handler) {
+		if (visibilityIndex != null &&
+				visibilityIndex.visibleGroups(userId, false, customReturn, additionnalParams, handler)) {
+			return;
+		}
+		graphVisibleProfilsGroups(userId, customReturn, additionnalParams, handler);
+	}
+
+	private void graphVisibleProfilsGroups(String userId, String customReturn, JsonObject additionnalParams,
+			Handler<Either<String, JsonArray>> handler) {
 		String r;
 		if (customReturn != null && !customReturn.trim().isEmpty()) {
 			r = "WITH gp as profileGroup, profile " + customReturn;
@@ -553,6 +642,10 @@ public class DefaultCommunicationService implements CommunicationService {
 	@Override
 	public void visibleManualGroups(String userId, String customReturn, JsonObject additionnalParams,
 			Handler<Either<String, JsonArray>> handler) {
+		if (visibilityIndex != null &&
+				visibilityIndex.visibleGroups(userId, true, customReturn, additionnalParams, handler)) {
+			return;
+		}
 		String r;
 		if (customReturn != null && !customReturn.trim().isEmpty()) {
 			r = "WITH mg as manualGroup " + customReturn;
@@ -571,4 +664,91 @@ public class DefaultCommunicationService implements CommunicationService {
 		neo4j.execute(query, params, validResultHandler(handler));
 	}
 
+	@Override
+	public void visibleIds(final String userId, final JsonArray userIds, JsonArray groupIds,
+			final Handler<Either<String, JsonArray>> handler) {
+		if (visibilityIndex != null) {
+			JsonArray ids = visibilityIndex.visibleIds(userId, userIds, groupIds);
+			if (ids != null) {
+				handler.handle(new Either.Right<String, JsonArray>(ids));
+				return;
+			}
+		}
+		// the index can't answer for ids it doesn't know yet : check them all in the graph
+		final JsonArray visibles = new JsonArray();
+		final Handler<Either<String, JsonArray>> usersHandler = new Handler<Either<String, JsonArray>>() {
+			@Override
+			public void handle(Either<String, JsonArray> r) {
+				if (r.isLeft()) {
+					handler.handle(r);
+					return;
+				}
+				addIds(visibles, r.right().getValue());
+				if (userIds == null || userIds.size() == 0) {
+					handler.handle(new Either.Right<String, JsonArray>(visibles));
+					return;
+				}
+				graphVisibleUsers(userId, null, new JsonArray().addString("User"), false, false, false,
+						"AND m.id IN {userIds} ", "RETURN DISTINCT visibles.id as id ",
+						new JsonObject().putArray("userIds", userIds), new Handler<Either<String, JsonArray>>() {
+					@Override
+					public void handle(Either<String, JsonArray> event) {
+						if (event.isRight()) {
+							addIds(visibles, event.right().getValue());
+							handler.handle(new Either.Right<String, JsonArray>(visibles));
+						} else {
+							handler.handle(event);
+						}
+					}
+				});
+			}
+		};
+		if (groupIds != null && groupIds.size() > 0) {
+			graphVisibleProfilsGroups(userId, "WHERE profileGroup.id IN {groupIds} RETURN DISTINCT profileGroup.id as id ",
+					new JsonObject().putArray("groupIds", groupIds), usersHandler);
+		} else {
+			usersHandler.handle(new Either.Right<String, JsonArray>(new JsonArray()));
+		}
+	}
+
+	private static void addIds(JsonArray ids, JsonArray rows) {
+		for (Object o : rows) {
+			if (o instanceof JsonObject && ((JsonObject) o).getString("id") != null) {
+				ids.addString(((JsonObject) o).getString("id"));
+			}
+		}
+	}
+
+	private Handler<Either<String, JsonObject>> refreshGroupHandler(final String groupId,
+			final Handler<Either<String, JsonObject>> handler) {
+		if (visibilityIndex == null) {
+			return handler;
+		}
+		return new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> r) {
+				if (r.isRight()) {
+					visibilityIndex.refreshGroup(groupId);
+				}
+				handler.handle(r);
+			}
+		};
+	}
+
+	private Handler<Either<String, JsonObject>> refreshStructuresHandler(final JsonArray structureIds,
+			final Handler<Either<String, JsonObject>> handler) {
+		if (visibilityIndex == null) {
+			return handler;
+		}
+		return new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> r) {
+				if (r.isRight()) {
+					visibilityIndex.refreshStructures(structureIds);
+				}
+				handler.handle(r);
+			}
+		};
+	}
+
 }
@@ -0,0 +1,586 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.communication.services.impl;
+
+import org.entcore.common.validation.StringValidation;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compact copy of the communication graph. Nodes are interned to primitive indexes and the
+ * COMMUNIQUE, COMMUNIQUE_DIRECT, DEPENDS and IN relationships are kept as adjacency arrays.
+ * Traversals mirror the Cypher queries of {@link DefaultCommunicationService}.
+ * Not thread-safe : {@link VisibilityIndex} guards it with a read-write lock, reads are pure.
+ */
+final class VisibilityGraph {
+
+	static final String COMMUNIQUE = "COMMUNIQUE";
+	static final String COMMUNIQUE_DIRECT = "COMMUNIQUE_DIRECT";
+	static final String DEPENDS = "DEPENDS";
+	static final String IN = "IN";
+
+	private static final int USER = 1;
+	private static final int GROUP = 1 << 1;
+	private static final int MANUAL_GROUP = 1 << 2;
+	private static final int MAX_LABELS = 31;
+	private static final String[] NO_TOKENS = new String[0];
+	private static final String[][] ACCENTS = {
+			{ "a", "aàâäáãå" }, { "c", "cç" }, { "e", "eéèêë" }, { "i", "iîïíì" }, { "n", "nñ" },
+			{ "o", "oôöóòõ" }, { "u", "uùûüú" }, { "y", "yÿý" } };
+
+	private final Map<String, Integer> indexes = new HashMap<>();
+	private final Map<String, Integer> labelBits = new HashMap<>();
+	private Node[] nodes = new Node[1024];
+	private int size = 0;
+	private final Adjacency communique = new Adjacency();
+	private final Adjacency communiqueDirect = new Adjacency();
+	private final Adjacency depends = new Adjacency();
+	private final Adjacency in = new Adjacency();
+
+	static final class Node {
+		final String id;
+		int labels;
+		String name;
+		String login;
+		String displayName;
+		String lastName;
+		String firstName;
+		String groupDisplayName;
+		String users;
+		String profile;
+		JsonArray profiles;
+		boolean blocked;
+		boolean deleted;
+		String searchName;
+		String[] tokens = NO_TOKENS;
+
+		private Node(String id) {
+			this.id = id;
+		}
+
+		boolean isUser() {
+			return (labels & USER) != 0;
+		}
+
+		boolean isGroup() {
+			return (labels & GROUP) != 0;
+		}
+
+		boolean isManualGroup() {
+			return (labels & MANUAL_GROUP) != 0;
+		}
+
+		private boolean usersNotIncoming() {
+			return users != null && !"INCOMING".equals(users);
+		}
+	}
+
+	VisibilityGraph() {
+		labelBits.put("User", USER);
+		labelBits.put("Group", GROUP);
+		labelBits.put("ManualGroup", MANUAL_GROUP);
+	}
+
+	Node putNode(JsonObject j) {
+		String id = j.getString("id");
+		if (id == null) {
+			return null;
+		}
+		Integer idx = indexes.get(id);
+		Node n;
+		if (idx == null) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+			}
+			n = new Node(id);
+			nodes[size] = n;
+			indexes.put(id, size++);
+		} else {
+			n = nodes[idx];
+		}
+		n.labels = labels(j.getArray("labels"));
+		n.name = j.getString("name");
+		n.login = j.getString("login");
+		n.displayName = j.getString("displayName");
+		n.lastName = j.getString("lastName");
+		n.firstName = j.getString("firstName");
+		n.groupDisplayName = j.getString("groupDisplayName");
+		n.users = j.getString("users");
+		n.profiles = j.getArray("profiles");
+		n.blocked = Boolean.TRUE.equals(j.getValue("blocked"));
+		n.deleted = false;
+		n.searchName = fold(n.isUser() ? n.displayName : n.name);
+		n.tokens = tokens(n.searchName);
+		if (j.containsField("profile")) {
+			n.profile = j.getString("profile");
+		}
+		return n;
+	}
+
+	void setProfile(String groupId, String profile) {
+		int g = indexOf(groupId);
+		if (g >= 0) {
+			nodes[g].profile = profile;
+		}
+	}
+
+	int indexOf(String id) {
+		Integer idx = (id != null) ? indexes.get(id) : null;
+		return (idx != null && !nodes[idx].deleted) ? idx : -1;
+	}
+
+	Node node(int idx) {
+		return nodes[idx];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a relationship read from a full scan of the graph, without checking duplicates.
+	 */
+	void load(String type, String from, String to) {
+		Adjacency a = adjacency(type);
+		int f = indexOf(from);
+		int t = indexOf(to);
+		if (a != null && f >= 0 && t >= 0) {
+			a.add(f, t);
+		}
+	}
+
+	/**
+	 * @return false if one of the nodes is unknown.
+	 */
+	boolean link(String type, String from, String to) {
+		Adjacency a = adjacency(type);
+		int f = indexOf(from);
+		int t = indexOf(to);
+		if (a == null || f < 0 || t < 0) {
+			return false;
+		}
+		a.link(f, t);
+		return true;
+	}
+
+	void unlink(String type, String from, String to) {
+		Adjacency a = adjacency(type);
+		int f = indexOf(from);
+		int t = indexOf(to);
+		if (a != null && f >= 0 && t >= 0) {
+			a.unlink(f, t);
+		}
+	}
+
+	void clearRelationships(String id) {
+		int n = indexOf(id);
+		if (n >= 0) {
+			communique.clear(n);
+			communiqueDirect.clear(n);
+			depends.clear(n);
+			in.clear(n);
+		}
+	}
+
+	void remove(String id) {
+		int n = indexOf(id);
+		if (n >= 0) {
+			clearRelationships(id);
+			nodes[n].deleted = true;
+		}
+	}
+
+	int relationships() {
+		return communique.count + communiqueDirect.count + depends.count + in.count;
+	}
+
+	/**
+	 * @return the mask of the given labels, -1 if there is no filter and 0 if no node can match.
+	 */
+	int labelsMask(JsonArray labels) {
+		if (labels == null || labels.size() == 0) {
+			return -1;
+		}
+		int mask = 0;
+		for (Object o : labels) {
+			if (!(o instanceof String)) continue;
+			Integer bit = labelBits.get(o);
+			if (bit != null) {
+				mask |= bit;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Every term must prefix one of the words of the folded name.
+	 * @return -1 if the node doesn't match, 0 if the whole search prefixes the name, 1 otherwise.
+	 */
+	int match(int m, String search, String[] terms) {
+		final Node node = nodes[m];
+		if (node.searchName == null) {
+			return -1;
+		}
+		for (String term : terms) {
+			boolean found = false;
+			for (String token : node.tokens) {
+				if (token.startsWith(term)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return -1;
+			}
+		}
+		return node.searchName.startsWith(search) ? 0 : 1;
+	}
+
+	static String fold(String s) {
+		if (s == null) {
+			return null;
+		}
+		return StringValidation.removeAccents(s.trim()).toLowerCase();
+	}
+
+	/**
+	 * Regular expression of {@link #match} for a term in Neo4j : the term prefixes a word of the name,
+	 * ignoring the case and the accents of the name, which can't be folded in the query.
+	 */
+	static String wordPrefixPattern(String term) {
+		final StringBuilder sb = new StringBuilder("(?iu)(.*[\\s\\-'])?");
+		for (char c : term.toCharArray()) {
+			String variants = null;
+			for (String[] accents : ACCENTS) {
+				if (accents[0].charAt(0) == c) {
+					variants = accents[1];
+					break;
+				}
+			}
+			if (variants != null) {
+				sb.append('[').append(variants).append(']');
+			} else if (Character.isLetterOrDigit(c)) {
+				sb.append(c);
+			} else {
+				sb.append('\\').append(c);
+			}
+		}
+		return sb.append(".*").toString();
+	}
+
+	static String[] tokens(String folded) {
+		if (folded == null || folded.isEmpty()) {
+			return NO_TOKENS;
+		}
+		return folded.split("[\\s\\-']+");
+	}
+
+	/**
+	 * Nodes matched by the visibleUsers query without structure :
+	 * (n:User)-[r:COMMUNIQUE|COMMUNIQUE_DIRECT]->t-[:COMMUNIQUE*0..1]->ipg-[:COMMUNIQUE*0..1]->g<-[:DEPENDS*0..1]-m
+	 */
+	BitSet visibles(int n, boolean myGroup) {
+		final BitSet v = new BitSet(size);
+		final int[] direct = communiqueDirect.out(n);
+		for (int i = 0; i < communiqueDirect.outSize(n); i++) {
+			v.set(direct[i]);
+		}
+		final int[] targets = communique.out(n);
+		for (int i = 0; i < communique.outSize(n); i++) {
+			final int t = targets[i];
+			final boolean tGroup = nodes[t].isGroup();
+			if (myGroup && nodes[t].usersNotIncoming()) {
+				v.set(t);
+			}
+			setAll(v, depends.in(t), depends.inSize(t));
+			final int[] next = communique.out(t);
+			for (int j = 0; j < communique.outSize(t); j++) {
+				final int x = next[j];
+				final boolean xGroup = nodes[x].isGroup();
+				v.set(x);
+				if (tGroup || xGroup) {
+					setAll(v, depends.in(x), depends.inSize(x));
+				}
+				if (xGroup) {
+					final int[] last = communique.out(x);
+					for (int k = 0; k < communique.outSize(x); k++) {
+						if (nodes[last[k]].isUser()) {
+							v.set(last[k]);
+						}
+					}
+				}
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * Nodes matched by the visibleUsers query restricted to a structure :
+	 * (n:User)-[:COMMUNIQUE*1..3]->m-[:DEPENDS*1..2]->(s:Structure)
+	 */
+	BitSet visibles(int n, int structure) {
+		BitSet reached = new BitSet(size);
+		BitSet frontier = new BitSet(size);
+		frontier.set(n);
+		for (int depth = 0; depth < 3 && !frontier.isEmpty(); depth++) {
+			BitSet next = new BitSet(size);
+			for (int f = frontier.nextSetBit(0); f >= 0; f = frontier.nextSetBit(f + 1)) {
+				setAll(next, communique.out(f), communique.outSize(f));
+			}
+			reached.or(next);
+			frontier = next;
+		}
+		BitSet v = new BitSet(size);
+		for (int m = reached.nextSetBit(0); m >= 0; m = reached.nextSetBit(m + 1)) {
+			if (dependsOn(m, structure)) {
+				v.set(m);
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * Groups matched by the visibleProfilsGroups query :
+	 * (n:User)-[:COMMUNIQUE*1..2]->l<-[:DEPENDS*0..1]-(gp:Group)
+	 */
+	BitSet visibleGroups(int n) {
+		final BitSet v = new BitSet(size);
+		final int[] first = communique.out(n);
+		for (int i = 0; i < communique.outSize(n); i++) {
+			final int l = first[i];
+			if (nodes[l].isGroup() && nodes[l].usersNotIncoming()) {
+				v.set(l);
+			}
+			setGroups(v, depends.in(l), depends.inSize(l));
+			final int[] second = communique.out(l);
+			for (int j = 0; j < communique.outSize(l); j++) {
+				final int l2 = second[j];
+				if (nodes[l2].isGroup()) {
+					v.set(l2);
+				}
+				setGroups(v, depends.in(l2), depends.inSize(l2));
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * Profile names reached by m-[:IN*0..1]->pgp-[:DEPENDS*0..1]->(pg:ProfileGroup)-[:HAS_PROFILE]->(profile)
+	 */
+	Set<String> profiles(int m, boolean throughMembership) {
+		final Set<String> p = new TreeSet<>();
+		addProfiles(p, m);
+		if (throughMembership) {
+			final int[] groups = in.out(m);
+			for (int i = 0; i < in.outSize(m); i++) {
+				addProfiles(p, groups[i]);
+			}
+		}
+		return p;
+	}
+
+	private void addProfiles(Set<String> p, int pgp) {
+		if (nodes[pgp].profile != null) {
+			p.add(nodes[pgp].profile);
+		}
+		final int[] parents = depends.out(pgp);
+		for (int i = 0; i < depends.outSize(pgp); i++) {
+			if (nodes[parents[i]].profile != null) {
+				p.add(nodes[parents[i]].profile);
+			}
+		}
+	}
+
+	private boolean dependsOn(int m, int structure) {
+		final int[] parents = depends.out(m);
+		for (int i = 0; i < depends.outSize(m); i++) {
+			final int p = parents[i];
+			if (p == structure) {
+				return true;
+			}
+			final int[] grandParents = depends.out(p);
+			for (int j = 0; j < depends.outSize(p); j++) {
+				if (grandParents[j] == structure) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void setGroups(BitSet v, int[] a, int length) {
+		for (int i = 0; i < length; i++) {
+			if (nodes[a[i]].isGroup()) {
+				v.set(a[i]);
+			}
+		}
+	}
+
+	private static void setAll(BitSet v, int[] a, int length) {
+		for (int i = 0; i < length; i++) {
+			v.set(a[i]);
+		}
+	}
+
+	private int labels(JsonArray labels) {
+		int mask = 0;
+		if (labels == null) {
+			return mask;
+		}
+		for (Object o : labels) {
+			if (!(o instanceof String)) continue;
+			Integer bit = labelBits.get(o);
+			if (bit == null && labelBits.size() < MAX_LABELS) {
+				bit = 1 << labelBits.size();
+				labelBits.put((String) o, bit);
+			}
+			if (bit != null) {
+				mask |= bit;
+			}
+		}
+		return mask;
+	}
+
+	private Adjacency adjacency(String type) {
+		if (type == null) {
+			return null;
+		}
+		switch (type) {
+			case COMMUNIQUE:
+				return communique;
+			case COMMUNIQUE_DIRECT:
+				return communiqueDirect;
+			case DEPENDS:
+				return depends;
+			case IN:
+				return in;
+			default:
+				return null;
+		}
+	}
+
+	private static final class Adjacency {
+		private static final int[] EMPTY = new int[0];
+		private int[][] out = new int[0][];
+		private int[] outSize = new int[0];
+		private int[][] in = new int[0][];
+		private int[] inSize = new int[0];
+		private int count = 0;
+
+		private int[] out(int n) {
+			return (n < out.length && out[n] != null) ? out[n] : EMPTY;
+		}
+
+		private int outSize(int n) {
+			return (n < outSize.length) ? outSize[n] : 0;
+		}
+
+		private int[] in(int n) {
+			return (n < in.length && in[n] != null) ? in[n] : EMPTY;
+		}
+
+		private int inSize(int n) {
+			return (n < inSize.length) ? inSize[n] : 0;
+		}
+
+		private void add(int from, int to) {
+			ensureCapacity(Math.max(from, to) + 1);
+			append(out, outSize, from, to);
+			append(in, inSize, to, from);
+			count++;
+		}
+
+		private void link(int from, int to) {
+			final int[] a = out(from);
+			for (int i = 0; i < outSize(from); i++) {
+				if (a[i] == to) {
+					return;
+				}
+			}
+			add(from, to);
+		}
+
+		private void unlink(int from, int to) {
+			if (from < out.length && remove(out, outSize, from, to)) {
+				remove(in, inSize, to, from);
+				count--;
+			}
+		}
+
+		private void clear(int n) {
+			if (n >= out.length) {
+				return;
+			}
+			for (int i = 0; i < outSize[n]; i++) {
+				remove(in, inSize, out[n][i], n);
+			}
+			count -= outSize[n];
+			outSize[n] = 0;
+			out[n] = null;
+			for (int i = 0; i < inSize[n]; i++) {
+				remove(out, outSize, in[n][i], n);
+			}
+			count -= inSize[n];
+			inSize[n] = 0;
+			in[n] = null;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (out.length < capacity) {
+				final int c = Math.max(capacity, out.length * 2);
+				out = Arrays.copyOf(out, c);
+				outSize = Arrays.copyOf(outSize, c);
+				in = Arrays.copyOf(in, c);
+				inSize = Arrays.copyOf(inSize, c);
+			}
+		}
+
+		private static void append(int[][] a, int[] sizes, int n, int value) {
+			int[] l = a[n];
+			if (l == null) {
+				l = new int[2];
+				a[n] = l;
+			} else if (sizes[n] == l.length) {
+				l = Arrays.copyOf(l, l.length * 2);
+				a[n] = l;
+			}
+			l[sizes[n]++] = value;
+		}
+
+		private static boolean remove(int[][] a, int[] sizes, int n, int value) {
+			final int[] l = a[n];
+			for (int i = 0; i < sizes[n]; i++) {
+				if (l[i] == value) {
+					l[i] = l[--sizes[n]];
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,938 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.communication.services.impl;
+
+import fr.wseduc.webutils.Either;
+import org.entcore.common.neo4j.Neo4j;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.entcore.common.neo4j.Neo4jResult.validResultHandler;
+import static org.entcore.communication.services.impl.DefaultCommunicationService.SEARCH_RETURN;
+import static org.entcore.communication.services.impl.VisibilityGraph.*;
+
+/**
+ * In-memory index of the communication rules answering the visibility queries without
+ * variable-length traversals. It is built from the graph on start, patched on every rule change
+ * and manual directory change, and rebuilt after imports (and periodically if configured).
+ * The verticle instances of a node share one index, owned by the context of the first one : it
+ * alone loads and patches the graph, the other event loops only read it under the read lock.
+ * The rule changes are published on {@link #CHANGES_ADDRESS} and applied by the index of every node.
+ */
+public class VisibilityIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(VisibilityIndex.class);
+	private static final int DEFAULT_PAGE_SIZE = 10000;
+	private static final int DEFAULT_CACHE_SIZE = 1000;
+	public static final long DEFAULT_REBUILD_DELAY = -1l;
+	public static final String CHANGES_ADDRESS = "communication.visibility.changes";
+	private static final String STRUCTURES_UPDATED = "feeder.structures.updated";
+	private static final String MANUAL_UPDATED = "feeder.manual.updated";
+	private static final String NODE_RETURN =
+			"RETURN n.id as id, labels(n) as labels, n.name as name, n.login as login, " +
+			"n.displayName as displayName, n.lastName as lastName, n.firstName as firstName, " +
+			"n.profiles as profiles, n.groupDisplayName as groupDisplayName, n.users as users, " +
+			"n.blocked as blocked ";
+	private static final String[] NODE_LABELS = { "User", "Group", "Structure", "Class" };
+	private static final String[] REFRESH_LABELS = { "User", "Group", "Structure", "Class" };
+	private static final String[] RELATIONSHIPS = { COMMUNIQUE, COMMUNIQUE_DIRECT, DEPENDS, IN };
+
+	private static VisibilityIndex instance;
+
+	private final Neo4j neo4j = Neo4j.getInstance();
+	private EventBus eb;
+	private Context owner;
+	private final int pageSize;
+	private final Map<Integer, BitSet> visibles;
+	private final Set<String> touched = new HashSet<>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile VisibilityGraph graph;
+	private volatile boolean building = false;
+	private boolean rebuildRequested = false;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile long builds = 0;
+	private volatile long lastBuildDuration = 0;
+
+	/**
+	 * @return the index of the node, created, registered and built by the first caller.
+	 */
+	public static synchronized VisibilityIndex getInstance(Vertx vertx, JsonObject config) {
+		if (instance == null) {
+			final VisibilityIndex index = new VisibilityIndex(config);
+			index.register(vertx);
+			index.build();
+			final long rebuildDelay = (config != null) ?
+					config.getLong("rebuild-delay", DEFAULT_REBUILD_DELAY) : DEFAULT_REBUILD_DELAY;
+			if (rebuildDelay > 0) {
+				vertx.setPeriodic(rebuildDelay, new Handler<Long>() {
+					@Override
+					public void handle(Long timerId) {
+						index.build();
+					}
+				});
+			}
+			instance = index;
+		}
+		return instance;
+	}
+
+	private VisibilityIndex(JsonObject config) {
+		final JsonObject conf = (config != null) ? config : new JsonObject();
+		this.pageSize = conf.getInteger("page-size", DEFAULT_PAGE_SIZE);
+		final int cacheSize = conf.getInteger("cache-size", DEFAULT_CACHE_SIZE);
+		this.visibles = new LinkedHashMap<Integer, BitSet>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, BitSet> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	public boolean isReady() {
+		return graph != null;
+	}
+
+	/**
+	 * Applies the changes published by the instances of every node, the manual changes of the
+	 * directory and rebuilds the index after imports.
+	 */
+	private void register(Vertx vertx) {
+		eb = vertx.eventBus();
+		owner = vertx.currentContext();
+		eb.registerHandler(CHANGES_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				apply(message.body());
+			}
+		});
+		eb.registerHandler(MANUAL_UPDATED, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				refreshUpdated(message.body());
+			}
+		});
+		eb.registerHandler(STRUCTURES_UPDATED, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				build();
+			}
+		});
+	}
+
+	private void publish(JsonObject change) {
+		if (eb != null) {
+			eb.publish(CHANGES_ADDRESS, change);
+		} else {
+			apply(change);
+		}
+	}
+
+	private void apply(JsonObject change) {
+		switch (change.getString("action", "")) {
+			case "link" :
+				applyLink(change.getString("type"), change.getString("from"), change.getString("to"));
+				break;
+			case "unlink" :
+				applyUnlink(change.getString("type"), change.getString("from"), change.getString("to"));
+				break;
+			case "refresh-group" :
+				applyRefreshGroup(change.getString("groupId"));
+				break;
+			case "refresh-structures" :
+				applyRefreshStructures(change.getArray("structures"));
+				break;
+			case "build" :
+				build();
+				break;
+			default:
+				log.warn("Unknown visibility index change : " + change.getString("action"));
+		}
+	}
+
+	/**
+	 * Loads a new copy of the graph page by page and swaps it with the current one.
+	 * The nodes patched during the load are refreshed again once it is swapped.
+	 */
+	private void build() {
+		if (building) {
+			rebuildRequested = true;
+			return;
+		}
+		building = true;
+		touched.clear();
+		load(new VisibilityGraph(), 0, "", System.currentTimeMillis());
+	}
+
+	/**
+	 * Rebuilds the index of every instance.
+	 */
+	public void rebuild() {
+		publish(new JsonObject().putString("action", "build"));
+	}
+
+	/**
+	 * Pages are read by id (the start node id for the relationships) : the next page starts after
+	 * the last id of the previous one.
+	 */
+	private void load(final VisibilityGraph g, final int step, final String after, final long start) {
+		final int nodeSteps = NODE_LABELS.length;
+		final int relationshipSteps = nodeSteps + RELATIONSHIPS.length;
+		final String query;
+		if (step < nodeSteps) {
+			query = "MATCH (n:" + NODE_LABELS[step] + ") WHERE n.id > {after} " + NODE_RETURN +
+					"ORDER BY id LIMIT {limit} ";
+		} else if (step < relationshipSteps) {
+			final String type = RELATIONSHIPS[step - nodeSteps];
+			query = "MATCH (a)-[:" + type + "]->() WHERE a.id > {after} " +
+					"WITH DISTINCT a ORDER BY a.id LIMIT {limit} " +
+					"MATCH a-[:" + type + "]->(b) " +
+					"RETURN a.id as a, COLLECT(b.id) as b ORDER BY a ";
+		} else if (step == relationshipSteps) {
+			query = "MATCH (a:ProfileGroup)-[:HAS_PROFILE]->(p:Profile) WHERE a.id > {after} " +
+					"RETURN a.id as a, p.name as b ORDER BY a LIMIT {limit} ";
+		} else {
+			swap(g, start);
+			return;
+		}
+		final JsonObject params = new JsonObject().putString("after", after).putNumber("limit", pageSize);
+		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> m) {
+				JsonArray result = m.body().getArray("result");
+				if (!"ok".equals(m.body().getString("status")) || result == null) {
+					log.error("Error loading visibility index : " + m.body().getString("message"));
+					building = false;
+					return;
+				}
+				String last = after;
+				for (Object o : result) {
+					if (!(o instanceof JsonObject)) continue;
+					JsonObject j = (JsonObject) o;
+					if (step < nodeSteps) {
+						g.putNode(j);
+						last = j.getString("id");
+					} else if (step < relationshipSteps) {
+						final String a = j.getString("a");
+						for (Object b : j.getArray("b", new JsonArray())) {
+							g.load(RELATIONSHIPS[step - nodeSteps], a, (String) b);
+						}
+						last = a;
+					} else {
+						g.setProfile(j.getString("a"), j.getString("b"));
+						last = j.getString("a");
+					}
+				}
+				if (result.size() < pageSize) {
+					load(g, step + 1, "", start);
+				} else {
+					load(g, step, last, start);
+				}
+			}
+		});
+	}
+
+	private void swap(VisibilityGraph g, long start) {
+		lock.writeLock().lock();
+		try {
+			graph = g;
+			clearVisibles();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		building = false;
+		builds++;
+		lastBuildDuration = System.currentTimeMillis() - start;
+		log.info("Visibility index built : " + g.size() + " nodes, " + g.relationships() +
+				" relationships in " + lastBuildDuration + " ms.");
+		if (rebuildRequested) {
+			rebuildRequested = false;
+			build();
+		} else if (!touched.isEmpty()) {
+			JsonArray ids = new JsonArray(new ArrayList<Object>(touched));
+			touched.clear();
+			refresh(ids);
+		}
+	}
+
+	/**
+	 * Adds the relationship to the index of every instance.
+	 */
+	public void link(String type, String from, String to) {
+		publish(new JsonObject().putString("action", "link").putString("type", type)
+				.putString("from", from).putString("to", to));
+	}
+
+	/**
+	 * Removes the relationship from the index of every instance.
+	 */
+	public void unlink(String type, String from, String to) {
+		publish(new JsonObject().putString("action", "unlink").putString("type", type)
+				.putString("from", from).putString("to", to));
+	}
+
+	private void applyLink(String type, String from, String to) {
+		if (graph == null) {
+			return;
+		}
+		touch(from, to);
+		final boolean linked;
+		lock.writeLock().lock();
+		try {
+			linked = graph.link(type, from, to);
+			if (linked) {
+				clearVisibles();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (!linked) {
+			refresh(new JsonArray().add(from).add(to));
+		}
+	}
+
+	private void applyUnlink(String type, String from, String to) {
+		if (graph == null) {
+			return;
+		}
+		touch(from, to);
+		lock.writeLock().lock();
+		try {
+			graph.unlink(type, from, to);
+			clearVisibles();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the deleted nodes. The repository events reach every instance, so it is applied on
+	 * the node (possibly several times, removing is idempotent).
+	 */
+	public void remove(final JsonArray ids) {
+		if (graph == null || ids == null) {
+			return;
+		}
+		owner.runOnContext(new Handler<Void>() {
+			@Override
+			public void handle(Void v) {
+				if (graph == null) {
+					return;
+				}
+				lock.writeLock().lock();
+				try {
+					for (Object id : ids) {
+						if (!(id instanceof String)) continue;
+						touch((String) id);
+						graph.remove((String) id);
+					}
+					clearVisibles();
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Reloads the group, its members and their relationships in the index of every instance.
+	 */
+	public void refreshGroup(String groupId) {
+		publish(new JsonObject().putString("action", "refresh-group").putString("groupId", groupId));
+	}
+
+	/**
+	 * Reloads the groups of the structures and their members, or the whole index for several structures,
+	 * in the index of every instance.
+	 */
+	public void refreshStructures(JsonArray structureIds) {
+		publish(new JsonObject().putString("action", "refresh-structures").putArray("structures", structureIds));
+	}
+
+	private void applyRefreshGroup(String groupId) {
+		String query =
+				"MATCH (g:Group {id : {groupId}}) " +
+				"OPTIONAL MATCH g<-[:IN]-(u:User) " +
+				"RETURN [g.id] + COLLECT(u.id) as ids ";
+		refreshMatching(query, new JsonObject().putString("groupId", groupId));
+	}
+
+	private void applyRefreshStructures(JsonArray structureIds) {
+		if (structureIds == null || structureIds.size() != 1) {
+			if (graph != null) {
+				build();
+			}
+			return;
+		}
+		String query =
+				"MATCH (s:Structure)<-[:DEPENDS*1..2]-(g:Group) " +
+				"WHERE s.id IN {structures} " +
+				"OPTIONAL MATCH g<-[:IN]-(u:User) " +
+				"WITH COLLECT(DISTINCT g.id) as groups, COLLECT(DISTINCT u.id) as users " +
+				"RETURN groups + users as ids ";
+		refreshMatching(query, new JsonObject().putArray("structures", structureIds));
+	}
+
+	/**
+	 * Reloads the users, groups, classes and structures changed by a manual action of the directory.
+	 */
+	private void refreshUpdated(JsonObject update) {
+		refresh(update.getArray("ids"));
+		for (Object structureId : update.getArray("structures", new JsonArray())) {
+			applyRefreshStructures(new JsonArray().add(structureId));
+		}
+		final JsonArray classes = update.getArray("classes");
+		if (classes != null && classes.size() > 0) {
+			String query =
+					"MATCH (c:Class)<-[:DEPENDS]-(g:Group) " +
+					"WHERE c.id IN {classes} " +
+					"OPTIONAL MATCH g<-[:IN]-(u:User) " +
+					"WITH COLLECT(DISTINCT c.id) as classes, COLLECT(DISTINCT g.id) as groups, " +
+					"COLLECT(DISTINCT u.id) as users " +
+					"RETURN classes + groups + users as ids ";
+			refreshMatching(query, new JsonObject().putArray("classes", classes));
+		}
+	}
+
+	private void refreshMatching(String query, JsonObject params) {
+		if (graph == null) {
+			return;
+		}
+		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> m) {
+				JsonArray result = m.body().getArray("result");
+				if ("ok".equals(m.body().getString("status")) && result != null && result.size() == 1) {
+					refresh(((JsonObject) result.get(0)).getArray("ids"));
+				} else if (!"ok".equals(m.body().getString("status"))) {
+					log.error("Error refreshing visibility index : " + m.body().getString("message"));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Reloads the nodes and all their relationships. Unknown ids are removed from the index.
+	 */
+	private void refresh(JsonArray ids) {
+		if (graph == null || ids == null || ids.size() == 0) {
+			return;
+		}
+		for (Object id : ids) {
+			if (id instanceof String) {
+				touch((String) id);
+			}
+		}
+		refresh(graph, ids, 0, new HashSet<String>(), new HashSet<String>(), true);
+	}
+
+	private void refresh(final VisibilityGraph g, final JsonArray ids, final int step, final Set<String> found,
+			final Set<String> missing, final boolean followMissing) {
+		if (step >= REFRESH_LABELS.length) {
+			lock.writeLock().lock();
+			try {
+				for (Object id : ids) {
+					if (id instanceof String && !found.contains(id)) {
+						g.remove((String) id);
+					}
+				}
+				clearVisibles();
+			} finally {
+				lock.writeLock().unlock();
+			}
+			missing.removeAll(found);
+			if (followMissing && !missing.isEmpty()) {
+				refresh(g, new JsonArray(new ArrayList<Object>(missing)), 0,
+						new HashSet<String>(), new HashSet<String>(), false);
+			}
+			return;
+		}
+		String query =
+				"MATCH (n:" + REFRESH_LABELS[step] + ") " +
+				"WHERE n.id IN {ids} " +
+				"OPTIONAL MATCH n-[r:COMMUNIQUE|COMMUNIQUE_DIRECT|DEPENDS|IN]-(o) " +
+				"WITH n, COLLECT([type(r), startNode(r) = n, o.id]) as relationships " +
+				"OPTIONAL MATCH n-[:HAS_PROFILE]->(p:Profile) " +
+				NODE_RETURN + ", p.name as profile, relationships ";
+		neo4j.execute(query, new JsonObject().putArray("ids", ids), new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> m) {
+				JsonArray result = m.body().getArray("result");
+				if (!"ok".equals(m.body().getString("status")) || result == null) {
+					log.error("Error refreshing visibility index : " + m.body().getString("message"));
+					return;
+				}
+				lock.writeLock().lock();
+				try {
+					for (Object o : result) {
+						if (!(o instanceof JsonObject)) continue;
+						JsonObject j = (JsonObject) o;
+						String id = j.getString("id");
+						if (g.putNode(j) == null) continue;
+						found.add(id);
+						g.clearRelationships(id);
+						for (Object r : j.getArray("relationships", new JsonArray())) {
+							if (!(r instanceof JsonArray) || ((JsonArray) r).get(0) == null) continue;
+							JsonArray rel = (JsonArray) r;
+							String other = rel.get(2);
+							boolean outgoing = Boolean.TRUE.equals(rel.get(1));
+							if (!g.link((String) rel.get(0), outgoing ? id : other, outgoing ? other : id)) {
+								missing.add(other);
+							}
+						}
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+				refresh(g, ids, step + 1, found, missing, followMissing);
+			}
+		});
+	}
+
+	private void touch(String... ids) {
+		if (building) {
+			Collections.addAll(touched, ids);
+		}
+	}
+
+	/**
+	 * @return false if the index can't answer and the graph must be queried.
+	 */
+	public boolean visibleUsers(String userId, String structureId, JsonArray expectedTypes, boolean itSelf,
+			boolean myGroup, boolean profile, String preFilter, String customReturn, JsonObject additionnalParams,
+			Handler<Either<String, JsonArray>> handler) {
+		final VisibilityGraph g = graph;
+		lock.readLock().lock();
+		try {
+			final int n = (g != null) ? g.indexOf(userId) : -1;
+			if (n < 0) {
+				return false;
+			}
+			final BitSet v;
+			if (structureId != null && !structureId.trim().isEmpty()) {
+				final int s = g.indexOf(structureId);
+				v = (s >= 0) ? g.visibles(n, s) : new BitSet();
+			} else {
+				v = visibles(g, n, myGroup);
+			}
+			final int types = g.labelsMask(expectedTypes);
+			final BitSet matched = new BitSet(v.length());
+			for (int i = v.nextSetBit(0); i >= 0; i = v.nextSetBit(i + 1)) {
+				final Node m = g.node(i);
+				if ((i != n || itSelf) && !m.blocked && !m.deleted && (types == -1 || (m.labels & types) != 0)) {
+					matched.set(i);
+				}
+			}
+			if (preFilter == null && (customReturn == null || customReturn.trim().isEmpty())) {
+				final List<JsonObject> rows = new ArrayList<>();
+				for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+					final Node m = g.node(i);
+					if (!profile) {
+						rows.add(userRow(m, false, null));
+						continue;
+					}
+					final Set<String> profiles = g.profiles(i, true);
+					if (profiles.isEmpty()) {
+						rows.add(userRow(m, true, null));
+					}
+					for (String type : profiles) {
+						rows.add(userRow(m, true, type));
+					}
+				}
+				Collections.sort(rows, new Comparator<JsonObject>() {
+					@Override
+					public int compare(JsonObject a, JsonObject b) {
+						int c = compareNullsLast(a.getString("name"), b.getString("name"));
+						return (c != 0) ? c : compareNullsLast(a.getString("username"), b.getString("username"));
+					}
+				});
+				handler.handle(new Either.Right<String, JsonArray>(toArray(rows)));
+				return true;
+			}
+			final JsonObject params = new JsonObject();
+			final StringBuilder query = new StringBuilder(lookup(g, matched, params));
+			if (preFilter != null) {
+				query.append(preFilter);
+			}
+			String pcr = " ";
+			String pr = "";
+			if (profile) {
+				query.append("OPTIONAL MATCH m-[:IN*0..1]->pgp-[:DEPENDS*0..1]->(pg:ProfileGroup)-[:HAS_PROFILE]->(profile:Profile) ");
+				pcr = ", profile ";
+				pr = "profile.name as type, ";
+			}
+			if (customReturn != null && !customReturn.trim().isEmpty()) {
+				query.append("WITH DISTINCT m as visibles").append(pcr);
+				query.append(customReturn);
+			} else {
+				query.append("RETURN distinct m.id as id, m.name as name, "
+						+ "m.login as login, m.displayName as username, ").append(pr)
+						.append("m.lastName as lastName, m.firstName as firstName, m.profiles as profiles "
+								+ "ORDER BY name, username ");
+			}
+			params.putString("userId", userId);
+			if (additionnalParams != null) {
+				params.mergeIn(additionnalParams);
+			}
+			neo4j.execute(query.toString(), params, validResultHandler(handler));
+			return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return false if the index can't answer and the graph must be queried.
+	 */
+	public boolean visibleGroups(String userId, boolean manualGroups, String customReturn,
+			JsonObject additionnalParams, Handler<Either<String, JsonArray>> handler) {
+		final VisibilityGraph g = graph;
+		lock.readLock().lock();
+		try {
+			final int n = (g != null) ? g.indexOf(userId) : -1;
+			if (n < 0) {
+				return false;
+			}
+			final BitSet v = g.visibleGroups(n);
+			if (customReturn == null || customReturn.trim().isEmpty()) {
+				final List<JsonObject> rows = new ArrayList<>();
+				for (int i = v.nextSetBit(0); i >= 0; i = v.nextSetBit(i + 1)) {
+					final Node gp = g.node(i);
+					if (gp.deleted || (manualGroups && !gp.isManualGroup())) continue;
+					if (manualGroups) {
+						rows.add(groupRow(gp, false, null));
+						continue;
+					}
+					final Set<String> profiles = g.profiles(i, false);
+					if (profiles.isEmpty()) {
+						rows.add(groupRow(gp, true, null));
+					}
+					for (String type : profiles) {
+						rows.add(groupRow(gp, true, type));
+					}
+				}
+				Collections.sort(rows, new Comparator<JsonObject>() {
+					@Override
+					public int compare(JsonObject a, JsonObject b) {
+						int c = compareNullsLast(b.getString("type"), a.getString("type"));
+						return (c != 0) ? c : compareNullsLast(a.getString("name"), b.getString("name"));
+					}
+				});
+				handler.handle(new Either.Right<String, JsonArray>(toArray(rows)));
+				return true;
+			}
+			final JsonArray ids = new JsonArray();
+			for (int i = v.nextSetBit(0); i >= 0; i = v.nextSetBit(i + 1)) {
+				if (!g.node(i).deleted) {
+					ids.addString(g.node(i).id);
+				}
+			}
+			final JsonObject params = (additionnalParams != null) ? additionnalParams : new JsonObject();
+			params.putString("userId", userId).putArray("visibleGroupIds", ids);
+			final String query;
+			if (manualGroups) {
+				query = "MATCH (mg:ManualGroup) WHERE mg.id IN {visibleGroupIds} " +
+						"WITH mg as manualGroup " + customReturn;
+			} else {
+				query = "MATCH (gp:Group) WHERE gp.id IN {visibleGroupIds} " +
+						"OPTIONAL MATCH gp-[:DEPENDS*0..1]->(pg:ProfileGroup)-[:HAS_PROFILE]->(profile:Profile) " +
+						"WITH gp as profileGroup, profile " + customReturn;
+			}
+			neo4j.execute(query, params, validResultHandler(handler));
+			return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Point checks of the share validations, with the visibleUsers and visibleProfilsGroups rules.
+	 * @return the visible ids or null if the index can't answer, as when a candidate id is not indexed yet.
+	 */
+	public JsonArray visibleIds(String userId, JsonArray userIds, JsonArray groupIds) {
+		final VisibilityGraph g = graph;
+		lock.readLock().lock();
+		try {
+			final int n = (g != null) ? g.indexOf(userId) : -1;
+			if (n < 0) {
+				return null;
+			}
+			final JsonArray ids = new JsonArray();
+			if (userIds != null && userIds.size() > 0) {
+				final BitSet v = visibles(g, n, false);
+				for (Object id : userIds) {
+					final int i = (id instanceof String) ? g.indexOf((String) id) : -1;
+					if (i < 0) {
+						return null;
+					}
+					if (i != n && v.get(i) && g.node(i).isUser() && !g.node(i).blocked) {
+						ids.addString((String) id);
+					}
+				}
+			}
+			if (groupIds != null && groupIds.size() > 0) {
+				final BitSet v = g.visibleGroups(n);
+				for (Object id : groupIds) {
+					final int i = (id instanceof String) ? g.indexOf((String) id) : -1;
+					if (i < 0) {
+						return null;
+					}
+					if (v.get(i)) {
+						ids.addString((String) id);
+					}
+				}
+			}
+			return ids;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Typeahead over the visible users and groups : every search term must prefix a word of the
+	 * accent-folded display name (or group name). Without preFilter nor customReturn the page is
+	 * built in memory, ordered by name and display name as the graph query.
+	 * @return false if the index can't answer and the graph must be queried.
+	 */
+	public boolean searchVisibles(String userId, String search, JsonArray expectedTypes, boolean itSelf,
+			boolean myGroup, String preFilter, String customReturn, JsonObject additionnalParams,
+			int skip, int limit, Handler<Either<String, JsonArray>> handler) {
+		final VisibilityGraph g = graph;
+		lock.readLock().lock();
+		try {
+			final int n = (g != null) ? g.indexOf(userId) : -1;
+			if (n < 0) {
+				return false;
+			}
+			final String folded = fold(search);
+			final List<String> t = new ArrayList<>();
+			for (String term : tokens(folded)) {
+				if (!term.isEmpty()) {
+					t.add(term);
+				}
+			}
+			final String[] terms = t.toArray(new String[t.size()]);
+			final BitSet v = visibles(g, n, myGroup);
+			final int types = g.labelsMask(expectedTypes);
+			final BitSet matched = new BitSet(v.length());
+			for (int i = v.nextSetBit(0); i >= 0; i = v.nextSetBit(i + 1)) {
+				final Node m = g.node(i);
+				if ((i == n && !itSelf) || m.blocked || m.deleted || (types != -1 && (m.labels & types) == 0)) {
+					continue;
+				}
+				if (g.match(i, folded, terms) >= 0) {
+					matched.set(i);
+				}
+			}
+			if (preFilter == null && (customReturn == null || customReturn.trim().isEmpty())) {
+				final List<Integer> found = new ArrayList<>(matched.cardinality());
+				for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+					found.add(i);
+				}
+				Collections.sort(found, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						int c = compareNullsLast(g.node(a).name, g.node(b).name);
+						return (c != 0) ? c : compareNullsLast(g.node(a).displayName, g.node(b).displayName);
+					}
+				});
+				final JsonArray rows = new JsonArray();
+				for (int i = Math.max(skip, 0); i < found.size() && rows.size() < limit; i++) {
+					rows.addObject(searchRow(g.node(found.get(i))));
+				}
+				handler.handle(new Either.Right<String, JsonArray>(rows));
+				return true;
+			}
+			final JsonObject params = new JsonObject();
+			final StringBuilder query = new StringBuilder(lookup(g, matched, params));
+			if (preFilter != null) {
+				query.append(preFilter);
+			}
+			query.append("WITH DISTINCT m as visibles ")
+					.append((customReturn != null && !customReturn.trim().isEmpty()) ? customReturn : SEARCH_RETURN)
+					.append(" SKIP {skip} LIMIT {limit} ");
+			params.putString("userId", userId).putNumber("skip", Math.max(skip, 0)).putNumber("limit", limit);
+			if (additionnalParams != null) {
+				params.mergeIn(additionnalParams);
+			}
+			neo4j.execute(query.toString(), params, validResultHandler(handler));
+			return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Called under the read lock : the cache is shared by the event loops reading the index.
+	 */
+	private BitSet visibles(VisibilityGraph g, int n, boolean myGroup) {
+		final Integer key = (n << 1) | (myGroup ? 1 : 0);
+		BitSet v;
+		synchronized (visibles) {
+			v = visibles.get(key);
+		}
+		if (v != null) {
+			hits.incrementAndGet();
+			return v;
+		}
+		misses.incrementAndGet();
+		v = g.visibles(n, myGroup);
+		synchronized (visibles) {
+			visibles.put(key, v);
+		}
+		return v;
+	}
+
+	private void clearVisibles() {
+		synchronized (visibles) {
+			visibles.clear();
+		}
+	}
+
+	/**
+	 * Matches the visible nodes through the id constraints instead of traversing the graph.
+	 */
+	private static String lookup(VisibilityGraph g, BitSet matched, JsonObject params) {
+		final JsonArray users = new JsonArray();
+		final JsonArray groups = new JsonArray();
+		for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+			final Node m = g.node(i);
+			if (m.isUser()) {
+				users.addString(m.id);
+			} else if (m.isGroup()) {
+				groups.addString(m.id);
+			}
+		}
+		params.putArray("visibleUserIds", users).putArray("visibleGroupIds", groups);
+		if (groups.size() == 0) {
+			return "MATCH (m:User) WHERE m.id IN {visibleUserIds} ";
+		} else if (users.size() == 0) {
+			return "MATCH (m:Group) WHERE m.id IN {visibleGroupIds} ";
+		}
+		return "OPTIONAL MATCH (vu:User) WHERE vu.id IN {visibleUserIds} " +
+				"WITH COLLECT(vu) as vus " +
+				"OPTIONAL MATCH (vg:Group) WHERE vg.id IN {visibleGroupIds} " +
+				"WITH vus + COLLECT(vg) as vs " +
+				"UNWIND vs as m " +
+				"WITH m WHERE NOT(m IS NULL) ";
+	}
+
+	private static JsonObject userRow(Node m, boolean profile, String type) {
+		JsonObject j = new JsonObject()
+				.putString("id", m.id)
+				.putString("name", m.name)
+				.putString("login", m.login)
+				.putString("username", m.displayName)
+				.putString("lastName", m.lastName)
+				.putString("firstName", m.firstName);
+		if (m.profiles != null) {
+			j.putArray("profiles", m.profiles.copy());
+		}
+		if (profile) {
+			j.putString("type", type);
+		}
+		return j;
+	}
+
+	private static JsonObject searchRow(Node m) {
+		JsonObject j = new JsonObject()
+				.putString("id", m.id)
+				.putString("name", m.name)
+				.putString("displayName", m.displayName)
+				.putString("groupDisplayName", m.groupDisplayName);
+		if (m.profiles != null && m.profiles.size() > 0) {
+			j.putValue("profile", m.profiles.get(0));
+		}
+		return j;
+	}
+
+	private static JsonObject groupRow(Node g, boolean profile, String type) {
+		JsonObject j = new JsonObject()
+				.putString("id", g.id)
+				.putString("name", g.name)
+				.putString("groupDisplayName", g.groupDisplayName);
+		if (profile) {
+			j.putString("type", type);
+		}
+		return j;
+	}
+
+	private static JsonArray toArray(List<JsonObject> rows) {
+		final JsonArray a = new JsonArray();
+		for (JsonObject row : rows) {
+			a.addObject(row);
+		}
+		return a;
+	}
+
+	private static int compareNullsLast(String a, String b) {
+		if (a == null) {
+			return (b == null) ? 0 : 1;
+		}
+		return (b == null) ? -1 : a.compareTo(b);
+	}
+
+	public JsonObject stats() {
+		final VisibilityGraph g = graph;
+		final int cached;
+		synchronized (visibles) {
+			cached = visibles.size();
+		}
+		lock.readLock().lock();
+		try {
+			return stats(g, cached);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private JsonObject stats(VisibilityGraph g, int cached) {
+		return new JsonObject()
+				.putBoolean("ready", g != null)
+				.putBoolean("building", building)
+				.putNumber("nodes", (g != null) ? g.size() : 0)
+				.putNumber("relationships", (g != null) ? g.relationships() : 0)
+				.putNumber("builds", builds)
+				.putNumber("lastBuildDuration", lastBuildDuration)
+				.putNumber("cached", cached)
+				.putNumber("hits", hits.get())
+				.putNumber("misses", misses.get());
+	}
+
+}
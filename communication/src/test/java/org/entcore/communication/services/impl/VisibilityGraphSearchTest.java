@@ -0,0 +1,60 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.communication.services.impl;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VisibilityGraphSearchTest {
+
+	private static boolean matches(String term, String name) {
+		return Pattern.matches(VisibilityGraph.wordPrefixPattern(term), name);
+	}
+
+	@Test
+	public void termPrefixesAWord() {
+		assertTrue(matches("jea", "Jean Dupont"));
+		assertTrue(matches("dup", "Jean Dupont"));
+		assertTrue(matches("pie", "Jean-Pierre Martin"));
+		assertTrue(matches("ang", "Marie D'Angelo"));
+		assertFalse(matches("pon", "Jean Dupont"));
+		assertFalse(matches("pie", "Jean Dupierre"));
+	}
+
+	@Test
+	public void ignoresCaseAndAccentsOfTheName() {
+		assertTrue(matches("emi", "Émilie Durand"));
+		assertTrue(matches("francois", "FRANÇOIS Noël"));
+		assertTrue(matches("noel", "François Noël"));
+		assertFalse(matches("emo", "Émilie Durand"));
+	}
+
+	@Test
+	public void escapesTheOtherCharacters() {
+		assertTrue(matches("6.a", "Classe 6.A"));
+		assertFalse(matches("6.a", "Classe 6BA"));
+		assertTrue(matches("(cp)", "Enseignants (CP)"));
+	}
+
+}
@@ -360,6 +360,8 @@ public class ConversationController extends BaseController {
 		final String folder = request.params().get("folder");
 		final String restrain = request.params().get("restrain");
 		final String p = Utils.getOrElse(request.params().get("page"), "0", false);
+		final String beforeDate = request.params().get("beforeDate");
+		final String beforeId = request.params().get("beforeId");
 		if (folder == null || folder.trim().isEmpty()) {
 			badRequest(request);
 			return;
@@ -368,11 +370,7 @@ public class ConversationController extends BaseController {
 			@Override
 			public void handle(final UserInfos user) {
 				if (user != null) {
-					int page;
-					try {
-						page = Integer.parseInt(p);
-					} catch (NumberFormatException e) { page = 0; }
-					conversationService.list(folder, restrain, user, page, new Handler<Either<String, JsonArray>>() {
+					final Handler<Either<String, JsonArray>> handler = new Handler<Either<String, JsonArray>>() {
 						@Override
 						public void handle(Either<String, JsonArray> r) {
 							if (r.isRight()) {
@@ -389,7 +387,23 @@ public class ConversationController extends BaseController {
 								renderJson(request, error, 400);
 							}
 						}
-					});
+					};
+					if (beforeDate != null && beforeId != null) {
+						long date;
+						try {
+							date = Long.parseLong(beforeDate);
+						} catch (NumberFormatException e) {
+							badRequest(request, "invalid.beforeDate");
+							return;
+						}
+						conversationService.list(folder, restrain, user, date, beforeId, handler);
+					} else {
+						int page;
+						try {
+							page = Integer.parseInt(p);
+						} catch (NumberFormatException e) { page = 0; }
+						conversationService.list(folder, restrain, user, page, handler);
+					}
 				} else {
 					unauthorized(request);
 				}
@@ -474,6 +488,25 @@ public class ConversationController extends BaseController {
 			public void handle(final UserInfos user) {
 				if (user != null) {
 					String parentMessageId = request.params().get("In-Reply-To");
+					String search = request.params().get("search");
+					if (search != null && !search.trim().isEmpty()) {
+						int limit = 10;
+						int page = 0;
+						try {
+							if (request.params().get("limit") != null) {
+								limit = Integer.parseInt(request.params().get("limit"));
+							}
+							if (request.params().get("page") != null) {
+								page = Math.max(0, Integer.parseInt(request.params().get("page")));
+							}
+						} catch (NumberFormatException e) {
+							badRequest(request, e.getMessage());
+							return;
+						}
+						conversationService.searchVisibleRecipients(search.trim(), page * limit, limit, user,
+								I18n.acceptLanguage(request), defaultResponseHandler(request));
+						return;
+					}
 					conversationService.findVisibleRecipients(parentMessageId, user,
 							I18n.acceptLanguage(request), defaultResponseHandler(request));
 				} else {
@@ -60,6 +60,12 @@ public interface ConversationService {
 
 	void list(String folder, String restrain, UserInfos user, int page, Handler<Either<String, JsonArray>> results);
 
+	/**
+	 * Lists the messages older than the (beforeDate, beforeId) cursor, the last message of the previous page.
+	 */
+	void list(String folder, String restrain, UserInfos user, Long beforeDate, String beforeId,
+		Handler<Either<String, JsonArray>> results);
+
 	void trash(List<String> messagesId, UserInfos user, Handler<Either<String, JsonObject>> result);
 
 	void restore(List<String> messagesId, UserInfos user, Handler<Either<String, JsonObject>> result);
@@ -73,6 +79,9 @@ public interface ConversationService {
 	void findVisibleRecipients(String parentMessageId, UserInfos user,
 		String acceptLanguage, Handler<Either<String, JsonObject>> result);
 
+	void searchVisibleRecipients(String search, int skip, int limit, UserInfos user,
+		String acceptLanguage, Handler<Either<String, JsonObject>> result);
+
 	//Folders
 	void createFolder(String folderName, String parentFolderId, UserInfos user, Handler<Either<String, JsonObject>> result);
 	void updateFolder(String folderId, JsonObject data, UserInfos user, Handler<Either<String, JsonObject>> result);
@@ -47,6 +47,12 @@ import java.util.*;
 
 public class DefaultConversationService implements ConversationService {
 
+	private static final String ACTIVE_RECIPIENTS_RETURN =
+			"MATCH visibles<-[:IN*0..1]-(u:User)-[:HAS_CONVERSATION]->(c:Conversation {active:{true}}) " +
+			"RETURN DISTINCT visibles.id as id, visibles.name as name, " +
+			"visibles.displayName as displayName, visibles.groupDisplayName as groupDisplayName, " +
+			"visibles.profiles[0] as profile";
+
 	private final EventBus eb;
 	private final Neo neo;
 	private final String applicationName;
@@ -401,15 +407,24 @@ public class DefaultConversationService implements ConversationService {
 		});
 	}
 
+	@Override
+	public void list(String folder, String restrain, UserInfos user, Long beforeDate, String beforeId,
+			Handler<Either<String, JsonArray>> results) {
+		list(folder, restrain, user, 0, beforeDate, beforeId, results);
+	}
+
 	@Override
 	public void list(String folder, String restrain, UserInfos user, int page, final Handler<Either<String, JsonArray>> results) {
+		list(folder, restrain, user, page, null, null, results);
+	}
+
+	private void list(String folder, String restrain, UserInfos user, int page, Long beforeDate, String beforeId,
+			final Handler<Either<String, JsonArray>> results) {
 		if (validationError(user, results, folder)) return;
-		int skip = page * LIST_LIMIT;
 
 		JsonObject params = new JsonObject()
 			.putString("userId", user.getUserId())
 			.putString("folder", folder)
-			.putNumber("skip", skip)
 			.putNumber("limit", LIST_LIMIT)
 			.putBoolean("true", true);
 
@@ -431,14 +446,24 @@ public class DefaultConversationService implements ConversationService {
 				"WHERE NOT HAS(r.insideFolder) ";
 		}
 
+		String pagination;
+		if (beforeDate != null && beforeId != null) {
+			messageFilter += "AND (m.date < {beforeDate} OR (m.date = {beforeDate} AND m.id < {beforeId})) ";
+			params.putNumber("beforeDate", beforeDate).putString("beforeId", beforeId);
+			pagination = "";
+		} else {
+			params.putNumber("skip", page * LIST_LIMIT);
+			pagination = "SKIP {skip} ";
+		}
+
 		String query =
 				"MATCH (c:Conversation {userId : {userId}, active : {true}})" +
 				messageFilter +
 				"RETURN DISTINCT m.id as id, m.to as to, m.from as from, m.state as state, " +
 				"m.toName as toName, m.fromName as fromName, " +
 				"m.subject as subject, m.date as date, r.unread as unread, m.displayNames as displayNames, coalesce(r.attachments, []) as attachments,  collect(f.name) as systemFolders " +
-				"ORDER BY m.date DESC " +
-				"SKIP {skip} " +
+				"ORDER BY m.date DESC, m.id DESC " +
+				pagination +
 				"LIMIT {limit} ";
 
 		neo.execute(query, params, validResultHandler(results));
@@ -657,35 +682,49 @@ public class DefaultConversationService implements ConversationService {
 			});
 		} else {
 			params.putBoolean("true", true);
-			String groups =
-					"MATCH visibles<-[:IN*0..1]-(u:User)-[:HAS_CONVERSATION]->(c:Conversation {active:{true}}) " +
-					"RETURN DISTINCT visibles.id as id, visibles.name as name, " +
-					"visibles.displayName as displayName, visibles.groupDisplayName as groupDisplayName, " +
-					"visibles.profiles[0] as profile";
-			findVisibles(eb, user.getUserId(), groups, params, true, true, true, new Handler<JsonArray>() {
+			findVisibles(eb, user.getUserId(), ACTIVE_RECIPIENTS_RETURN, params, true, true, true, new Handler<JsonArray>() {
 				@Override
 				public void handle(JsonArray visibles) {
-					JsonArray users = new JsonArray();
-					JsonArray groups = new JsonArray();
-					visible.putArray("groups", groups).putArray("users", users);
-					for (Object o: visibles) {
-						if (!(o instanceof JsonObject)) continue;
-						JsonObject j = (JsonObject) o;
-						if (j.getString("name") != null) {
-							j.removeField("displayName");
-							UserUtils.groupDisplayName(j, acceptLanguage);
-							groups.add(j);
-						} else {
-							j.removeField("name");
-							users.add(j);
-						}
-					}
-					result.handle(new Either.Right<String,JsonObject>(visible));
+					result.handle(new Either.Right<String,JsonObject>(splitRecipients(visibles, acceptLanguage)));
 				}
 			});
 		}
 	}
 
+	@Override
+	public void searchVisibleRecipients(String search, int skip, int limit, UserInfos user,
+			final String acceptLanguage, final Handler<Either<String, JsonObject>> result) {
+		if (validationParamsError(user, result, search))
+			return;
+		UserUtils.searchVisibles(eb, user.getUserId(), search, true, true,
+				ACTIVE_RECIPIENTS_RETURN + " ORDER BY name, displayName", new JsonObject().putBoolean("true", true),
+				skip, limit, null,
+				new Handler<JsonArray>() {
+			@Override
+			public void handle(JsonArray visibles) {
+				result.handle(new Either.Right<String,JsonObject>(splitRecipients(visibles, acceptLanguage)));
+			}
+		});
+	}
+
+	private static JsonObject splitRecipients(JsonArray visibles, String acceptLanguage) {
+		JsonArray users = new JsonArray();
+		JsonArray groups = new JsonArray();
+		for (Object o: visibles) {
+			if (!(o instanceof JsonObject)) continue;
+			JsonObject j = (JsonObject) o;
+			if (j.getString("name") != null) {
+				j.removeField("displayName");
+				UserUtils.groupDisplayName(j, acceptLanguage);
+				groups.add(j);
+			} else {
+				j.removeField("name");
+				users.add(j);
+			}
+		}
+		return new JsonObject().putArray("groups", groups).putArray("users", users);
+	}
+
 	@Override
 	public void createFolder(String folderName, String parentFolderId, UserInfos user, Handler<Either<String, JsonObject>> result) {
 		if (validationParamsError(user, result, folderName)) return;
@@ -21,6 +21,7 @@ package org.entcore.conversation.service.impl;
 
 import static org.entcore.common.user.UserUtils.findVisibles;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -44,26 +45,33 @@ import fr.wseduc.webutils.Utils;
 
 public class SqlConversationService implements ConversationService{
 
+	private static final int DEFAULT_SEND_BATCH_SIZE = 500;
+	private static final List<String> SYSTEM_FOLDERS = Arrays.asList("INBOX", "OUTBOX", "DRAFT", "TRASH");
+
 	private final EventBus eb;
 	private final Sql sql;
 
 	private final int maxFolderDepth;
+	private final int sendBatchSize;
 
 	private final String messageTable;
 	private final String folderTable;
 	private final String attachmentTable;
 	private final String userMessageTable;
 	private final String userMessageAttachmentTable;
+	private final String userCountersTable;
 
 	public SqlConversationService(Vertx vertx, String schema) {
 		this.eb = Server.getEventBus(vertx);
 		this.sql = Sql.getInstance();
 		this.maxFolderDepth = Config.getConf().getInteger("max-folder-depth", Conversation.DEFAULT_FOLDER_DEPTH);
+		this.sendBatchSize = Config.getConf().getInteger("send-batch-size", DEFAULT_SEND_BATCH_SIZE);
 		messageTable = schema + ".messages";
 		folderTable = schema + ".folders";
 		attachmentTable = schema + ".attachments";
 		userMessageTable = schema + ".usermessages";
 		userMessageAttachmentTable = schema + ".usermessagesattachments";
+		userCountersTable = schema + ".usercounters";
 	}
 
 	@Override
@@ -175,23 +183,34 @@ public class SqlConversationService implements ConversationService{
 					"RETURNING id, subject";
 				builder.prepared(updateMessage, new JsonArray().add("SENT").add(draftId));
 
+				// recipients are inserted with multi-rows statements of at most sendBatchSize rows
+				final JsonArray fields = new JsonArray().add("user_id").add("message_id").add("total_quota");
+				JsonArray rows = new JsonArray();
 				for(Object toObj : ids){
 					if(toObj.equals(user.getUserId()))
 						continue;
 
-					builder.insert(userMessageTable, new JsonObject()
-						.putString("user_id", toObj.toString())
-						.putString("message_id", draftId)
-						.putNumber("total_quota", totalQuota)
-					);
-					for(Object attachmentId : attachmentIds){
-						builder.insert(userMessageAttachmentTable, new JsonObject()
-							.putString("user_id", toObj.toString())
-							.putString("message_id", draftId)
-							.putString("attachment_id", attachmentId.toString())
-						);
+					rows.addArray(new JsonArray().add(toObj.toString()).add(draftId).add(totalQuota));
+					if (rows.size() >= sendBatchSize) {
+						builder.insert(userMessageTable, fields, rows);
+						rows = new JsonArray();
 					}
 				}
+				if (rows.size() > 0) {
+					builder.insert(userMessageTable, fields, rows);
+				}
+
+				// the sender attachments are linked to all the recipients in one statement
+				if (attachmentIds.size() > 0) {
+					String linkAttachments =
+						"INSERT INTO " + userMessageAttachmentTable + " (user_id, message_id, attachment_id) " +
+						"SELECT um.user_id, um.message_id, uma.attachment_id " +
+						"FROM " + userMessageTable + " um " +
+						"JOIN " + userMessageAttachmentTable + " uma ON uma.message_id = um.message_id " +
+						"WHERE um.message_id = ? AND um.user_id <> ? AND uma.user_id = ?";
+					builder.prepared(linkAttachments,
+						new JsonArray().add(draftId).add(user.getUserId()).add(user.getUserId()));
+				}
 
 				sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
 			}
@@ -200,8 +219,17 @@ public class SqlConversationService implements ConversationService{
 
 	@Override
 	public void list(String folder, String restrain, UserInfos user, int page, Handler<Either<String, JsonArray>> results) {
-		int skip = page * LIST_LIMIT;
+		list(folder, restrain, user, page, null, null, results);
+	}
+
+	@Override
+	public void list(String folder, String restrain, UserInfos user, Long beforeDate, String beforeId,
+			Handler<Either<String, JsonArray>> results) {
+		list(folder, restrain, user, 0, beforeDate, beforeId, results);
+	}
 
+	private void list(String folder, String restrain, UserInfos user, int page, Long beforeDate, String beforeId,
+			Handler<Either<String, JsonArray>> results) {
 		String additionalWhere = "";
 		JsonArray values = new JsonArray()
 			.add(user.getUserId());
@@ -213,6 +241,15 @@ public class SqlConversationService implements ConversationService{
 			additionalWhere = addFolderCondition(folder, values, user.getUserId());
 		}
 
+		String pagination;
+		if (beforeDate != null && beforeId != null) {
+			additionalWhere += " AND (m.date, m.id) < (?, ?)";
+			values.add(beforeDate).add(beforeId);
+			pagination = "LIMIT " + LIST_LIMIT;
+		} else {
+			pagination = "LIMIT " + LIST_LIMIT + " OFFSET " + (page * LIST_LIMIT);
+		}
+
 		String query = "SELECT m.*, um.unread as unread, " +
 			"CASE when COUNT(distinct att) = 0 THEN '[]' ELSE json_agg(distinct att.*) END AS attachments " +
 			"FROM " + userMessageTable + " um LEFT JOIN " +
@@ -221,7 +258,7 @@ public class SqlConversationService implements ConversationService{
 			attachmentTable + " att ON uma.attachment_id = att.id " +
 			"WHERE um.user_id = ? " + additionalWhere + " " +
 			"GROUP BY m.id, unread " +
-			"ORDER BY m.date DESC LIMIT " + LIST_LIMIT + " OFFSET " + skip;
+			"ORDER BY m.date DESC, m.id DESC " + pagination;
 
 		sql.prepared(query, values, SqlResult.validResultHandler(results, "attachments", "to", "toName", "cc", "ccName", "displayNames"));
 	}
@@ -356,6 +393,17 @@ public class SqlConversationService implements ConversationService{
 		JsonArray values = new JsonArray()
 			.add(user.getUserId());
 
+		final String systemFolder = folder.toUpperCase();
+		if (SYSTEM_FOLDERS.contains(systemFolder)) {
+			// counters maintained by the usermessages and messages triggers
+			String counter = (unread == null) ? "total" : (unread ? "unread" : "total - unread");
+			String query = "SELECT coalesce((SELECT " + counter + " FROM " + userCountersTable + " " +
+				"WHERE user_id = ? AND folder = ?), 0) as count";
+			values.add(systemFolder);
+			sql.prepared(query, values, SqlResult.validUniqueResultHandler(result));
+			return;
+		}
+
 		String query = "SELECT count(*) as count FROM " + userMessageTable + " um JOIN " +
 			messageTable + " m ON (um.message_id = m.id) " +
 			"WHERE user_id = ? ";
@@ -376,8 +424,6 @@ public class SqlConversationService implements ConversationService{
 		if (validationParamsError(user, result))
 			return;
 
-		final JsonObject visible = new JsonObject();
-
 		final JsonObject params = new JsonObject();
 
 		if (parentMessageId != null && !parentMessageId.trim().isEmpty()) {
@@ -407,22 +453,7 @@ public class SqlConversationService implements ConversationService{
 					findVisibles(eb, user.getUserId(), customReturn, params, true, true, true, new Handler<JsonArray>() {
 						@Override
 						public void handle(JsonArray visibles) {
-							JsonArray users = new JsonArray();
-							JsonArray groups = new JsonArray();
-							visible.putArray("groups", groups).putArray("users", users);
-							for (Object o: visibles) {
-								if (!(o instanceof JsonObject)) continue;
-								JsonObject j = (JsonObject) o;
-								if (j.getString("name") != null) {
-									j.removeField("displayName");
-									UserUtils.groupDisplayName(j, acceptLanguage);
-									groups.add(j);
-								} else {
-									j.removeField("name");
-									users.add(j);
-								}
-							}
-							result.handle(new Either.Right<String,JsonObject>(visible));
+							result.handle(new Either.Right<String,JsonObject>(splitRecipients(visibles, acceptLanguage)));
 						}
 					});
 				}
@@ -435,27 +466,44 @@ public class SqlConversationService implements ConversationService{
 			findVisibles(eb, user.getUserId(), customReturn, params, true, true, true, new Handler<JsonArray>() {
 				@Override
 				public void handle(JsonArray visibles) {
-					JsonArray users = new JsonArray();
-					JsonArray groups = new JsonArray();
-					visible.putArray("groups", groups).putArray("users", users);
-					for (Object o: visibles) {
-						if (!(o instanceof JsonObject)) continue;
-						JsonObject j = (JsonObject) o;
-						if (j.getString("name") != null) {
-							j.removeField("displayName");
-							UserUtils.groupDisplayName(j, acceptLanguage);
-							groups.add(j);
-						} else {
-							j.removeField("name");
-							users.add(j);
-						}
-					}
-					result.handle(new Either.Right<String,JsonObject>(visible));
+					result.handle(new Either.Right<String,JsonObject>(splitRecipients(visibles, acceptLanguage)));
 				}
 			});
 		}
 	}
 
+	@Override
+	public void searchVisibleRecipients(String search, int skip, int limit, UserInfos user,
+			final String acceptLanguage, final Handler<Either<String, JsonObject>> result) {
+		if (validationParamsError(user, result, search))
+			return;
+		UserUtils.searchVisibles(eb, user.getUserId(), search, true, true, null, null, skip, limit, null,
+				new Handler<JsonArray>() {
+			@Override
+			public void handle(JsonArray visibles) {
+				result.handle(new Either.Right<String,JsonObject>(splitRecipients(visibles, acceptLanguage)));
+			}
+		});
+	}
+
+	private static JsonObject splitRecipients(JsonArray visibles, String acceptLanguage) {
+		JsonArray users = new JsonArray();
+		JsonArray groups = new JsonArray();
+		for (Object o: visibles) {
+			if (!(o instanceof JsonObject)) continue;
+			JsonObject j = (JsonObject) o;
+			if (j.getString("name") != null) {
+				j.removeField("displayName");
+				UserUtils.groupDisplayName(j, acceptLanguage);
+				groups.add(j);
+			} else {
+				j.removeField("name");
+				users.add(j);
+			}
+		}
+		return new JsonObject().putArray("groups", groups).putArray("users", users);
+	}
+
 	@Override
 	public void createFolder(final String folderName, final String parentFolderId, final UserInfos user,
 			final Handler<Either<String, JsonObject>> result) {
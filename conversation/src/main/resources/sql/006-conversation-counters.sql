@@ -0,0 +1,109 @@
+CREATE TABLE conversation.usercounters (
+	"user_id" VARCHAR(36) NOT NULL,
+	"folder" VARCHAR(36) NOT NULL,
+	"total" BIGINT NOT NULL DEFAULT 0,
+	"unread" BIGINT NOT NULL DEFAULT 0,
+	PRIMARY KEY (user_id, folder)
+);
+
+-- Folders (system folder name or folder id) in which a user message is listed.
+CREATE OR REPLACE FUNCTION conversation.messageFolders(userId VARCHAR, folderId VARCHAR, trashed BOOLEAN,
+        messageFrom VARCHAR, messageTo JSONB, messageCc JSONB, messageState VARCHAR) RETURNS VARCHAR[] AS $$
+    DECLARE
+        folders VARCHAR[] := '{}';
+        userArray JSONB := ('["' || userId || '"]')::jsonb;
+    BEGIN
+        IF trashed THEN
+            RETURN ARRAY['TRASH']::VARCHAR[];
+        END IF;
+        IF folderId IS NOT NULL THEN
+            RETURN ARRAY[folderId]::VARCHAR[];
+        END IF;
+        IF messageState = 'SENT' AND (messageFrom <> userId OR COALESCE(messageTo @> userArray, false)
+                OR COALESCE(messageCc @> userArray, false)) THEN
+            folders := folders || 'INBOX'::VARCHAR;
+        END IF;
+        IF messageState = 'SENT' AND messageFrom = userId THEN
+            folders := folders || 'OUTBOX'::VARCHAR;
+        END IF;
+        IF messageState = 'DRAFT' AND messageFrom = userId THEN
+            folders := folders || 'DRAFT'::VARCHAR;
+        END IF;
+        RETURN folders;
+    END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION conversation.updateCounters(userId VARCHAR, folders VARCHAR[], totalDelta INTEGER,
+        unreadDelta INTEGER) RETURNS VOID AS $$
+    DECLARE
+        f VARCHAR;
+    BEGIN
+        FOREACH f IN ARRAY folders LOOP
+            UPDATE conversation.usercounters SET total = total + totalDelta, unread = unread + unreadDelta
+            WHERE user_id = userId AND folder = f;
+            IF NOT FOUND THEN
+                BEGIN
+                    INSERT INTO conversation.usercounters (user_id, folder, total, unread)
+                    VALUES (userId, f, totalDelta, unreadDelta);
+                EXCEPTION WHEN unique_violation THEN
+                    UPDATE conversation.usercounters SET total = total + totalDelta, unread = unread + unreadDelta
+                    WHERE user_id = userId AND folder = f;
+                END;
+            END IF;
+        END LOOP;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION conversation.userMessageCounters() RETURNS TRIGGER AS $$
+    DECLARE
+        m RECORD;
+    BEGIN
+        IF TG_OP = 'INSERT' THEN
+            SELECT "from", "to", "cc", "state" INTO m FROM conversation.messages WHERE id = NEW.message_id;
+        ELSE
+            SELECT "from", "to", "cc", "state" INTO m FROM conversation.messages WHERE id = OLD.message_id;
+        END IF;
+        IF TG_OP = 'DELETE' OR TG_OP = 'UPDATE' THEN
+            PERFORM conversation.updateCounters(OLD.user_id, conversation.messageFolders(OLD.user_id, OLD.folder_id,
+                    OLD.trashed, m."from", m."to", m."cc", m."state"), -1, CASE WHEN OLD.unread THEN -1 ELSE 0 END);
+        END IF;
+        IF TG_OP = 'INSERT' OR TG_OP = 'UPDATE' THEN
+            PERFORM conversation.updateCounters(NEW.user_id, conversation.messageFolders(NEW.user_id, NEW.folder_id,
+                    NEW.trashed, m."from", m."to", m."cc", m."state"), 1, CASE WHEN NEW.unread THEN 1 ELSE 0 END);
+        END IF;
+        RETURN NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION conversation.messageCounters() RETURNS TRIGGER AS $$
+    DECLARE
+        um RECORD;
+    BEGIN
+        FOR um IN SELECT user_id, folder_id, trashed, unread FROM conversation.usermessages WHERE message_id = NEW.id LOOP
+            PERFORM conversation.updateCounters(um.user_id, conversation.messageFolders(um.user_id, um.folder_id,
+                    um.trashed, OLD."from", OLD."to", OLD."cc", OLD."state"), -1, CASE WHEN um.unread THEN -1 ELSE 0 END);
+            PERFORM conversation.updateCounters(um.user_id, conversation.messageFolders(um.user_id, um.folder_id,
+                    um.trashed, NEW."from", NEW."to", NEW."cc", NEW."state"), 1, CASE WHEN um.unread THEN 1 ELSE 0 END);
+        END LOOP;
+        RETURN NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+-- Triggers fire in name order : this one must run before deleteMessage_trigger removes the message.
+CREATE TRIGGER countUserMessages_trigger
+AFTER INSERT OR DELETE OR UPDATE OF folder_id, trashed, unread ON conversation.usermessages
+    FOR EACH ROW EXECUTE PROCEDURE conversation.userMessageCounters();
+
+CREATE TRIGGER messageCounters_trigger
+AFTER UPDATE OF "from", "to", "cc", "state" ON conversation.messages
+    FOR EACH ROW
+    WHEN (OLD."state" IS DISTINCT FROM NEW."state" OR OLD."from" IS DISTINCT FROM NEW."from"
+        OR OLD."to" IS DISTINCT FROM NEW."to" OR OLD."cc" IS DISTINCT FROM NEW."cc")
+    EXECUTE PROCEDURE conversation.messageCounters();
+
+INSERT INTO conversation.usercounters (user_id, folder, total, unread)
+SELECT um.user_id, f.folder, count(*), sum(CASE WHEN um.unread THEN 1 ELSE 0 END)
+FROM conversation.usermessages um
+JOIN conversation.messages m ON m.id = um.message_id,
+LATERAL unnest(conversation.messageFolders(um.user_id, um.folder_id, um.trashed, m."from", m."to", m."cc", m."state")) AS f(folder)
+GROUP BY um.user_id, f.folder;
@@ -41,6 +41,7 @@ import org.vertx.java.core.http.HttpServerRequest;
 public class Directory extends BaseServer {
 
 	public static final String FEEDER = "entcore.feeder";
+	public static final String MANUAL_UPDATED = "feeder.manual.updated";
 
 	@Override
 	public void start() {
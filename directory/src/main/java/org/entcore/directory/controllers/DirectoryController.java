@@ -25,12 +25,14 @@ import fr.wseduc.rs.Post;
 import fr.wseduc.security.ActionType;
 import fr.wseduc.security.SecuredAction;
 import fr.wseduc.webutils.Either;
+import fr.wseduc.webutils.I18n;
 import fr.wseduc.webutils.http.BaseController;
 import fr.wseduc.webutils.security.BCrypt;
 import org.entcore.common.appregistry.ApplicationUtils;
 import org.entcore.common.bus.BusResponseHandler;
 import org.entcore.common.http.filter.AdminFilter;
 import org.entcore.common.http.filter.ResourceFilter;
+import org.entcore.common.http.response.CsvResponse;
 import org.entcore.common.neo4j.Neo;
 import org.entcore.directory.security.AdmlOfStructuresByExternalId;
 import org.entcore.directory.services.ClassService;
@@ -375,52 +377,61 @@ public class DirectoryController extends BaseController {
 	@Get("/api/export")
 	@SecuredAction(value = "", type = ActionType.RESOURCE)
 	public void export(final HttpServerRequest request) {
-		String neoRequest = "";
-		Map<String, Object> params = new HashMap<>();
-		if (request.params().get("id").equals("all")){
-			neoRequest =
-					"MATCH (m:User)-[:IN]->g " +
-					"WHERE NOT(m.activationCode IS NULL) " +
-					"OPTIONAL MATCH g-[:DEPENDS*0..1]->(pg:ProfileGroup)-[:HAS_PROFILE]->(p:Profile) " +
+		final String id = request.params().get("id");
+		if (id == null) {
+			notFound(request);
+			return;
+		}
+		final CsvResponse csv = new CsvResponse(request, "activation_de_comptes.csv",
+				"Type", "Nom", "Prénom", "Login", "Code d'activation");
+		final String host = getHost(request);
+		final String acceptLanguage = I18n.acceptLanguage(request);
+		final CsvResponse.Formatter formatter = new CsvResponse.Formatter() {
+			@Override
+			public Object[] format(JsonObject row) {
+				String type = row.getString("type");
+				return new Object[] {
+						(type != null) ? I18n.getInstance().translate(type, host, acceptLanguage) : "",
+						row.getString("lastName"), row.getString("firstName"),
+						row.getString("login"), row.getString("activationCode") };
+			}
+		};
+		final String query;
+		final JsonObject params = new JsonObject();
+		if ("all".equals(id)) {
+			query =
+					"MATCH (m:User) " +
+					"WHERE m.login > {after} AND NOT(m.activationCode IS NULL) AND m-[:IN]->() " +
+					"WITH m ORDER BY m.login LIMIT {limit} " +
+					"OPTIONAL MATCH m-[:IN]->()-[:DEPENDS*0..1]->(:ProfileGroup)-[:HAS_PROFILE]->(p:Profile) " +
 					"RETURN distinct m.lastName as lastName, m.firstName as firstName, " +
 					"m.login as login, m.activationCode as activationCode, " +
 					"p.name as type " +
-					"ORDER BY type, login ";
-		} else if (request.params().get("id") != null) {
-			neoRequest =
+					"ORDER BY login, type ";
+		} else {
+			query =
 					"MATCH (m:User)-[:IN]->g-[:DEPENDS]->n " +
 					"WHERE (n:Structure OR n:Class) AND n.id = {id} AND NOT(m.activationCode IS NULL) " +
-					"OPTIONAL MATCH g-[:DEPENDS*0..1]->(pg:ProfileGroup)-[:HAS_PROFILE]->(p:Profile) " +
+					"AND m.login > {after} " +
+					"WITH distinct m, n ORDER BY m.login LIMIT {limit} " +
+					"OPTIONAL MATCH m-[:IN]->g-[:DEPENDS]->n, " +
+					"g-[:DEPENDS*0..1]->(pg:ProfileGroup)-[:HAS_PROFILE]->(p:Profile) " +
 					"RETURN distinct m.lastName as lastName, m.firstName as firstName, " +
 					"m.login as login, m.activationCode as activationCode, " +
 					"p.name as type " +
-					"ORDER BY type, login ";
-			params.put("id", request.params().get("id"));
-		} else {
-			notFound(request);
+					"ORDER BY login, type ";
+			params.putString("id", id);
 		}
-		neo.send(neoRequest, params, new Handler<Message<JsonObject>>() {
-
+		csv.write(CsvResponse.neo4jPages(query, params, "login"), CsvResponse.DEFAULT_PAGE_SIZE, formatter,
+				new Handler<Either<String, Integer>>() {
 			@Override
-			public void handle(Message<JsonObject> res) {
-				if ("ok".equals(res.body().getString("status"))) {
-					JsonArray r = Neo.resultToJsonArray(res.body().getObject("result"));
-					processTemplate(request, "text/export.txt",
-							new JsonObject().putArray("list", r), new Handler<String>() {
-						@Override
-						public void handle(String export) {
-							if (export != null) {
-								request.response().putHeader("Content-Type", "application/csv");
-								request.response().putHeader("Content-Disposition",
-										"attachment; filename=activation_de_comptes.csv");
-								request.response().end(export);
-							} else {
-								renderError(request);
-							}
-						}
-					});
-				} else {
+			public void handle(Either<String, Integer> r) {
+				if (r.isRight()) {
+					csv.end();
+				} else if (!csv.isStarted()) {
 					renderError(request);
+				} else {
+					csv.abort();
 				}
 			}
 		});
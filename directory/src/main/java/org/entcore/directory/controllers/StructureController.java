@@ -25,11 +25,14 @@ import fr.wseduc.rs.Put;
 import fr.wseduc.security.ActionType;
 import fr.wseduc.security.SecuredAction;
 import fr.wseduc.webutils.Either;
+import fr.wseduc.webutils.I18n;
+import fr.wseduc.webutils.collections.Joiner;
 import fr.wseduc.webutils.email.EmailSender;
 import fr.wseduc.webutils.http.BaseController;
 import fr.wseduc.webutils.http.Renders;
 
 import org.entcore.common.appregistry.ApplicationUtils;
+import org.entcore.common.http.response.CsvResponse;
 import org.entcore.common.user.UserInfos;
 import org.entcore.common.user.UserUtils;
 import org.entcore.directory.pojo.Ent;
@@ -408,6 +411,10 @@ public class StructureController extends BaseController {
 							});
 						}
 					});
+				}
+				//CSV
+				else if("csv".equals(type)){
+					massmailCsv(request, structureId, filter, groupClasses, filename, infos);
 				} else {
 					badRequest(request);
 				}
@@ -418,6 +425,44 @@ public class StructureController extends BaseController {
 
 
 
+	}
+
+	private void massmailCsv(final HttpServerRequest request, final String structureId, final JsonObject filter,
+			final boolean groupClasses, String filename, final UserInfos infos) {
+		final CsvResponse csv = new CsvResponse(request, ((filename != null) ? filename : "massmail") + ".csv",
+				"Type", "Nom", "Prénom", "Login", "Code d'activation", "Email", "Classe(s)");
+		final String host = getHost(request);
+		final String acceptLanguage = I18n.acceptLanguage(request);
+		csv.write(new CsvResponse.Pages() {
+			@Override
+			public void read(int skip, int limit, JsonObject lastRow, Handler<Either<String, JsonArray>> handler) {
+				structureService.massmailUsers(structureId, filter, groupClasses, true, lastRow, limit, infos, handler);
+			}
+		}, CsvResponse.DEFAULT_PAGE_SIZE, new CsvResponse.Formatter() {
+			@Override
+			public Object[] format(JsonObject user) {
+				String profile = user.getString("profile");
+				JsonArray classes = user.getArray("classes");
+				return new Object[] {
+						(profile != null) ? I18n.getInstance().translate(profile, host, acceptLanguage) : "",
+						user.getString("lastName"), user.getString("firstName"), user.getString("login"),
+						user.getString("activationCode"), user.getString("email"),
+						(classes != null) ? Joiner.on(", ").join(classes.toArray()) : user.getString("classname") };
+			}
+		}, new Handler<Either<String, Integer>>() {
+			@Override
+			public void handle(Either<String, Integer> r) {
+				if (r.isRight()) {
+					csv.end();
+				} else if ("forbidden".equals(r.left().getValue())) {
+					forbidden(request);
+				} else if (!csv.isStarted()) {
+					renderError(request);
+				} else {
+					csv.abort();
+				}
+			}
+		});
 	}
 
 	public void setStructureService(SchoolService structureService) {
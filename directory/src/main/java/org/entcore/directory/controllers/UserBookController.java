@@ -74,6 +74,7 @@ public class UserBookController extends BaseController {
 	private ConversationNotification conversationNotification;
 	private enum DirectoryEvent { ACCESS }
 	private static final String ANNUAIRE_MODULE = "Annuaire";
+	private static final int SEARCH_LIMIT = 50;
 	private Map<String, Map<String, String>> activationWelcomeMessage;
 
 	@Override
@@ -153,6 +154,10 @@ public class UserBookController extends BaseController {
 		eventStore.createAndStoreEvent(DirectoryEvent.ACCESS.name(), request);
 	}
 
+	/**
+	 * Returns one page of the visible users matching name, at most 50 users (the limit parameter
+	 * can only lower it). A full page means there may be more matches : ask for the next page.
+	 */
 	@Get("/api/search")
 	@SecuredAction(value = "userbook.authent", type = ActionType.AUTHENTICATED)
 	public void search(final HttpServerRequest request) {
@@ -173,15 +178,16 @@ public class UserBookController extends BaseController {
 			filter += "AND (m)-[:IN]->(:ProfileGroup)-[:DEPENDS]->(:Structure {id: {structureId}}) ";
 			params.putString("structureId", structure);
 		}
-		String preFilter = "AND m.displayNameSearchField CONTAINS {search} " + filter;
-		params.putString("search", StringValidation.removeAccents(name.trim()).toLowerCase());
 		String customReturn =
 				"OPTIONAL MATCH visibles-[:USERBOOK]->u " +
 				"RETURN distinct visibles.id as id, visibles.displayName as displayName, " +
 				"u.mood as mood, u.userid as userId, u.picture as photo, " +
 				"HEAD(visibles.profiles) as type " +
 				"ORDER BY displayName";
-		UserUtils.findVisibleUsers(eb, request, false, false, preFilter, customReturn, params, new Handler<JsonArray>() {
+		int limit = Math.min(getIntParam(request, "limit", SEARCH_LIMIT), SEARCH_LIMIT);
+		int page = getIntParam(request, "page", 0);
+		UserUtils.searchVisibleUsers(eb, request, name.trim(), filter.isEmpty() ? null : filter, customReturn,
+				params, page * limit, limit, new Handler<JsonArray>() {
 			@Override
 			public void handle(JsonArray users) {
 				renderJson(request, users);
@@ -189,6 +195,15 @@ public class UserBookController extends BaseController {
 		});
 	}
 
+	private static int getIntParam(HttpServerRequest request, String name, int defaultValue) {
+		try {
+			String value = request.params().get(name);
+			return (value != null) ? Math.max(0, Integer.parseInt(value)) : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
 	@Get("/api/person")
 	@SecuredAction(value = "userbook.authent", type = ActionType.AUTHENTICATED)
 	public void person(final HttpServerRequest request) {
@@ -54,5 +54,7 @@ public interface SchoolService {
 
 	void massmailUsers(String structureId, JsonObject filter, UserInfos userInfos, Handler<Either<String, JsonArray>> results);
 	void massmailUsers(String structureId, JsonObject filter, boolean groupClasses, boolean groupChildren, UserInfos userInfos, Handler<Either<String, JsonArray>> results);
+	void massmailUsers(String structureId, JsonObject filter, boolean groupClasses, boolean groupChildren,
+			JsonObject after, int limit, UserInfos userInfos, Handler<Either<String, JsonArray>> results);
 
 }
@@ -99,12 +99,23 @@ public class DefaultClassService implements ClassService {
 
 	@Override
 	public void addUser(final String classId, final String userId, final UserInfos user,
-			final Handler<Either<String, JsonObject>> result) {
-		if (validationParamsError(result, classId, userId)) return;
+			final Handler<Either<String, JsonObject>> handler) {
+		if (validationParamsError(handler, classId, userId)) return;
 		if (user == null) {
-			result.handle(new Either.Left<String, JsonObject>("invalid.userinfos"));
+			handler.handle(new Either.Left<String, JsonObject>("invalid.userinfos"));
 			return;
 		}
+		final Handler<Either<String, JsonObject>> result = new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> r) {
+				if (r.isRight()) {
+					eb.publish(Directory.MANUAL_UPDATED, new JsonObject().putString("action", "class-add-user")
+							.putArray("ids", new JsonArray().addString(userId))
+							.putArray("classes", new JsonArray().addString(classId)));
+				}
+				handler.handle(r);
+			}
+		};
 		neo.execute("MATCH (u:`User` {id : {id}})-[:IN]->(pg:ProfileGroup)-[:HAS_PROFILE]->(p:Profile) " +
 				"RETURN distinct p.name as type", new JsonObject().putString("id", userId),
 				new Handler<Message<JsonObject>>() {
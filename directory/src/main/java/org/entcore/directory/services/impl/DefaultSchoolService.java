@@ -30,6 +30,7 @@ import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.entcore.common.neo4j.Neo4jResult.*;
@@ -213,6 +214,13 @@ public class DefaultSchoolService implements SchoolService {
 	@Override
 	public void massmailUsers(String structureId, JsonObject filterObj,
 			boolean groupClasses, boolean groupChildren, UserInfos userInfos, Handler<Either<String, JsonArray>> results) {
+		this.massmailUsers(structureId, filterObj, groupClasses, groupChildren, null, 0, userInfos, results);
+	}
+
+	@Override
+	public void massmailUsers(String structureId, JsonObject filterObj, boolean groupClasses,
+			boolean groupChildren, JsonObject after, int limit, UserInfos userInfos,
+			Handler<Either<String, JsonArray>> results) {
 
 		String filter =
 				"MATCH (s:Structure {id: {structureId}})<-[:DEPENDS]-(g:ProfileGroup)<-[:IN]-(u:User), "+
@@ -291,7 +299,7 @@ public class DefaultSchoolService implements SchoolService {
 
 		//Return clause
 		String returnStr =
-				"RETURN distinct collect(p.name)[0] as profile, " +
+				"distinct collect(p.name)[0] as profile, " +
 				"u.id as id, u.firstName as firstName, u.lastName as lastName, " +
 				"u.email as email, u.login as login, u.activationCode as activationCode ";
 
@@ -315,16 +323,51 @@ public class DefaultSchoolService implements SchoolService {
 		}
 
 		//Order by
+		final List<String> keys = new ArrayList<>();
 		String sort = "ORDER BY ";
 		for(Object sortObj: filterObj.getArray("sort")){
 			String sortstr = (String) sortObj;
 			sort += sortstr + ",";
+			keys.add(sortstr);
 		}
 		sort += "lastName";
+		keys.add("lastName");
+
+		//Keyset pagination, on a total order
+		String query = filter + condition + optional + withStr;
+		if (limit > 0) {
+			sort += ", id LIMIT {limit} ";
+			keys.add("id");
+			params.putNumber("limit", limit);
+			query += "WITH " + returnStr;
+			if (after != null) {
+				query += "WHERE " + after(keys, 0, after, params) + " ";
+			}
+			query += "RETURN * " + sort;
+		} else {
+			query += "RETURN " + returnStr + sort;
+		}
 
-		String query = filter + condition + optional + withStr + returnStr + sort;
+		neo.execute(query, params, validResultHandler(results));
+	}
 
-		neo.execute(query.toString(), params, validResultHandler(results));
+	/**
+	 * Rows sorting after the after row on keys, ascending with nulls last as in ORDER BY.
+	 */
+	private static String after(List<String> keys, int i, JsonObject after, JsonObject params) {
+		final String key = keys.get(i);
+		final Object value = after.getValue(key);
+		final String param = "after" + i;
+		if (value != null) {
+			params.putValue(param, value);
+		}
+		final String greater = (value != null) ? "(" + key + " > {" + param + "} OR " + key + " IS NULL)" : null;
+		if (i == keys.size() - 1) {
+			return (greater != null) ? greater : "false";
+		}
+		final String equal = (value != null) ? key + " = {" + param + "}" : key + " IS NULL";
+		final String next = equal + " AND " + after(keys, i + 1, after, params);
+		return (greater != null) ? "(" + greater + " OR (" + next + "))" : "(" + next + ")";
 	}
 
 }
@@ -23,6 +23,7 @@ import fr.wseduc.cron.CronTrigger;
 import fr.wseduc.webutils.I18n;
 import org.entcore.common.appregistry.ApplicationUtils;
 import org.entcore.common.events.EventStore;
+import org.entcore.common.events.EventBuffer;
 import org.entcore.common.events.EventStoreFactory;
 import org.entcore.common.user.UserInfos;
 import org.entcore.feeder.aaf.AafFeeder;
@@ -50,6 +51,8 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 
 	public static final String USER_REPOSITORY = "user.repository";
+	public static final String STRUCTURES_UPDATED = "feeder.structures.updated";
+	public static final String MANUAL_UPDATED = "feeder.manual.updated";
 	public static final String FEEDER_ADDRESS = "entcore.feeder";
 	private String defaultFeed;
 	private final Map<String, Feed> feeds = new HashMap<>();
@@ -75,6 +78,11 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 		}
 		neo4j = new Neo4j(vertx.eventBus(), node + neo4jAddress);
 		TransactionManager.getInstance().setNeo4j(neo4j);
+		Importer.getInstance().setBatchSize(
+				container.config().getInteger("import-batch-size", Importer.DEFAULT_BATCH_SIZE));
+		Importer.getInstance().setChecksumSnapshot(
+				container.config().getBoolean("import-checksum-snapshot", true));
+		Importer.getInstance().setParallelism(container.config().getInteger("import-parallelism", 1));
 		EventStoreFactory factory = EventStoreFactory.getFactory();
 		factory.setVertx(vertx);
 		eventStore = factory.getEventStore(Feeder.class.getSimpleName());
@@ -129,7 +137,7 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 			return;
 		}
 		Validator.initLogin(neo4j, vertx);
-		manual = new ManualFeeder(neo4j);
+		manual = new ManualFeeder(neo4j, vertx.eventBus());
 		duplicateUsers = new DuplicateUsers(container.config().getArray("duplicateSources"));
 		vertx.eventBus().registerLocalHandler(
 				container.config().getString("address", FEEDER_ADDRESS), this);
@@ -137,12 +145,19 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 			case "ELIOT" :
 				exporter = new EliotExporter(container.config().getString("export-path", "/tmp"),
 						container.config().getString("export-destination"),
-						container.config().getBoolean("concat-export", false), vertx);
+						container.config().getBoolean("concat-export", false),
+						container.config().getBoolean("stream-zip-export", false), vertx);
 				break;
 		}
 		I18n.getInstance().init(container, vertx);
 	}
 
+	@Override
+	public void stop() {
+		EventBuffer.closeCurrent(vertx);
+		super.stop();
+	}
+
 	private String getFilesDirectory(String feeder) {
 		JsonObject imports = container.config().getObject("imports");
 		if (imports != null && imports.getObject(feeder) != null && imports.getObject(feeder).getString("files") != null) {
@@ -480,6 +495,7 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 								if (m != null && "ok".equals(m.body().getString("status"))) {
 									logger.info(m.body().encode());
 									storeImportedEvent();
+									eb.publish(STRUCTURES_UPDATED, new JsonObject().putString("source", feed.getSource()));
 									duplicateUsers.markDuplicates(new Handler<JsonObject>() {
 										@Override
 										public void handle(JsonObject event) {
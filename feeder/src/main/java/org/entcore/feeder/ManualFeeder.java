@@ -31,6 +31,7 @@ import org.entcore.feeder.exceptions.ValidationException;
 import org.entcore.feeder.utils.*;
 import org.vertx.java.busmods.BusModBase;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
@@ -55,6 +56,9 @@ public class ManualFeeder extends BusModBase {
 	private final Neo4j neo4j;
 	private EventStore eventStore = EventStoreFactory.getFactory().getEventStore(Feeder.class.getSimpleName());
 	public static final String SOURCE = "MANUAL";
+	private static final String[] UPDATED_IDS = { "userId", "groupId", "relativeId", "studentId" };
+	private static final String[] UPDATED_OBJECTS = { "data", "group" };
+	private static final String[] UPDATED_STRUCTURES = { "structureId", "parentStructureId" };
 
 	static {
 		Map<String, Validator> p = new HashMap<>();
@@ -66,8 +70,9 @@ public class ManualFeeder extends BusModBase {
 		profiles = Collections.unmodifiableMap(p);
 	}
 
-	public ManualFeeder(Neo4j neo4j) {
+	public ManualFeeder(Neo4j neo4j, EventBus eb) {
 		this.neo4j = neo4j;
+		this.eb = eb;
 		this.logger = LoggerFactory.getLogger(ManualFeeder.class);
 	}
 
@@ -94,7 +99,7 @@ public class ManualFeeder extends BusModBase {
 			neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 				@Override
 				public void handle(Message<JsonObject> m) {
-					message.reply(m.body());
+					reply(message, m.body());
 				}
 			});
 		}
@@ -128,7 +133,7 @@ public class ManualFeeder extends BusModBase {
 			neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 				@Override
 				public void handle(Message<JsonObject> m) {
-					message.reply(m.body());
+					reply(message, m.body());
 				}
 			});
 		}
@@ -160,7 +165,7 @@ public class ManualFeeder extends BusModBase {
 			neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 				@Override
 				public void handle(Message<JsonObject> m) {
-					message.reply(m.body());
+					reply(message, m.body());
 				}
 			});
 		}
@@ -227,7 +232,7 @@ public class ManualFeeder extends BusModBase {
 		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> m) {
-				message.reply(m.body());
+				reply(message, m.body());
 				if ("ok".equals(m.body().getString("status"))) {
 					eventStore.createAndStoreEvent(Feeder.FeederEvent.CREATE_USER.name(),
 							(UserInfos) null, new JsonObject().putString("new-user", user.getString("id")));
@@ -269,7 +274,7 @@ public class ManualFeeder extends BusModBase {
 		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> m) {
-				message.reply(m.body());
+				reply(message, m.body());
 			}
 		});
 	}
@@ -308,7 +313,7 @@ public class ManualFeeder extends BusModBase {
 		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> m) {
-				message.reply(m.body());
+				reply(message, m.body());
 			}
 		});
 	}
@@ -339,7 +344,7 @@ public class ManualFeeder extends BusModBase {
 		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> m) {
-				message.reply(m.body());
+				reply(message, m.body());
 				if ("ok".equals(m.body().getString("status"))) {
 					eventStore.createAndStoreEvent(Feeder.FeederEvent.CREATE_USER.name(),
 							(UserInfos) null, new JsonObject().putString("new-user", user.getString("id")));
@@ -367,7 +372,7 @@ public class ManualFeeder extends BusModBase {
 		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> m) {
-				message.reply(m.body());
+				reply(message, m.body());
 			}
 		});
 	}
@@ -388,7 +393,7 @@ public class ManualFeeder extends BusModBase {
 		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> m) {
-				message.reply(m.body());
+				reply(message, m.body());
 			}
 		});
 	}
@@ -429,7 +434,7 @@ public class ManualFeeder extends BusModBase {
 					neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 								@Override
 								public void handle(Message<JsonObject> m) {
-									message.reply(m.body());
+									reply(message, m.body());
 								}
 							});
 				} else {
@@ -469,7 +474,7 @@ public class ManualFeeder extends BusModBase {
 						sendError(message, "unauthorized.user");
 					}
 				} else {
-					message.reply(event.body());
+					reply(message, event.body());
 				}
 			}
 		});
@@ -576,7 +581,7 @@ public class ManualFeeder extends BusModBase {
 								new Handler<Message<JsonObject>>() {
 									@Override
 									public void handle(Message<JsonObject> res) {
-										message.reply(res.body());
+										reply(message, res.body());
 									}
 								});
 					}
@@ -680,7 +685,7 @@ public class ManualFeeder extends BusModBase {
 								new Handler<Message<JsonObject>>() {
 									@Override
 									public void handle(Message<JsonObject> res) {
-										message.reply(res.body());
+										reply(message, res.body());
 									}
 								});
 					}
@@ -738,7 +743,7 @@ public class ManualFeeder extends BusModBase {
 			tx.commit(new Handler<Message<JsonObject>>() {
 				@Override
 				public void handle(Message<JsonObject> event) {
-					message.reply(event.body());
+					reply(message, event.body());
 				}
 			});
 		} catch (TransactionException | ValidationException e) {
@@ -958,7 +963,7 @@ public class ManualFeeder extends BusModBase {
 			neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
 				@Override
 				public void handle(Message<JsonObject> m) {
-					message.reply(m.body());
+					reply(message, m.body());
 				}
 			});
 		}
@@ -985,4 +990,64 @@ public class ManualFeeder extends BusModBase {
 			}
 		});
 	}
+
+	private void reply(Message<JsonObject> message, JsonObject result) {
+		message.reply(result);
+		publishUpdate(message.body(), result);
+	}
+
+	/**
+	 * Publishes the users and groups changed by a successful manual action, for the modules keeping
+	 * a copy of the graph (the communication visibility index). The whole class or structure is only
+	 * published when the action has no user nor group id (attachments, csv imports).
+	 */
+	private void publishUpdate(JsonObject body, JsonObject result) {
+		if (eb == null || result == null || !"ok".equals(result.getString("status"))) {
+			return;
+		}
+		final JsonArray ids = new JsonArray();
+		for (String attr : UPDATED_IDS) {
+			addId(ids, body.getValue(attr));
+		}
+		for (String attr : UPDATED_OBJECTS) {
+			final Object o = body.getValue(attr);
+			if (o instanceof JsonObject) {
+				addId(ids, ((JsonObject) o).getValue("id"));
+			}
+		}
+		final Object users = body.getValue("users");
+		if (users instanceof JsonArray) {
+			for (Object id : (JsonArray) users) {
+				addId(ids, id);
+			}
+		}
+		final JsonArray rows = result.getArray("result");
+		if (rows != null) {
+			for (Object row : rows) {
+				if (row instanceof JsonObject) {
+					addId(ids, ((JsonObject) row).getValue("id"));
+				}
+			}
+		}
+		final JsonArray structures = new JsonArray();
+		final JsonArray classes = new JsonArray();
+		if (ids.size() == 0) {
+			for (String attr : UPDATED_STRUCTURES) {
+				addId(structures, body.getValue(attr));
+			}
+			addId(classes, body.getValue("classId"));
+		}
+		eb.publish(Feeder.MANUAL_UPDATED, new JsonObject()
+				.putString("action", body.getString("action"))
+				.putArray("ids", ids)
+				.putArray("structures", structures)
+				.putArray("classes", classes));
+	}
+
+	private static void addId(JsonArray ids, Object id) {
+		if (id instanceof String && !((String) id).trim().isEmpty() && !ids.contains(id)) {
+			ids.addString((String) id);
+		}
+	}
+
 }
@@ -0,0 +1,225 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.feeder.aaf;
+
+import org.entcore.feeder.dictionary.structures.Importer;
+import org.entcore.feeder.utils.TranslatorReader;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.impl.BlockingAction;
+import org.vertx.java.core.impl.VertxInternal;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.EntityResolver2;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams an AAF file (buffered input, entity unescaping, SAX) on a worker thread. The parsed
+ * entities go through a bounded queue and are processed on the event loop by chunks, each chunk
+ * being flushed to Neo4j before the next one, so a file is imported in bounded memory.
+ */
+final class AAFFileParser {
+
+	private static final Logger log = LoggerFactory.getLogger(AAFFileParser.class);
+	private static final int QUEUE_SIZE = 2000;
+	private static final int CHUNK_SIZE = 1000;
+	private static final int READ_BUFFER_SIZE = 256 * 1024;
+	private final String file;
+	private final String dtdPath;
+	private final EntityProcessing processing;
+	private final Importer importer = Importer.getInstance();
+	private final VertxInternal vertx;
+	private final Context context;
+	private final BlockingQueue<JsonObject> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+	private final AtomicBoolean draining = new AtomicBoolean(false);
+	private volatile boolean parsed = false;
+	private volatile boolean aborted = false;
+	private volatile Exception parseError;
+	private Handler<Exception> endHandler;
+	private long entities = 0;
+	private long start;
+
+	AAFFileParser(Vertx vertx, String file, String dtdPath, EntityProcessing processing) {
+		this.file = file;
+		this.dtdPath = dtdPath;
+		this.processing = processing;
+		this.vertx = (VertxInternal) vertx;
+		this.context = vertx.currentContext();
+	}
+
+	/**
+	 * @param handler receives null once every entity of the file is processed and flushed.
+	 */
+	void parse(Handler<Exception> handler) {
+		this.endHandler = handler;
+		this.start = System.currentTimeMillis();
+		new BlockingAction<Void>(vertx, new AsyncResultHandler<Void>() {
+			@Override
+			public void handle(AsyncResult<Void> event) {
+				if (event.failed()) {
+					parseError = (event.cause() instanceof Exception) ?
+							(Exception) event.cause() : new IllegalStateException(event.cause());
+				}
+				parsed = true;
+				signal();
+			}
+		}) {
+			@Override
+			public Void action() {
+				try (Reader reader = new TranslatorReader(new InputStreamReader(new BufferedInputStream(
+						new FileInputStream(file), READ_BUFFER_SIZE), "UTF-8"), BaseImportProcessing.UNESCAPE_AAF)) {
+					XMLReader xr = XMLReaderFactory.createXMLReader();
+					xr.setContentHandler(new AAFHandler(new QueueProcessing()));
+					xr.setEntityResolver(new DtdResolver());
+					xr.parse(new InputSource(reader));
+				} catch (IOException | SAXException e) {
+					parseError = e;
+				}
+				return null;
+			}
+		}.run();
+	}
+
+	private void signal() {
+		if (draining.compareAndSet(false, true)) {
+			context.runOnContext(new Handler<Void>() {
+				@Override
+				public void handle(Void event) {
+					drain();
+				}
+			});
+		}
+	}
+
+	private void drain() {
+		int n = 0;
+		JsonObject o;
+		try {
+			while (n < CHUNK_SIZE && (o = queue.poll()) != null) {
+				processing.process(o);
+				n++;
+			}
+		} catch (Exception e) {
+			end(e);
+			return;
+		}
+		entities += n;
+		if (n == CHUNK_SIZE) {
+			importer.flush(new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> message) {
+					if ("ok".equals(message.body().getString("status"))) {
+						drain();
+					} else {
+						end(new IllegalStateException(message.body().getString("message")));
+					}
+				}
+			});
+			return;
+		}
+		if (parsed && queue.isEmpty()) {
+			if (parseError != null) {
+				end(parseError);
+			} else {
+				end(null);
+			}
+			return;
+		}
+		draining.set(false);
+		if (!queue.isEmpty() || parsed) {
+			signal();
+		}
+	}
+
+	private void end(Exception e) {
+		aborted = true;
+		queue.clear();
+		if (e == null) {
+			final long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+			final long size = new File(file).length();
+			final Runtime rt = Runtime.getRuntime();
+			log.info("Parsed file " + file + " : " + entities + " entities, " + (size >> 10) + " KB in " +
+					elapsed + " ms (" + (size * 1000 / elapsed >> 10) + " KB/s), heap used " +
+					((rt.totalMemory() - rt.freeMemory()) >> 20) + " MB");
+		}
+		endHandler.handle(e);
+	}
+
+	private class QueueProcessing implements EntityProcessing {
+
+		@Override
+		public String getMappingResource() {
+			return processing.getMappingResource();
+		}
+
+		@Override
+		public void process(JsonObject object) {
+			try {
+				while (!queue.offer(object, 1, TimeUnit.SECONDS)) {
+					if (aborted) {
+						throw new IllegalStateException("Parsing of " + file + " aborted.");
+					}
+				}
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			signal();
+		}
+
+	}
+
+	private class DtdResolver implements EntityResolver2 {
+
+		@Override
+		public InputSource getExternalSubset(String name, String baseURI) throws SAXException, IOException {
+			return null;
+		}
+
+		@Override
+		public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId)
+				throws SAXException, IOException {
+			return resolveEntity(publicId, systemId);
+		}
+
+		@Override
+		public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+			if (systemId.equals("ficAlimMENESR.dtd")) {
+				return new InputSource(new FileReader(dtdPath + File.separator + "ficAlimMENESR.dtd"));
+			}
+			return null;
+		}
+
+	}
+
+}
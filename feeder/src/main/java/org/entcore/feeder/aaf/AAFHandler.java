@@ -36,10 +36,10 @@ public final class AAFHandler extends DefaultHandler {
 	private StringBuilder s;
 	private JsonObject currentStructure;
 	private final JsonObject mapping;
-	private final ImportProcessing processing;
+	private final EntityProcessing processing;
 	private static final Pattern frenchDatePatter = Pattern.compile("^([0-9]{2})/([0-9]{2})/([0-9]{4})$");
 
-	public AAFHandler(ImportProcessing processing) {
+	public AAFHandler(EntityProcessing processing) {
 		this.processing = processing;
 		this.mapping = JsonUtil.loadFromResource(processing.getMappingResource());
 		this.s = new StringBuilder();
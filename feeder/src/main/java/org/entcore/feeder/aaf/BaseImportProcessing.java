@@ -28,15 +28,7 @@ import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.ext.EntityResolver2;
-import org.xml.sax.helpers.XMLReaderFactory;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.Arrays;
 
 public abstract class BaseImportProcessing implements ImportProcessing {
@@ -76,50 +68,27 @@ public abstract class BaseImportProcessing implements ImportProcessing {
 			handlers[i] = new VoidHandler() {
 				@Override
 				protected void handle() {
-					try {
-						String file = files[j];
-						log.info("Parsing file : " + file);
-						byte[] encoded = Files.readAllBytes(Paths.get(file));
-						String content = UNESCAPE_AAF.translate(new String(encoded, "UTF-8"));
-						InputSource in = new InputSource(new StringReader(content));
-						AAFHandler sh = new AAFHandler(BaseImportProcessing.this);
-						XMLReader xr = XMLReaderFactory.createXMLReader();
-						xr.setContentHandler(sh);
-						xr.setEntityResolver(new EntityResolver2() {
-							@Override
-							public InputSource getExternalSubset(String name, String baseURI) throws SAXException, IOException {
-								return null;
+					final String file = files[j];
+					log.info("Parsing file : " + file);
+					new AAFFileParser(vertx, file, path, BaseImportProcessing.this).parse(new Handler<Exception>() {
+						@Override
+						public void handle(Exception e) {
+							if (e != null) {
+								error(e, handler);
+								return;
 							}
-
-							@Override
-							public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) throws SAXException, IOException {
-								return resolveEntity(publicId, systemId);
-							}
-
-							@Override
-							public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
-								if (systemId.equals("ficAlimMENESR.dtd")) {
-									Reader reader = new FileReader(path + File.separator + "ficAlimMENESR.dtd");
-									return new InputSource(reader);
-								} else {
-									return null;
+							importer.flush(new Handler<Message<JsonObject>>() {
+								@Override
+								public void handle(Message<JsonObject> message) {
+									if ("ok".equals(message.body().getString("status"))) {
+										handlers[j + 1].handle(null);
+									} else {
+										error(message, handler);
+									}
 								}
-							}
-						});
-						xr.parse(in);
-						importer.flush(new Handler<Message<JsonObject>>() {
-							@Override
-							public void handle(Message<JsonObject> message) {
-								if ("ok".equals(message.body().getString("status"))) {
-									handlers[j + 1].handle(null);
-								} else {
-									error(message, handler);
-								}
-							}
-						});
-					} catch (Exception e) {
-						error(e, handler);
-					}
+							});
+						}
+					});
 				}
 			};
 		}
@@ -24,12 +24,8 @@ import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 
 
-public interface ImportProcessing {
+public interface ImportProcessing extends EntityProcessing {
 
 	void start(Handler<Message<JsonObject>> handler);
 
-	String getMappingResource();
-
-	void process(JsonObject object);
-
 }
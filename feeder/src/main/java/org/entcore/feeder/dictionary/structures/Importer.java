@@ -52,6 +52,60 @@ public class Importer {
 	private ConcurrentHashMap<String, String> externalIdMapping;
 	private ConcurrentHashMap<String, List<String>> groupClasses = new ConcurrentHashMap<>();
 	private Report report;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	private boolean checksumSnapshot = true;
+	private final ChecksumSnapshot userChecksums = new ChecksumSnapshot();
+	private static final int CHECKSUM_PAGE_SIZE = 50000;
+	// rows held by the main transaction while partitions run before they are committed
+	private static final int MAX_HELD_STATEMENTS = 20000;
+	private int parallelism = 1;
+	private PartitionedTransactions partitions;
+	private boolean commitBeforePartitions = false;
+	private static final String[] USER_MERGE_KEYS =
+			{ "id", "externalId", "login", "activationCode", "displayName", "checksum" };
+	private static final String USER_MERGE =
+			"UNWIND {rows} AS row " +
+			"MERGE (u:User { externalId : row.externalId }) " +
+			"ON CREATE SET u.id = row.id, u.login = row.login, u.activationCode = row.activationCode, " +
+			"u.displayName = row.displayName " +
+			"WITH u, row " +
+			"WHERE u.checksum IS NULL OR u.checksum <> row.checksum " +
+			"SET u += row.props ";
+	private static final String USER_CREATE =
+			"UNWIND {rows} AS row " +
+			"CREATE (u:User) SET u = row ";
+	private static final String USER_UPDATE_EMAIL =
+			"UNWIND {rows} AS row " +
+			"MATCH (u:User {externalId: row.externalId}) " +
+			"WHERE NOT(HAS(u.email)) OR (HAS(u.activationCode) AND u.email <> row.email) " +
+			"SET u.email = row.email";
+	// separate batch for the users skipped by the checksum snapshot : started before USER_MERGE,
+	// USER_UPDATE_EMAIL would be sent before the creation of the new users
+	private static final String UNCHANGED_USER_UPDATE_EMAIL =
+			"UNWIND {rows} AS row " +
+			"MATCH (u:User {externalId: row.externalId}) " +
+			"WHERE HAS(u.checksum) AND (NOT(HAS(u.email)) OR (HAS(u.activationCode) AND u.email <> row.email)) " +
+			"SET u.email = row.email";
+	private static final String STUDENT_FOLLOW_MODULE =
+			"UNWIND {rows} AS row " +
+			"MATCH (u:User {externalId : row.userExternalId}), (m:Module {externalId : row.moduleStudent}) " +
+			"CREATE UNIQUE u-[:FOLLOW]->m";
+	private static final String STUDENT_COURSE =
+			"UNWIND {rows} AS row " +
+			"MATCH (u:User {externalId : row.userExternalId}), (f:FieldOfStudy {externalId : row.fieldOfStudyStudent}) " +
+			"CREATE UNIQUE u-[:COURSE]->f";
+	private static final String STUDENT_UNLINK_RELATIVES =
+			"UNWIND {rows} AS row " +
+			"MATCH (:User {externalId : row.userExternalId})-[r:RELATED]->(p:User) " +
+			"WHERE NOT(p.externalId IN row.relatives) " +
+			"DELETE r ";
+	private static final String STUDENT_LINK_RELATIVE =
+			"UNWIND {rows} AS row " +
+			"MATCH (u:User {externalId : row.userExternalId}), (r0:User {externalId : row.user})-[:MERGED*0..1]->(r:User) " +
+			"WHERE NOT(HAS(r.mergedWith)) " +
+			"MERGE u-[:RELATED]->r " +
+			"SET u.relative = coalesce(FILTER(eId IN u.relative WHERE eId <> (r.externalId + '$1$1$1$1$0')), []) + (r.externalId + '$1$1$1$1$0') ";
 
 	private Importer() {
 		structureValidator = new Validator("dictionary/schema/Structure.json");
@@ -75,7 +129,7 @@ public class Importer {
 		this.neo4j = neo4j;
 		this.currentSource = source;
 		this.report = new Report(acceptLanguage);
-		this.transactionHelper = new TransactionHelper(neo4j, 1000);
+		this.transactionHelper = new TransactionHelper(neo4j, 1000, batchSize);
 		GraphData.loadData(neo4j, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> event) {
@@ -84,14 +138,76 @@ public class Importer {
 				structuresByUAI = GraphData.getStructuresByUAI();
 				externalIdMapping = GraphData.getExternalIdMapping();
 				profiles = GraphData.getProfiles();
+				userChecksums.clear();
+				if (firstImport || !checksumSnapshot) {
+					if (handler != null) {
+						handler.handle(event);
+					}
+				} else {
+					loadUserChecksums("", event, handler);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Loads the users checksums page by page. A failure only disables the snapshot for this import,
+	 * unchanged users are then filtered by Neo4j as before.
+	 */
+	private void loadUserChecksums(final String after, final Message<JsonObject> initMessage,
+			final Handler<Message<JsonObject>> handler) {
+		final String query =
+				"MATCH (u:User) " +
+				"WHERE u.externalId > {after} AND HAS(u.checksum) " +
+				"RETURN u.externalId as externalId, u.checksum as checksum " +
+				"ORDER BY externalId " +
+				"LIMIT {limit} ";
+		final JsonObject params = new JsonObject().putString("after", after).putNumber("limit", CHECKSUM_PAGE_SIZE);
+		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				final JsonArray res = message.body().getArray("result");
+				if (!"ok".equals(message.body().getString("status")) || res == null) {
+					log.warn("Error loading users checksums : " + message.body().getString("message"));
+					userChecksums.clear();
+				} else {
+					String last = null;
+					for (Object o : res) {
+						if (!(o instanceof JsonObject)) continue;
+						final JsonObject j = (JsonObject) o;
+						last = j.getString("externalId");
+						userChecksums.put(last, j.getString("checksum"));
+					}
+					if (res.size() == CHECKSUM_PAGE_SIZE && last != null) {
+						loadUserChecksums(last, initMessage, handler);
+						return;
+					}
+					log.info("Loaded " + userChecksums.size() + " users checksums.");
+				}
 				if (handler != null) {
-					handler.handle(event);
+					handler.handle(initMessage);
 				}
 			}
 		});
 	}
 
 
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setChecksumSnapshot(boolean checksumSnapshot) {
+		this.checksumSnapshot = checksumSnapshot;
+	}
+
+	/**
+	 * @param parallelism number of concurrent transactions used for the links of the users, 1 to
+	 * keep a single transaction.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
 	public TransactionHelper getTransaction() {
 		return transactionHelper;
 	}
@@ -101,8 +217,11 @@ public class Importer {
 		profiles.clear();
 		userImportedExternalId.clear();
 		groupClasses.clear();
+		userChecksums.clear();
 		report = null;
 		transactionHelper = null;
+		partitions = null;
+		commitBeforePartitions = false;
 	}
 
 	public boolean isReady() {
@@ -110,11 +229,16 @@ public class Importer {
 	}
 
 	public void persist(final Handler<Message<JsonObject>> handler) {
+		if (partitions != null) {
+			commitPartitions(handler);
+			return;
+		}
+		commitBeforePartitions = false;
 		if (transactionHelper != null) {
 			transactionHelper.commit(new Handler<Message<JsonObject>>() {
 				@Override
 				public void handle(Message<JsonObject> message) {
-					transactionHelper = new TransactionHelper(neo4j, 1000);
+					transactionHelper = new TransactionHelper(neo4j, 1000, batchSize);
 					if (handler != null) {
 						handler.handle(message);
 					}
@@ -124,8 +248,19 @@ public class Importer {
 		transactionHelper = null;
 	}
 
+	/**
+	 * Flushes the transactions. The main transaction is committed instead when it holds too many
+	 * statements for the partitions, or when it must not have sent anything for them to be opened.
+	 */
 	public void flush(Handler<Message<JsonObject>> handler) {
-		if (transactionHelper != null) {
+		if (partitions != null && transactionHelper != null &&
+				transactionHelper.size() >= MAX_HELD_STATEMENTS) {
+			commitPartitions(handler);
+		} else if (partitions != null) {
+			partitions.flush(handler);
+		} else if (commitBeforePartitions && transactionHelper != null) {
+			persist(handler);
+		} else if (transactionHelper != null) {
 			transactionHelper.flush(handler);
 		}
 	}
@@ -134,7 +269,86 @@ public class Importer {
 	 * Warning : all data in old uncommitted transaction will be lost.
 	 */
 	public void reinitTransaction() {
-		transactionHelper = new TransactionHelper(neo4j, 1000);
+		transactionHelper = new TransactionHelper(neo4j, 1000, batchSize);
+		partitions = null;
+		commitBeforePartitions = false;
+	}
+
+	/**
+	 * The links of a user go to the partition of its structure when the import is parallel, the
+	 * users are already committed (links only pass) and every link targets this single structure.
+	 * Everything else, and the deletions of the old links, stay in the main transaction, which is
+	 * held until the partitions are committed so that it never locks nodes concurrently with them.
+	 * Partitions are only opened on a main transaction which has sent nothing : otherwise the links
+	 * stay in it until the next flush commits it.
+	 */
+	private TransactionHelper linkTransaction(JsonArray structures, JsonArray structuresByFunctions,
+			String[][] linkClasses, String[][] linkGroups, boolean nodeQueries) {
+		if (parallelism <= 1 || nodeQueries || structures == null || structures.size() != 1 ||
+				transactionHelper == null) {
+			return transactionHelper;
+		}
+		final String structure = (String) structures.get(0);
+		final JsonArray byFunctions = getMappingStructures(structuresByFunctions);
+		if (byFunctions != null) {
+			for (Object s : byFunctions) {
+				if (!structure.equals(s)) {
+					return transactionHelper;
+				}
+			}
+		}
+		if (!inStructure(structure, linkClasses) || !inStructure(structure, linkGroups)) {
+			return transactionHelper;
+		}
+		if (partitions == null) {
+			if (transactionHelper.hasSentStatements()) {
+				commitBeforePartitions = true;
+				return transactionHelper;
+			}
+			partitions = new PartitionedTransactions(neo4j, parallelism, 1000, batchSize);
+			transactionHelper.setAutoSend(false);
+		}
+		return partitions.get(structure);
+	}
+
+	private static boolean inStructure(String structure, String[][] links) {
+		if (links != null) {
+			for (String[] link : links) {
+				if (link != null && link[0] != null && !structure.equals(link[0])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Commits the partitions, then the main transaction which is reopened by persist : the
+	 * partitions opened afterwards never run beside its locks.
+	 */
+	private void commitPartitions(final Handler<Message<JsonObject>> handler) {
+		final PartitionedTransactions p = partitions;
+		partitions = null;
+		p.commit(new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				final JsonArray timings = p.getTimings();
+				log.info("Partitions committed : " + timings.encode());
+				if (report != null) {
+					report.addPartitionTimings(timings);
+				}
+				if ("ok".equals(message.body().getString("status"))) {
+					transactionHelper.setAutoSend(true);
+					persist(handler);
+				} else {
+					transactionHelper.rollback();
+					transactionHelper = new TransactionHelper(neo4j, 1000, batchSize);
+					if (handler != null) {
+						handler.handle(message);
+					}
+				}
+			}
+		});
 	}
 
 	public Structure createOrUpdateStructure(JsonObject struct) {
@@ -225,21 +439,7 @@ public class Importer {
 			report.addIgnored("FielsOfStudy", error, object);
 			log.warn(error);
 		} else {
-			String query;
-			JsonObject params;
-			if (!firstImport) {
-				query =
-						"MERGE (fos:FieldOfStudy { externalId : {externalId}}) " +
-						"ON CREATE SET fos.id = {id} " +
-						"WITH fos " +
-						"WHERE fos.checksum IS NULL OR fos.checksum <> {checksum} " +
-						"SET " + Neo4j.nodeSetPropertiesFromJson("fos", object, "id", "externalId");
-				params = object;
-			} else {
-				query = "CREATE (fos:FieldOfStudy {props}) ";
-				params = new JsonObject().putObject("props", object);
-			}
-			transactionHelper.add(query, params);
+			mergeNode("FieldOfStudy", object);
 		}
 	}
 
@@ -249,21 +449,7 @@ public class Importer {
 			report.addIgnored("Module", error, object);
 			log.warn(error);
 		} else {
-			String query;
-			JsonObject params;
-			if (!firstImport) {
-				query =
-						"MERGE (m:Module { externalId : {externalId}}) " +
-						"ON CREATE SET m.id = {id} " +
-						"WITH m " +
-						"WHERE m.checksum IS NULL OR m.checksum <> {checksum} " +
-						"SET " + Neo4j.nodeSetPropertiesFromJson("m", object, "id", "externalId");
-				params = object;
-			} else {
-				query = "CREATE (m:Module {props}) ";
-				params = new JsonObject().putObject("props", object);
-			}
-			transactionHelper.add(query, params);
+			mergeNode("Module", object);
 		}
 	}
 
@@ -279,24 +465,7 @@ public class Importer {
 		} else {
 			object.putString("source", currentSource);
 			userImportedExternalId.add(object.getString("externalId"));
-			String query;
-			JsonObject params;
-			if (!firstImport) {
-				query =
-						"MERGE (u:User { externalId : {externalId}}) " +
-						"ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, " +
-						"u.displayName = {displayName} " +
-						"WITH u " +
-						"WHERE u.checksum IS NULL OR u.checksum <> {checksum} " +
-						"SET " + Neo4j.nodeSetPropertiesFromJson("u", object,
-								"id", "externalId", "login", "activationCode", "displayName", "email");
-				params = object;
-			} else {
-				query = "CREATE (u:User {props}) ";
-				params = new JsonObject().putObject("props", object);
-			}
-			transactionHelper.add(query, params);
-			checkUpdateEmail(object);
+			mergeUser(object);
 			if (linkStudent != null && linkStudent.size() > 0) {
 				String query2 =
 						"START u0=node:node_auto_index(externalId={externalId}), " +
@@ -322,24 +491,7 @@ public class Importer {
 			object.putString("source", currentSource);
 			final String externalId = object.getString("externalId");
 			userImportedExternalId.add(externalId);
-			String query;
-			JsonObject params;
-			if (!firstImport) {
-				query =
-						"MERGE (u:User { externalId : {externalId}}) " +
-						"ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, " +
-						"u.displayName = {displayName} " +
-						"WITH u " +
-						"WHERE u.checksum IS NULL OR u.checksum <> {checksum} " +
-						"SET " + Neo4j.nodeSetPropertiesFromJson("u", object,
-						"id", "externalId", "login", "activationCode", "displayName", "email");
-				params = object;
-			} else {
-				query = "CREATE (u:User {props}) ";
-				params = new JsonObject().putObject("props", object);
-			}
-			transactionHelper.add(query, params);
-			checkUpdateEmail(object);
+			mergeUser(object);
 			JsonArray structures = getMappingStructures(object.getArray("structures"));
 			if (externalId != null && structures != null && structures.size() > 0) {
 				JsonObject p = new JsonObject().putString("userExternalId", externalId);
@@ -398,13 +550,74 @@ public class Importer {
 		}
 	}
 
-	private void checkUpdateEmail(JsonObject object) {
-		if (object.containsField("email")) {
-			final String queryUpdateEmail =
-					"MATCH (u:User {externalId: {externalId}}) " +
-					"WHERE NOT(HAS(u.email)) OR (HAS(u.activationCode) AND u.email <> {email}) " +
-					"SET u.email = {email}";
-			transactionHelper.add(queryUpdateEmail, object);
+	/**
+	 * Batched version of the MERGE of a user on its externalId, followed by the email update.
+	 * Users whose checksum is unchanged since the last import are not sent.
+	 */
+	private void mergeUser(JsonObject object) {
+		if (!firstImport) {
+			final String externalId = object.getString("externalId");
+			final String checksum = object.getString("checksum");
+			final boolean unchanged = userChecksums.unchanged(externalId, checksum);
+			report.countChecksum("User", unchanged);
+			if (unchanged) {
+				checkUpdateEmail(object, UNCHANGED_USER_UPDATE_EMAIL);
+				return;
+			}
+			userChecksums.put(externalId, checksum);
+			JsonObject row = new JsonObject();
+			JsonObject props = object.copy();
+			for (String key : USER_MERGE_KEYS) {
+				copyField(object, row, key);
+				if (!"checksum".equals(key)) {
+					props.removeField(key);
+				}
+			}
+			props.removeField("email");
+			transactionHelper.addBatch(USER_MERGE, null, row.putObject("props", props));
+		} else {
+			transactionHelper.addBatch(USER_CREATE, null, object);
+		}
+		checkUpdateEmail(object, USER_UPDATE_EMAIL);
+	}
+
+	private void checkUpdateEmail(JsonObject object, String query) {
+		if (object.getValue("email") != null) {
+			JsonObject row = new JsonObject();
+			copyField(object, row, "externalId");
+			copyField(object, row, "email");
+			transactionHelper.addBatch(query, null, row);
+		}
+	}
+
+	private void mergeNode(String label, JsonObject object) {
+		final String query;
+		final JsonObject row;
+		if (!firstImport) {
+			query = "UNWIND {rows} AS row " +
+					"MERGE (n:" + label + " { externalId : row.externalId }) " +
+					"ON CREATE SET n.id = row.id " +
+					"WITH n, row " +
+					"WHERE n.checksum IS NULL OR n.checksum <> row.checksum " +
+					"SET n += row.props ";
+			JsonObject props = object.copy();
+			props.removeField("id");
+			props.removeField("externalId");
+			row = new JsonObject().putObject("props", props);
+			copyField(object, row, "id");
+			copyField(object, row, "externalId");
+			copyField(object, row, "checksum");
+		} else {
+			query = "UNWIND {rows} AS row CREATE (n:" + label + ") SET n = row ";
+			row = object;
+		}
+		transactionHelper.addBatch(query, null, row);
+	}
+
+	private static void copyField(JsonObject from, JsonObject to, String field) {
+		Object value = from.getValue(field);
+		if (value != null) {
+			to.putValue(field, value);
 		}
 	}
 
@@ -492,27 +705,13 @@ public class Importer {
 			if (nodeQueries) {
 				object.putString("source", currentSource);
 				userImportedExternalId.add(object.getString("externalId"));
-				StringBuilder sb = new StringBuilder();
-				JsonObject params;
-				if (!firstImport) {
-					sb.append("MERGE (u:`User` { externalId : {externalId}}) ");
-					sb.append("ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, ");
-					sb.append("u.displayName = {displayName} ");
-					sb.append("WITH u ");
-					sb.append("WHERE u.checksum IS NULL OR u.checksum <> {checksum} ");
-					sb.append("SET ").append(Neo4j.nodeSetPropertiesFromJson("u", object,
-							"id", "externalId", "login", "activationCode", "displayName", "email"));
-					params = object;
-				} else {
-					sb.append("CREATE (u:User {props}) ");
-					params = new JsonObject().putObject("props", object);
-				}
-				transactionHelper.add(sb.toString(), params);
-				checkUpdateEmail(object);
+				mergeUser(object);
 			}
 			if (relationshipQueries) {
 				final String externalId = object.getString("externalId");
 				JsonArray structures = getMappingStructures(object.getArray("structures"));
+				final TransactionHelper tx = linkTransaction(structures, structuresByFunctions, linkClasses, linkGroups,
+						nodeQueries);
 				if (externalId != null && structures != null && structures.size() > 0) {
 					String query;
 					JsonObject p = new JsonObject().putString("userExternalId", externalId);
@@ -531,7 +730,7 @@ public class Importer {
 								"MERGE u-[:ADMINISTRATIVE_ATTACHMENT]->s ";
 						p.putArray("structuresAdmin", structures);
 					}
-					transactionHelper.add(query, p);
+					tx.add(query, p);
 				}
 				if (externalId != null && structuresByFunctions != null && structuresByFunctions.size() > 0) {
 					String query;
@@ -558,7 +757,7 @@ public class Importer {
 						p.putArray("structuresAdmin", structuresByFunctions)
 								.putString("profileExternalId", profileExternalId);
 					}
-					transactionHelper.add(query, p);
+					tx.add(query, p);
 					String qs =
 							"MATCH (:User {externalId : {userExternalId}})-[r:IN|COMMUNIQUE]-(:Group)-[:DEPENDS]->(s:Structure) " +
 							"WHERE NOT(s.externalId IN {structures}) AND (NOT(HAS(r.source)) OR r.source = {source}) " +
@@ -588,7 +787,7 @@ public class Importer {
 									.putString("profileExternalId", profileExternalId)
 									.putString("structure", structClass[0])
 									.putString("class", structClass[1]);
-							transactionHelper.add(query, p);
+							tx.add(query, p);
 							classes.add(structClass[1]);
 						}
 					}
@@ -618,7 +817,7 @@ public class Importer {
 									.putString("userExternalId", externalId)
 									.putString("structure", structGroup[0])
 									.putString("group", structGroup[1]);
-							transactionHelper.add(query, p);
+							tx.add(query, p);
 							groups.add(structGroup[1]);
 						}
 					}
@@ -649,27 +848,12 @@ public class Importer {
 			if (nodeQueries) {
 				object.putString("source", currentSource);
 				userImportedExternalId.add(object.getString("externalId"));
-				StringBuilder sb = new StringBuilder();
-				JsonObject params;
-				if (!firstImport) {
-					sb.append("MERGE (u:`User` { externalId : {externalId}}) ");
-					sb.append("ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, ");
-					sb.append("u.displayName = {displayName} ");
-					sb.append("WITH u ");
-					sb.append("WHERE u.checksum IS NULL OR u.checksum <> {checksum} ");
-					sb.append("SET ").append(Neo4j.nodeSetPropertiesFromJson("u", object,
-							"id", "externalId", "login", "activationCode", "displayName", "email"));
-					params = object;
-				} else {
-					sb.append("CREATE (u:User {props}) ");
-					params = new JsonObject().putObject("props", object);
-				}
-				transactionHelper.add(sb.toString(), params);
-				checkUpdateEmail(object);
+				mergeUser(object);
 			}
 			if (relationshipQueries) {
 				final String externalId = object.getString("externalId");
 				JsonArray structures = getMappingStructures(object.getArray("structures"));
+				final TransactionHelper tx = linkTransaction(structures, null, linkClasses, linkGroups, nodeQueries);
 				if (externalId != null && structures != null && structures.size() > 0) {
 					String query;
 					JsonObject p = new JsonObject().putString("userExternalId", externalId);
@@ -698,7 +882,7 @@ public class Importer {
 						p.putArray("structuresAdmin", structures)
 								.putString("profileExternalId", profileExternalId);
 					}
-					transactionHelper.add(query, p);
+					tx.add(query, p);
 					String qs =
 							"MATCH (:User {externalId : {userExternalId}})-[r:IN|COMMUNIQUE]-(:Group)-[:DEPENDS]->(s:Structure) " +
 							"WHERE NOT(s.externalId IN {structures}) AND (NOT(HAS(r.source)) OR r.source = {source}) " +
@@ -727,7 +911,7 @@ public class Importer {
 									.putString("profileExternalId", profileExternalId)
 									.putString("structure", structClass[0])
 									.putString("class", structClass[1]);
-							transactionHelper.add(query, p);
+							tx.add(query, p);
 							classes.add(structClass[1]);
 						}
 					}
@@ -757,7 +941,7 @@ public class Importer {
 									.putString("userExternalId", externalId)
 									.putString("structure", structGroup[0])
 									.putString("group", structGroup[1]);
-							transactionHelper.add(query, p);
+							tx.add(query, p);
 							groups.add(structGroup[1]);
 						}
 					}
@@ -775,50 +959,27 @@ public class Importer {
 				}
 
 				if (externalId != null && module != null) {
-					String query =
-							"START u=node:node_auto_index(externalId={userExternalId}), " +
-							"m=node:node_auto_index(externalId={moduleStudent}) " +
-							"CREATE UNIQUE u-[:FOLLOW]->m";
-					JsonObject p = new JsonObject()
+					transactionHelper.addBatch(STUDENT_FOLLOW_MODULE, null, new JsonObject()
 							.putString("userExternalId", externalId)
-							.putString("moduleStudent", module);
-					transactionHelper.add(query, p);
+							.putString("moduleStudent", module));
 				}
 				if (externalId != null && fieldOfStudy != null && fieldOfStudy.size() > 0) {
 					for (Object o : fieldOfStudy) {
 						if (!(o instanceof String)) continue;
-						String query =
-								"START u=node:node_auto_index(externalId={userExternalId}), " +
-								"f=node:node_auto_index(externalId={fieldOfStudyStudent}) " +
-								"CREATE UNIQUE u-[:COURSE]->f";
-						JsonObject p = new JsonObject()
+						transactionHelper.addBatch(STUDENT_COURSE, null, new JsonObject()
 								.putString("userExternalId", externalId)
-								.putString("fieldOfStudyStudent", (String) o);
-						transactionHelper.add(query, p);
+								.putString("fieldOfStudyStudent", (String) o));
 					}
 				}
 				if (externalId != null && relative != null && relative.size() > 0) {
-					String query2 =
-							"MATCH (:User {externalId:{userExternalId}})-[r:RELATED]->(p:User) " +
-							"WHERE NOT(p.externalId IN {relatives}) " +
-							"DELETE r ";
-					JsonObject p2 = new JsonObject()
+					transactionHelper.addBatch(STUDENT_UNLINK_RELATIVES, null, new JsonObject()
 							.putString("userExternalId", externalId)
-							.putArray("relatives", relative);
-					transactionHelper.add(query2, p2);
+							.putArray("relatives", relative));
 					for (Object o : relative) {
 						if (!(o instanceof String)) continue;
-						String query =
-								"START u=node:node_auto_index(externalId={userExternalId}), " +
-								"r0=node:node_auto_index(externalId={user}) " +
-								"MATCH r0-[:MERGED*0..1]->(r:User) " +
-								"WHERE NOT(HAS(r.mergedWith)) " +
-								"MERGE u-[:RELATED]->r " +
-								"SET u.relative = coalesce(FILTER(eId IN u.relative WHERE eId <> (r.externalId + '$1$1$1$1$0')), []) + (r.externalId + '$1$1$1$1$0') ";
-						JsonObject p = new JsonObject()
+						transactionHelper.addBatch(STUDENT_LINK_RELATIVE, null, new JsonObject()
 								.putString("userExternalId", externalId)
-								.putString("user", (String) o);
-						transactionHelper.add(query, p);
+								.putString("user", (String) o));
 					}
 				}
 			}
@@ -948,20 +1109,22 @@ public class Importer {
 					}
 					existingUser.removeAll(userImportedExternalId); // set difference
 					String q = // mark missing users
-							"START u=node:node_auto_index(externalId={externalId}) " +
+							"UNWIND {rows} AS externalId " +
+							"MATCH (u:User {externalId : externalId}) " +
 							"WHERE NOT(HAS(u.disappearanceDate)) " +
 							"SET u.disappearanceDate = {date} ";
 					JsonObject p = new JsonObject()
 							.putNumber("date", System.currentTimeMillis());
 					for (String eId : existingUser) {
-						transactionHelper.add(q, p.copy().putString("externalId", eId));
+						transactionHelper.addBatch(q, p, eId);
 					}
 					String q2 = // remove mark of imported users
-							"START u=node:node_auto_index(externalId={externalId}) " +
+							"UNWIND {rows} AS externalId " +
+							"MATCH (u:User {externalId : externalId}) " +
 							"WHERE HAS(u.disappearanceDate) " +
 							"REMOVE u.disappearanceDate ";
 					for (String eId : userImportedExternalId) {
-						transactionHelper.add(q2, new JsonObject().putString("externalId", eId));
+						transactionHelper.addBatch(q2, null, eId);
 					}
 				}
 				handler.handle(null);
@@ -65,9 +65,12 @@ public class Profile {
 	}
 
 	public void update(JsonObject struct) {
-		if (this.profile.equals(struct)) {
+		final String checksum = struct.getString("checksum");
+		if (this.profile.equals(struct) || (checksum != null && checksum.equals(this.profile.getString("checksum")))) {
+			importer.getReport().countChecksum("Profile", true);
 			return;
 		}
+		importer.getReport().countChecksum("Profile", false);
 		String query =
 				"MATCH (p:Profile { externalId : {externalId}}) " +
 				"WITH p " +
@@ -76,9 +76,12 @@ public class Structure {
 	}
 
 	public void update(JsonObject struct) {
-		if (this.struct.equals(struct)) {
+		final String checksum = struct.getString("checksum");
+		if (this.struct.equals(struct) || (checksum != null && checksum.equals(this.struct.getString("checksum")))) {
+			importer.getReport().countChecksum("Structure", true);
 			return;
 		}
+		importer.getReport().countChecksum("Structure", false);
 		String query =
 				"MATCH (s:Structure { externalId : {externalId}}) " +
 				"WITH s " +
@@ -293,9 +296,13 @@ public class Structure {
 		transactionHelper.add(query, params);
 	}
 
-	public static void list(JsonArray attributes, Integer skip, Integer limit, TransactionHelper transactionHelper) {
+	public static void list(JsonArray attributes, String after, Integer limit, TransactionHelper transactionHelper) {
 		StringBuilder query = new StringBuilder("MATCH (s:Structure) ");
 		JsonObject params = new JsonObject();
+		if (after != null || limit != null) {
+			query.append("WHERE s.externalId > {after} ");
+			params.putString("after", (after != null) ? after : "");
+		}
 		if (attributes != null && attributes.size() > 0) {
 			query.append("RETURN DISTINCT");
 			for (Object attribute : attributes) {
@@ -306,11 +313,9 @@ public class Structure {
 		} else {
 			query.append("RETURN DISTINCT s ");
 		}
-		if (skip != null && limit != null) {
+		if (limit != null) {
 			query.append("ORDER BY externalId ASC " +
-					"SKIP {skip} " +
 					"LIMIT {limit} ");
-			params.putNumber("skip", skip);
 			params.putNumber("limit", limit);
 		}
 		transactionHelper.add(query.toString(), params);
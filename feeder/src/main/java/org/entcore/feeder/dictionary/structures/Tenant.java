@@ -53,9 +53,13 @@ public class Tenant {
 		transactionHelper.add(query, params);
 	}
 
-	public static void list(JsonArray attributes, Integer skip, Integer limit, TransactionHelper transactionHelper) {
+	public static void list(JsonArray attributes, String after, Integer limit, TransactionHelper transactionHelper) {
 		StringBuilder query = new StringBuilder("MATCH (t:Tenant) ");
 		JsonObject params = new JsonObject();
+		if (after != null || limit != null) {
+			query.append("WHERE t.externalId > {after} ");
+			params.putString("after", (after != null) ? after : "");
+		}
 		if (attributes != null && attributes.size() > 0) {
 			query.append("RETURN DISTINCT");
 			for (Object attribute : attributes) {
@@ -66,11 +70,9 @@ public class Tenant {
 		} else {
 			query.append("RETURN DISTINCT t ");
 		}
-		if (skip != null && limit != null) {
+		if (limit != null) {
 			query.append("ORDER BY externalId ASC " +
-					"SKIP {skip} " +
 					"LIMIT {limit} ");
-			params.putNumber("skip", skip);
 			params.putNumber("limit", limit);
 		}
 		transactionHelper.add(query.toString(), params);
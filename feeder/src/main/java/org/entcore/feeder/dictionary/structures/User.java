@@ -376,17 +376,31 @@ public class User {
 		transactionHelper.add(query, params);
 	}
 
-	public static void list(JsonArray profiles, JsonArray attributes, Integer skip, Integer limit,
+	/**
+	 * Keyset pagination : lists at most limit users ordered by externalId, starting after the externalId after.
+	 * With a limit, users without externalId are left out : they can't be a page cursor.
+	 */
+	public static void list(JsonArray profiles, JsonArray attributes, String after, Integer limit,
 			TransactionHelper transactionHelper) {
 		StringBuilder query = new StringBuilder();
 		JsonObject params = new JsonObject();
+		final String afterFilter;
+		if (after != null || limit != null) {
+			afterFilter = "AND u.externalId > {after} ";
+			params.putString("after", (after != null) ? after : "");
+		} else {
+			afterFilter = "";
+		}
 		if (profiles != null && profiles.size() > 0) {
+			// the page is cut before collecting the manual groups, of its users only
 			query.append("MATCH (u:User) WHERE HEAD(u.profiles) IN {profiles} AND NOT(HAS(u.deleteDate)) " +
+					afterFilter +
+					((limit != null) ? "WITH u ORDER BY u.externalId LIMIT {limit} " : "") +
 					"OPTIONAL MATCH u-[:IN]->(g:ManualGroup)-[:DEPENDS]->(s:Structure) " +
 					"WITH u, COLLECT(s.externalId + '$' + g.id + '$' + g.name) as manualGroups ");
 			params.putArray("profiles", profiles);
 		} else {
-			query.append("MATCH (u:User) WHERE NOT(HAS(u.deleteDate)) ");
+			query.append("MATCH (u:User) WHERE NOT(HAS(u.deleteDate)) ").append(afterFilter);
 		}
 		if (attributes != null && attributes.size() > 0) {
 			query.append("RETURN DISTINCT");
@@ -403,11 +417,9 @@ public class User {
 		} else {
 			query.append("RETURN DISTINCT u ");
 		}
-		if (skip != null && limit != null) {
+		if (limit != null) {
 			query.append("ORDER BY externalId ASC " +
-					"SKIP {skip} " +
 					"LIMIT {limit} ");
-			params.putNumber("skip", skip);
 			params.putNumber("limit", limit);
 		}
 		transactionHelper.add(query.toString(), params);
@@ -23,7 +23,6 @@ import org.entcore.feeder.utils.AAFUtil;
 import org.entcore.feeder.utils.JsonUtil;
 import org.entcore.feeder.utils.ResultMessage;
 import org.vertx.java.core.Handler;
-import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonElement;
@@ -35,8 +34,9 @@ import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public abstract class BaseExportProcessing implements ExportProcessing {
 
@@ -47,6 +47,8 @@ public abstract class BaseExportProcessing implements ExportProcessing {
 	protected final boolean concat;
 	private XMLEventWriter xmlEventWriter;
 	private XMLEventFactory xmlEventFactory;
+	private Writer out;
+	private ZipOutputStream zip;
 
 	protected BaseExportProcessing(String exportMapping, int nbByFile, String path, boolean concat) {
 		this.path = path;
@@ -56,76 +58,102 @@ public abstract class BaseExportProcessing implements ExportProcessing {
 	}
 
 	protected void export(final Handler<Message<JsonObject>> handler, final ExportProcessing exportProcessing) {
-		count(new Handler<Integer>() {
+		if (exportProcessing instanceof BaseExportProcessing) {
+			((BaseExportProcessing) exportProcessing).setZip(zip);
+		}
+		exportPage(0, null, 0, System.currentTimeMillis(), handler, exportProcessing);
+	}
+
+	/**
+	 * Exports one page of nbByFile entities following the externalId after (keyset pagination),
+	 * until a page is incomplete.
+	 */
+	private void exportPage(final int j, final String after, final int total, final long start,
+			final Handler<Message<JsonObject>> handler, final ExportProcessing exportProcessing) {
+		list(after, nbByFile, new Handler<JsonArray>() {
 			@Override
-			public void handle(Integer nb) {
-				if (nb == null) {
-					error("invalid.count", handler);
-					return;
-				}
-				final int nbHandlers = (nb % nbByFile == 0) ? nb / nbByFile : nb / nbByFile + 1;
-				final VoidHandler[] handlers = new VoidHandler[nbHandlers + 1];
-				handlers[handlers.length - 1] = new VoidHandler() {
-					@Override
-					protected void handle() {
-						if (concat && xmlEventWriter != null) {
-							try {
-								closeDocument();
-							} catch (IOException | XMLStreamException e) {
-								error(e, handler);
-								return;
-							}
-						}
-						if (exportProcessing != null) {
-							exportProcessing.start(handler);
+			public void handle(JsonArray objects) {
+				String last = null;
+				if (objects != null && objects.size() > 0) {
+					try {
+						if (!concat) {
+							writeDocument(j, objects);
 						} else {
-							handler.handle(new ResultMessage());
+							if (xmlEventWriter == null) {
+								xmlEventFactory = XMLEventFactory.newInstance();
+								openDocument();
+							}
+							for (Object o : objects) {
+								if (!(o instanceof JsonObject)) continue;
+								writeElement(xmlEventWriter, xmlEventFactory, (JsonObject) o);
+							}
 						}
+					} catch (IOException | XMLStreamException e) {
+						error(e, handler);
+						return;
+					}
+					last = objects.<JsonObject>get(objects.size() - 1).getString("externalId");
+					if (last == null && objects.size() >= nbByFile) {
+						error("Export page of " + path + " ends without externalId.", handler);
+						return;
 					}
-				};
-				for (int i = handlers.length - 2; i >= 0; i--) {
-					final int j = i;
-					handlers[i] = new VoidHandler() {
-						@Override
-						protected void handle() {
-							list(j*nbByFile, nbByFile, new Handler<JsonArray>() {
-								@Override
-								public void handle(JsonArray objects) {
-									if (objects != null && objects.size() > 0) {
-										try {
-											if (!concat) {
-												writeDocument(j, objects);
-											} else {
-												if (xmlEventWriter == null) {
-													xmlEventFactory = XMLEventFactory.newInstance();
-													openDocument();
-												}
-												for (Object o : objects) {
-													if (!(o instanceof JsonObject)) continue;
-													writeElement(xmlEventWriter, xmlEventFactory, (JsonObject) o);
-												}
-											}
-										} catch (IOException | XMLStreamException e) {
-											error(e, handler);
-											return;
-										}
-									}
-									handlers[j + 1].handle(null);
-								}
-							});
-
-						}
-					};
 				}
-				handlers[0].handle(null);
+				final int count = total + (objects != null ? objects.size() : 0);
+				if (last != null && objects.size() >= nbByFile) {
+					exportPage(j + 1, last, count, start, handler, exportProcessing);
+				} else {
+					end(count, start, handler, exportProcessing);
+				}
 			}
 		});
 	}
 
+	private void end(int count, long start, Handler<Message<JsonObject>> handler, ExportProcessing exportProcessing) {
+		if (concat && xmlEventWriter != null) {
+			try {
+				closeDocument();
+			} catch (IOException | XMLStreamException e) {
+				error(e, handler);
+				return;
+			}
+		}
+		log.info("Exported " + count + " entities to " + path + " in " + (System.currentTimeMillis() - start) + " ms.");
+		if (exportProcessing != null) {
+			exportProcessing.start(handler);
+		} else {
+			handler.handle(new ResultMessage());
+		}
+	}
+
+	/**
+	 * @param zip when not null, the files are written as entries of this archive instead of on disk.
+	 */
+	public void setZip(ZipOutputStream zip) {
+		this.zip = zip;
+	}
+
+	private Writer openWriter(String p) throws IOException {
+		if (zip != null) {
+			zip.putNextEntry(new ZipEntry(new File(p).getName()));
+			return new BufferedWriter(new OutputStreamWriter(zip, "UTF-8"));
+		}
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(p), "UTF-8"));
+	}
+
+	private void closeWriter(Writer w) throws IOException {
+		if (zip != null) {
+			w.flush();
+			zip.closeEntry();
+		} else {
+			w.close();
+		}
+	}
+
 	private void openDocument() throws IOException, XMLStreamException {
 		final String p = path + "0000.xml";
 		XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
-		xmlEventWriter = outputFactory.createXMLEventWriter(new FileWriter(p));
+		out = openWriter(p);
+		xmlEventWriter = outputFactory.createXMLEventWriter(out);
 		xmlEventWriter.add(xmlEventFactory.createStartDocument());
 		xmlEventWriter.add(xmlEventFactory.createDTD("\n<!DOCTYPE ficAlimMENESR SYSTEM \"ficAlimMENESR.dtd\">\n"));
 		xmlEventWriter.add(xmlEventFactory.createStartElement("", "", "ficAlimMENESR"));
@@ -138,12 +166,14 @@ public abstract class BaseExportProcessing implements ExportProcessing {
 		xmlEventWriter.add(xmlEventFactory.createEndDocument());
 		xmlEventWriter.flush();
 		xmlEventWriter.close();
+		closeWriter(out);
 	}
 
 	private void writeDocument(int j, JsonArray objects) throws IOException, XMLStreamException {
 		final String p = path + String.format("%04d", j) + ".xml";
 		XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
-		XMLEventWriter writer = outputFactory.createXMLEventWriter(new FileWriter(p));
+		final Writer w = openWriter(p);
+		XMLEventWriter writer = outputFactory.createXMLEventWriter(w);
 		XMLEventFactory eventFactory = XMLEventFactory.newInstance();
 		writer.add(eventFactory.createStartDocument());
 		writer.add(eventFactory.createDTD("\n<!DOCTYPE ficAlimMENESR SYSTEM \"ficAlimMENESR.dtd\">\n"));
@@ -157,6 +187,7 @@ public abstract class BaseExportProcessing implements ExportProcessing {
 		writer.add(eventFactory.createEndDocument());
 		writer.flush();
 		writer.close();
+		closeWriter(w);
 	}
 
 	private void writeElement(XMLEventWriter writer, XMLEventFactory eventFactory,
@@ -235,9 +266,10 @@ public abstract class BaseExportProcessing implements ExportProcessing {
 
 	protected abstract void process(XMLEventWriter writer, XMLEventFactory eventFactory) throws XMLStreamException;
 
-	protected abstract void count(Handler<Integer> handler);
-
-	protected abstract void list(Integer skip, Integer limit, Handler<JsonArray> entities);
+	/**
+	 * Lists at most limit entities ordered by externalId, starting after the externalId after (null for the first page).
+	 */
+	protected abstract void list(String after, Integer limit, Handler<JsonArray> entities);
 
 	protected void error(String reason, Handler<Message<JsonObject>> handler) {
 		log.error(reason);
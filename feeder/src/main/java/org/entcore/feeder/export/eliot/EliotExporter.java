@@ -36,10 +36,14 @@ import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.zip.ZipOutputStream;
 
 public class EliotExporter implements Exporter {
 
@@ -52,14 +56,24 @@ public class EliotExporter implements Exporter {
 	private static final DateFormat date = new SimpleDateFormat("yyyyMMdd");
 	private final String node;
 	private final boolean concatFiles;
+	private final boolean streamZip;
 
 	public EliotExporter(String exportPath, String exportDestination, boolean concatFiles, Vertx vertx) {
+		this(exportPath, exportDestination, concatFiles, false, vertx);
+	}
+
+	/**
+	 * @param streamZip write the export files directly in the zip archive instead of zipping them afterwards.
+	 */
+	public EliotExporter(String exportPath, String exportDestination, boolean concatFiles, boolean streamZip,
+			Vertx vertx) {
 		this.exportBasePath = exportPath;
 		this.exportDestination = exportDestination;
 		this.vertx = vertx;
 		String n = (String) vertx.sharedData().getMap("server").get("node");
 		this.node = (n != null) ? n : "";
 		this.concatFiles = concatFiles;
+		this.streamZip = streamZip;
 	}
 
 	@Override
@@ -85,24 +99,49 @@ public class EliotExporter implements Exporter {
 						@Override
 						public void handle(AsyncResult<Void> ar) {
 							if (ar.succeeded()) {
-								new EleveExportProcessing(path, date.format(exportDate), tenant + "_" + academy, concatFiles)
-										.start(new Handler<Message<JsonObject>>() {
-											@Override
-											public void handle(Message<JsonObject> message) {
-												if ("ok".equals(message.body().getString("status"))) {
-													if (exportDestination != null && !exportDestination.trim().isEmpty()) {
-														zipAndSend(path, handler);
-													} else {
-														log.warn("export not send");
-														message.body().putString("exportPath", path);
-														handler.handle(message);
-													}
-												} else {
-													log.error(message.body().encode());
-													handler.handle(message);
-												}
+								final long start = System.currentTimeMillis();
+								final ZipOutputStream zip;
+								try {
+									zip = streamZip ? new ZipOutputStream(
+											new BufferedOutputStream(new FileOutputStream(path + ".zip"))) : null;
+								} catch (IOException e) {
+									log.error(e.getMessage(), e);
+									handler.handle(new ResultMessage().error(e.getMessage()));
+									return;
+								}
+								final EleveExportProcessing eleveExport = new EleveExportProcessing(
+										path, date.format(exportDate), tenant + "_" + academy, concatFiles);
+								eleveExport.setZip(zip);
+								eleveExport.start(new Handler<Message<JsonObject>>() {
+									@Override
+									public void handle(Message<JsonObject> message) {
+										log.info("Export elapsed time " + (System.currentTimeMillis() - start) + " ms.");
+										if (zip != null) {
+											try {
+												zip.close();
+											} catch (IOException e) {
+												log.error(e.getMessage(), e);
+												message = new ResultMessage().error(e.getMessage());
+											}
+										}
+										if ("ok".equals(message.body().getString("status"))) {
+											if (zip != null) {
+												sendZip(path, handler, message);
+												return;
+											}
+											if (exportDestination != null && !exportDestination.trim().isEmpty()) {
+												zipAndSend(path, handler);
+											} else {
+												log.warn("export not send");
+												message.body().putString("exportPath", path);
+												handler.handle(message);
 											}
-										});
+										} else {
+											log.error(message.body().encode());
+											handler.handle(message);
+										}
+									}
+								});
 							} else {
 								log.error(ar.cause().getMessage(), ar.cause());
 								handler.handle(new ResultMessage().error(ar.cause().getMessage()));
@@ -122,6 +161,18 @@ public class EliotExporter implements Exporter {
 		return "ELIOT";
 	}
 
+	private void sendZip(final String path, final Handler<Message<JsonObject>> handler, Message<JsonObject> message) {
+		final String zipPath = path + ".zip";
+		vertx.fileSystem().delete(path, true, null);
+		if (exportDestination != null && !exportDestination.trim().isEmpty()) {
+			sendWithWebDav(zipPath, handler);
+		} else {
+			log.warn("export not send");
+			message.body().putString("exportPath", zipPath);
+			handler.handle(message);
+		}
+	}
+
 	private void zipAndSend(final String path, final Handler<Message<JsonObject>> handler) {
 		final String zipPath = path + ".zip";
 		log.info("Export zip : " + zipPath);
@@ -55,12 +55,11 @@ public class PersALExportProcessing extends BaseExportProcessing {
 	}
 
 	@Override
-	protected void count(final Handler<Integer> handler) {
-		handler.handle(1);
-	}
-
-	@Override
-	protected void list(final Integer skip, final Integer limit, final Handler<JsonArray> handler) {
+	protected void list(final String after, final Integer limit, final Handler<JsonArray> handler) {
+		if (after != null) { // all the functions are listed in the first page
+			handler.handle(new JsonArray());
+			return;
+		}
 		TransactionManager.executeTransaction(new Function<TransactionHelper, Message<JsonObject>>() {
 			@Override
 			public void apply(TransactionHelper value) {
@@ -58,35 +58,11 @@ public abstract class UserExportProcessing extends BaseExportProcessing {
 	}
 
 	@Override
-	protected void count(final Handler<Integer> handler) {
+	protected void list(final String after, final Integer limit, final Handler<JsonArray> handler) {
 		TransactionManager.executeTransaction(new Function<TransactionHelper, Message<JsonObject>>() {
 			@Override
 			public void apply(TransactionHelper value) {
-				User.count(profiles, value);
-			}
-
-			@Override
-			public void handle(Message<JsonObject> result) {
-				JsonArray r = result.body().getArray("results");
-				if ("ok".equals(result.body().getString("status")) && r != null && r.size() == 1) {
-					JsonArray rs = r.get(0);
-					if (rs != null && rs.size() == 1) {
-						JsonObject row = rs.get(0);
-						handler.handle(row.getInteger("nb", 0));
-						return;
-					}
-				}
-				handler.handle(null);
-			}
-		});
-	}
-
-	@Override
-	protected void list(final Integer skip, final Integer limit, final Handler<JsonArray> handler) {
-		TransactionManager.executeTransaction(new Function<TransactionHelper, Message<JsonObject>>() {
-			@Override
-			public void apply(TransactionHelper value) {
-				User.list(profiles, attributes, skip, limit, value);
+				User.list(profiles, attributes, after, limit, value);
 			}
 
 			@Override
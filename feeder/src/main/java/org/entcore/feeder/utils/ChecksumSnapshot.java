@@ -0,0 +1,157 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.feeder.utils;
+
+/**
+ * Compact externalId -> checksum map. Both are stored as 64 bits hashes in two primitive arrays
+ * (open addressing, linear probing), about 32 bytes per entry instead of two Strings and a map entry.
+ * An entity reported unchanged is not sent to Neo4j at all, so a collision is not caught later : a
+ * changed entity is skipped if its new checksum hash equals the stored one, a 2^-64 probability
+ * per changed entity. Two externalIds with the same hash share an entry, the last one put wins ; a
+ * zero hash marks an empty slot and is stored as 1.
+ * Not thread safe : used from the feeder verticle only.
+ */
+public final class ChecksumSnapshot {
+
+	private static final long EMPTY = 0L;
+	private static final int MIN_CAPACITY = 1024;
+	private long[] keys;
+	private long[] values;
+	private int size = 0;
+
+	public ChecksumSnapshot() {
+		this(MIN_CAPACITY);
+	}
+
+	public ChecksumSnapshot(int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+
+	public void put(String externalId, String checksum) {
+		if (externalId == null || checksum == null) {
+			return;
+		}
+		put(hash(externalId), hash(checksum));
+	}
+
+	/**
+	 * @return true if the snapshot already holds this checksum for this externalId.
+	 */
+	public boolean unchanged(String externalId, String checksum) {
+		if (externalId == null || checksum == null) {
+			return false;
+		}
+		return unchanged(hash(externalId), hash(checksum));
+	}
+
+	void put(long key, long value) {
+		if ((size + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		if (insert(nonEmpty(key), value)) {
+			size++;
+		}
+	}
+
+	boolean unchanged(long key, long value) {
+		if (size == 0) {
+			return false;
+		}
+		final long k = nonEmpty(key);
+		final int mask = keys.length - 1;
+		for (int i = index(k, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+			if (keys[i] == k) {
+				return values[i] == value;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		allocate(MIN_CAPACITY);
+		size = 0;
+	}
+
+	private boolean insert(long k, long v) {
+		final int mask = keys.length - 1;
+		int i = index(k, mask);
+		while (keys[i] != EMPTY) {
+			if (keys[i] == k) {
+				values[i] = v;
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = k;
+		values[i] = v;
+		return true;
+	}
+
+	private void rehash(int capacity) {
+		final long[] oldKeys = keys;
+		final long[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				insert(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new long[capacity];
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static long nonEmpty(long key) {
+		return (key == EMPTY) ? 1L : key;
+	}
+
+	private static int index(long k, int mask) {
+		long h = k;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return (int) h & mask;
+	}
+
+	// FNV-1a 64 bits
+	private static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+}
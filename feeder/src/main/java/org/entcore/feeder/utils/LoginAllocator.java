@@ -0,0 +1,92 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.feeder.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Allocates unique logins from the used logins and, for each base login, the counter of its next
+ * numeric suffix. Both maps are shared (cluster maps when clustered), every update is a compare
+ * and set, so a login usually costs one counter update and one used logins insertion instead of
+ * one insertion attempt per existing homonym.
+ */
+final class LoginAllocator {
+
+	private static final Pattern LOGIN_SUFFIX = Pattern.compile("^(.*[^0-9])([0-9]+)$");
+	private final ConcurrentMap<Object, Object> logins;
+	private final ConcurrentMap<Object, Object> counters;
+
+	LoginAllocator(ConcurrentMap<Object, Object> logins, ConcurrentMap<Object, Object> counters) {
+		this.logins = logins;
+		this.counters = counters;
+	}
+
+	/**
+	 * Takes the next suffix of the base login from its counter. The used logins stay the
+	 * reference : a taken candidate only moves to the next suffix.
+	 */
+	String allocate(String login) {
+		while (true) {
+			final String l;
+			final Object next = counters.putIfAbsent(login, 2);
+			if (next == null) {
+				l = login;
+			} else if (counters.replace(login, next, ((Integer) next) + 1)) {
+				l = login + next;
+			} else {
+				continue;
+			}
+			if (logins.putIfAbsent(l, "") == null) {
+				return l;
+			}
+		}
+	}
+
+	/**
+	 * Records the numeric suffix of an existing login in suffixes if it is the highest of its base.
+	 */
+	static void maxSuffix(String login, Map<String, Integer> suffixes) {
+		final Matcher m = LOGIN_SUFFIX.matcher(login);
+		if (m.matches() && m.group(2).length() < 9) {
+			final int suffix = Integer.parseInt(m.group(2));
+			final Integer max = suffixes.get(m.group(1));
+			if (max == null || max < suffix) {
+				suffixes.put(m.group(1), suffix);
+			}
+		}
+	}
+
+	/**
+	 * Raises the counter of the base of a login with a numeric suffix above this suffix.
+	 */
+	void updateCounter(String base, int suffix) {
+		while (true) {
+			final Object current = counters.putIfAbsent(base, suffix + 1);
+			if (current == null || (Integer) current > suffix ||
+					counters.replace(base, current, suffix + 1)) {
+				return;
+			}
+		}
+	}
+
+}
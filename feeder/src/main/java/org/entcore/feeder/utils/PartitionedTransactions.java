@@ -0,0 +1,153 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.feeder.utils;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A fixed number of concurrent transactions, a key (a structure externalId) always going to the
+ * same one. The number of partitions bounds the number of transactions running in Neo4j at once.
+ * Nothing prevents two partitions from locking the same node : callers only send statements that
+ * write nodes of the key, anything else could deadlock, Neo4j then failing one of the transactions.
+ * Partitions are committed independently : when one fails, the others stay committed. Callers must
+ * only send idempotent statements (MERGE) so that the next import completes the partial work.
+ */
+public class PartitionedTransactions {
+
+	private static final Logger log = LoggerFactory.getLogger(PartitionedTransactions.class);
+	private final Neo4j neo4j;
+	private final int statementNumber;
+	private final int batchSize;
+	private final TransactionHelper[] transactions;
+	private final long[] started;
+	private final long[] durations;
+	private final int[] counts;
+	private final Set<String>[] keys;
+
+	@SuppressWarnings("unchecked")
+	public PartitionedTransactions(Neo4j neo4j, int partitions, int statementNumber, int batchSize) {
+		this.neo4j = neo4j;
+		this.statementNumber = statementNumber;
+		this.batchSize = batchSize;
+		this.transactions = new TransactionHelper[partitions];
+		this.started = new long[partitions];
+		this.durations = new long[partitions];
+		this.counts = new int[partitions];
+		this.keys = new Set[partitions];
+	}
+
+	/**
+	 * @return the transaction of the partition of key, opened on first use.
+	 */
+	public TransactionHelper get(String key) {
+		final int i = (key.hashCode() & Integer.MAX_VALUE) % transactions.length;
+		if (transactions[i] == null) {
+			transactions[i] = new TransactionHelper(neo4j, statementNumber, batchSize);
+			started[i] = System.currentTimeMillis();
+			keys[i] = new HashSet<>();
+		}
+		counts[i]++;
+		keys[i].add(key);
+		return transactions[i];
+	}
+
+	public void flush(Handler<Message<JsonObject>> handler) {
+		execute(false, handler);
+	}
+
+	/**
+	 * Commits all the partitions concurrently, not atomically. The handler receives the first error,
+	 * or the last commit result once all the partitions are committed.
+	 */
+	public void commit(Handler<Message<JsonObject>> handler) {
+		execute(true, handler);
+	}
+
+	private void execute(final boolean commit, final Handler<Message<JsonObject>> handler) {
+		int opened = 0;
+		for (TransactionHelper t : transactions) {
+			if (t != null) opened++;
+		}
+		if (opened == 0) {
+			handler.handle(new ResultMessage());
+			return;
+		}
+		final AtomicInteger count = new AtomicInteger(opened);
+		final AtomicReference<Message<JsonObject>> error = new AtomicReference<>();
+		for (int i = 0; i < transactions.length; i++) {
+			final TransactionHelper t = transactions[i];
+			if (t == null) continue;
+			final int j = i;
+			final Handler<Message<JsonObject>> h = new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> message) {
+					if (message != null && !"ok".equals(message.body().getString("status"))) {
+						log.error("Error in partition " + j + " : " + message.body().getString("message"));
+						error.compareAndSet(null, message);
+					}
+					if (commit) {
+						durations[j] = System.currentTimeMillis() - started[j];
+					}
+					if (count.decrementAndGet() == 0) {
+						handler.handle(error.get() != null ? error.get() :
+								(message != null ? message : new ResultMessage()));
+					}
+				}
+			};
+			try {
+				if (commit) {
+					t.commit(h);
+				} else {
+					t.flush(h);
+				}
+			} catch (IllegalStateException e) {
+				log.error("Error in partition " + j + " : " + e.getMessage());
+				h.handle(new ResultMessage().error(e.getMessage()));
+			}
+		}
+	}
+
+	/**
+	 * @return for each opened partition its number of keys, of entities and its duration in ms.
+	 */
+	public JsonArray getTimings() {
+		final JsonArray timings = new JsonArray();
+		for (int i = 0; i < transactions.length; i++) {
+			if (transactions[i] == null) continue;
+			timings.addObject(new JsonObject()
+					.putNumber("partition", i)
+					.putNumber("structures", keys[i].size())
+					.putNumber("entities", counts[i])
+					.putNumber("duration", durations[i]));
+		}
+		return timings;
+	}
+
+}
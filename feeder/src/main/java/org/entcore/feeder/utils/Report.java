@@ -84,6 +84,35 @@ public class Report {
 		f.addObject(new JsonObject().putString("reason", reason).putObject("object", object));
 	}
 
+	/**
+	 * Counts an imported entity as changed, or as skipped when its checksum was unchanged.
+	 */
+	public void countChecksum(String type, boolean skipped) {
+		JsonObject checksums = result.getObject("checksums");
+		if (checksums == null) {
+			checksums = new JsonObject();
+			result.putObject("checksums", checksums);
+		}
+		JsonObject t = checksums.getObject(type);
+		if (t == null) {
+			t = new JsonObject().putNumber("changed", 0).putNumber("skipped", 0);
+			checksums.putObject(type, t);
+		}
+		final String field = skipped ? "skipped" : "changed";
+		t.putNumber(field, t.getInteger(field) + 1);
+	}
+
+	public void addPartitionTimings(JsonArray timings) {
+		JsonArray partitions = result.getArray("partitions");
+		if (partitions == null) {
+			partitions = new JsonArray();
+			result.putArray("partitions", partitions);
+		}
+		for (Object o : timings) {
+			partitions.add(o);
+		}
+	}
+
 	public String translate(String key, String... params) {
 		return i18n.translate(key, I18n.DEFAULT_DOMAIN, acceptLanguage, params);
 	}
@@ -26,6 +26,10 @@ import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -46,6 +50,10 @@ public class TransactionHelper {
 	private boolean flush = false;
 	private Handler<Message<JsonObject>> flushHandler;
 	private boolean autoSend = true;
+	private boolean sent = false;
+	private final int batchSize;
+	private final Map<String, JsonObject> batches = new LinkedHashMap<>();
+	private final List<JsonObject> deferred = new ArrayList<>();
 
 	class ResetTransactionTimer extends TimerTask {
 
@@ -66,16 +74,80 @@ public class TransactionHelper {
 	}
 
 	public TransactionHelper(Neo4j neo4j, int statementNumber) {
+		this(neo4j, statementNumber, 0);
+	}
+
+	/**
+	 * @param batchSize maximum number of rows of a statement added with addBatch, 0 to send one statement per row.
+	 */
+	public TransactionHelper(Neo4j neo4j, int statementNumber, int batchSize) {
 		this.neo4j = neo4j;
 		this.remainingStatementNumber = new AtomicInteger(statementNumber);
 		this.statementNumber = statementNumber;
+		this.batchSize = batchSize;
 		this.statements = new JsonArray();
 		send(new JsonArray());
 	}
 
+	/**
+	 * Adds a statement. While batches are pending, it is deferred after them so that the
+	 * batches keep filling up instead of being sent with a single row.
+	 */
 	public void add(String query, JsonObject params) {
+		if (batches.isEmpty()) {
+			addStatement(query, params, 1);
+			return;
+		}
+		deferred.add(new JsonObject().putString("statement", query).putObject("parameters", params));
+		if (deferred.size() >= batchSize) {
+			flushBatches();
+		}
+	}
+
+	/**
+	 * Accumulates the rows of a statement starting with "UNWIND {rows} AS row" and sends them
+	 * as one statement per batchSize rows. Pending batches are added in the order they were
+	 * started, then the statements deferred by add, so a statement added after a row always runs
+	 * after it. A batch row must not depend on a statement added before it with add, as that
+	 * statement may still be deferred. params are shared by all the rows of the statement.
+	 */
+	public void addBatch(String query, JsonObject params, Object row) {
+		if (batchSize <= 0) {
+			addStatement(query, (params != null ? params.copy() : new JsonObject())
+					.putArray("rows", new JsonArray().add(row)), 1);
+			return;
+		}
+		JsonObject batch = batches.get(query);
+		if (batch == null) {
+			batch = (params != null ? params.copy() : new JsonObject()).putArray("rows", new JsonArray());
+			batches.put(query, batch);
+		}
+		batch.getArray("rows").add(row);
+		if (batch.getArray("rows").size() >= batchSize) {
+			flushBatches();
+		}
+	}
+
+	private void flushBatches() {
+		if (batches.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<String, JsonObject> e : batches.entrySet()) {
+			addStatement(e.getKey(), e.getValue(), e.getValue().getArray("rows").size());
+		}
+		batches.clear();
+		for (JsonObject statement : deferred) {
+			addStatement(statement.getString("statement"), statement.getObject("parameters"), 1);
+		}
+		deferred.clear();
+	}
+
+	/**
+	 * @param weight number of rows of the statement, the transaction is sent when statementNumber rows are reached.
+	 */
+	private void addStatement(String query, JsonObject params, int weight) {
 		if (autoSend && !waitingQuery && transactionId != null &&
-				remainingStatementNumber.getAndDecrement() == 0) {
+				remainingStatementNumber.get() <= 0) {
 			send(statements.copy());
 			statements = new JsonArray();
 			remainingStatementNumber = new AtomicInteger(statementNumber);
@@ -89,6 +161,7 @@ public class TransactionHelper {
 				statement.putObject("parameters", params);
 			}
 			statements.addObject(statement);
+			remainingStatementNumber.addAndGet(-weight);
 		}
 	}
 
@@ -101,6 +174,9 @@ public class TransactionHelper {
 			throw new IllegalStateException(error.body().getString("message"));
 		}
 		waitingQuery = true;
+		if (s.size() > 0) {
+			sent = true;
+		}
 		neo4j.executeTransaction(s, transactionId, false, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> message) {
@@ -132,12 +208,14 @@ public class TransactionHelper {
 		if (error != null) {
 			throw new IllegalStateException(error.body().getString("message"));
 		}
+		flushBatches();
 		if (waitingQuery) {
 			commit = true;
 			commitHandler = handler;
 			return;
 		}
 		if (transactionId != null || statements.size() > 0) {
+			sent = false;
 			neo4j.executeTransaction(statements, transactionId, true, handler);
 			if (transactionId != null) {
 				resetTimeOutTimer.cancel();
@@ -150,6 +228,7 @@ public class TransactionHelper {
 	}
 
 	public void rollback() {
+		sent = false;
 		if (transactionId != null) {
 			neo4j.rollbackTransaction(transactionId, null);
 			resetTimeOutTimer.cancel();
@@ -162,6 +241,7 @@ public class TransactionHelper {
 		if (error != null) {
 			throw new IllegalStateException(error.body().getString("message"));
 		}
+		flushBatches();
 		if (waitingQuery) {
 			flush = true;
 			flushHandler = handler;
@@ -180,8 +260,26 @@ public class TransactionHelper {
 		return neo4j;
 	}
 
+	/**
+	 * @return number of rows not sent yet.
+	 */
+	public int size() {
+		int size = statementNumber - remainingStatementNumber.get() + deferred.size();
+		for (JsonObject batch : batches.values()) {
+			size += batch.getArray("rows").size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return true if statements have been sent and not committed yet : they hold their locks.
+	 */
+	public boolean hasSentStatements() {
+		return sent;
+	}
+
 	public boolean isEmpty() {
-		return statements == null || statements.size() == 0;
+		return (statements == null || statements.size() == 0) && batches.isEmpty();
 	}
 
 
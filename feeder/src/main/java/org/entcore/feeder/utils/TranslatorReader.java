@@ -0,0 +1,97 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.feeder.utils;
+
+import org.apache.commons.lang3.text.translate.CharSequenceTranslator;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Applies an entity unescaping translator to a character stream chunk by chunk. A chunk is never
+ * cut inside an entity : the tail starting at a trailing '&' without ';' is kept for the next chunk.
+ */
+public final class TranslatorReader extends Reader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_ENTITY_LENGTH = 32;
+	private final Reader in;
+	private final CharSequenceTranslator translator;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int buffered = 0;
+	private boolean eof = false;
+	private String translated = "";
+	private int position = 0;
+
+	public TranslatorReader(Reader in, CharSequenceTranslator translator) {
+		this.in = in;
+		this.translator = translator;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		while (position >= translated.length()) {
+			if (!fill()) {
+				return -1;
+			}
+		}
+		final int n = Math.min(len, translated.length() - position);
+		translated.getChars(position, position + n, cbuf, off);
+		position += n;
+		return n;
+	}
+
+	private boolean fill() throws IOException {
+		if (eof && buffered == 0) {
+			return false;
+		}
+		while (!eof && buffered < buffer.length) {
+			int n = in.read(buffer, buffered, buffer.length - buffered);
+			if (n < 0) {
+				eof = true;
+			} else {
+				buffered += n;
+			}
+		}
+		int end = buffered;
+		if (!eof) {
+			for (int i = buffered - 1; i >= 0 && i >= buffered - MAX_ENTITY_LENGTH; i--) {
+				if (buffer[i] == ';') {
+					break;
+				}
+				if (buffer[i] == '&') {
+					end = i;
+					break;
+				}
+			}
+		}
+		translated = translator.translate(new String(buffer, 0, end));
+		position = 0;
+		System.arraycopy(buffer, end, buffer, 0, buffered - end);
+		buffered -= end;
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -42,6 +42,8 @@ public class Validator {
 
 	private static final Logger log = LoggerFactory.getLogger(Validator.class);
 	private static ConcurrentMap<Object, Object> logins;
+	private static LoginAllocator loginAllocator;
+	private static final int LOGINS_PAGE_SIZE = 50000;
 	private static Map<Object, Object> invalidEmails;
 	private final I18n i18n = I18n.getInstance();
 	private final boolean notStoreLogins;
@@ -299,12 +301,9 @@ public class Validator {
 				String login = (removeAccents(firstName).replaceAll("\\s+", "-").toLowerCase()
 						+ "." + removeAccents(lastName).replaceAll("\\s+", "-").toLowerCase())
 						.replaceAll("'", "");
-				int i = 2;
-				String l = login + "";
+				String l = login;
 				if (!notStoreLogins) {
-					while (logins.putIfAbsent(l, "") != null) {
-						l = login + i++;
-					}
+					l = loginAllocator.allocate(login);
 				}
 				object.putString(attr, l);
 			}
@@ -386,42 +385,21 @@ public class Validator {
 		if (logins == null) {
 			ConcurrentSharedMap<Object, Object> server = vertx.sharedData().getMap("server");
 			Boolean cluster = (Boolean) server.get("cluster");
+			final ConcurrentMap<Object, Object> loginCounters;
 			if (Boolean.TRUE.equals(cluster)) {
 				ClusterManager cm = ((VertxInternal) vertx).clusterManager();
 				logins = (ConcurrentMap<Object, Object>) cm.getSyncMap("usedLogins");
+				loginCounters = (ConcurrentMap<Object, Object>) cm.getSyncMap("loginCounters");
 			} else {
 				logins = new ConcurrentHashMap<>();
+				loginCounters = new ConcurrentHashMap<>();
 			}
+			loginAllocator = new LoginAllocator(logins, loginCounters);
 			remove = false;
 		} else {
 			remove = true;
 		}
-		String query = "MATCH (u:User) RETURN COLLECT(DISTINCT u.login) as logins";
-		neo4j.execute(query, new JsonObject(), new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> message) {
-				JsonArray r = message.body().getArray("result");
-				if ("ok".equals(message.body().getString("status")) && r != null && r.size() == 1) {
-					JsonArray l = ((JsonObject) r.get(0)).getArray("logins");
-					if (l != null) {
-						if (remove) {
-							Set<Object> tmp = new HashSet<>(l.toList());
-							for (Object key : logins.keySet()) {
-								if (!tmp.contains(key)) {
-									logins.remove(key);
-								}
-							}
-						} else {
-							for (Object o : l) {
-								if (!(o instanceof String)) continue;
-								logins.putIfAbsent(o, "");
-							}
-						}
-						log.info("Init delay : " + (System.currentTimeMillis() - startInit));
-					}
-				}
-			}
-		});
+		loadLogins(neo4j, "", remove ? new HashSet<>() : null, new HashMap<String, Integer>(), startInit);
 		if (invalidEmails == null) {
 			ConcurrentSharedMap<Object, Object> server = vertx.sharedData().getMap("server");
 			Boolean cluster = (Boolean) server.get("cluster");
@@ -434,4 +412,58 @@ public class Validator {
 		}
 	}
 
+	/**
+	 * Streams the existing logins page by page, keyset paged on the unique login. The highest suffix
+	 * of each base login is computed locally and only pushed to the counters at the end. When
+	 * existing is not null, the logins absent from the graph are removed once all the pages are read.
+	 */
+	private static void loadLogins(final Neo4j neo4j, final String after, final Set<Object> existing,
+			final Map<String, Integer> suffixes, final long startInit) {
+		final String query =
+				"MATCH (u:User) " +
+				"WHERE u.login > {after} " +
+				"RETURN u.login as login " +
+				"ORDER BY login " +
+				"LIMIT {limit} ";
+		final JsonObject params = new JsonObject().putString("after", after).putNumber("limit", LOGINS_PAGE_SIZE);
+		neo4j.execute(query, params, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				JsonArray r = message.body().getArray("result");
+				if (!"ok".equals(message.body().getString("status")) || r == null) {
+					log.error("Error loading logins : " + message.body().getString("message"));
+					return;
+				}
+				String last = null;
+				for (Object o : r) {
+					if (!(o instanceof JsonObject)) continue;
+					final String login = ((JsonObject) o).getString("login");
+					if (login == null) continue;
+					last = login;
+					if (existing != null) {
+						existing.add(login);
+					} else {
+						logins.putIfAbsent(login, "");
+					}
+					LoginAllocator.maxSuffix(login, suffixes);
+				}
+				if (r.size() == LOGINS_PAGE_SIZE && last != null) {
+					loadLogins(neo4j, last, existing, suffixes, startInit);
+					return;
+				}
+				if (existing != null) {
+					for (Object key : logins.keySet()) {
+						if (!existing.contains(key)) {
+							logins.remove(key);
+						}
+					}
+				}
+				for (Map.Entry<String, Integer> e : suffixes.entrySet()) {
+					loginAllocator.updateCounter(e.getKey(), e.getValue());
+				}
+				log.info("Init delay : " + (System.currentTimeMillis() - startInit));
+			}
+		});
+	}
+
 }
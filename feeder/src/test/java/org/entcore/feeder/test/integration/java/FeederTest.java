@@ -19,6 +19,7 @@
 
 package org.entcore.feeder.test.integration.java;
 
+import org.entcore.feeder.dictionary.structures.Importer;
 import org.entcore.feeder.utils.Neo4j;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -70,15 +71,7 @@ public class FeederTest extends TestVerticle {
 				new AsyncResultHandler<String>() {
 			@Override
 			public void handle(AsyncResult<String> event) {
-				JsonObject config = new JsonObject()
-						.putString("neo4j-address", NEO4J_PERSISTOR)
-						.putString("feeder", "AAF")
-						.putString("import-files", importTmpFolder.getRoot().getAbsolutePath())
-						.putNumber("delete-user-delay", 10000l)
-						.putNumber("pre-delete-user-delay", 1000l)
-						.putString("delete-cron", "0 */1 * * * ? *")
-						.putString("pre-delete-cron", "0 */1 * * * ? *");
-				container.deployModule(System.getProperty("vertx.modulename"), config, 1,
+				container.deployModule(System.getProperty("vertx.modulename"), feederConfig(), 1,
 						new AsyncResultHandler<String>() {
 							public void handle(AsyncResult<String> ar) {
 								if (ar.succeeded()) {
@@ -101,6 +94,17 @@ public class FeederTest extends TestVerticle {
 		});
 	}
 
+	private JsonObject feederConfig() {
+		return new JsonObject()
+				.putString("neo4j-address", NEO4J_PERSISTOR)
+				.putString("feeder", "AAF")
+				.putString("import-files", importTmpFolder.getRoot().getAbsolutePath())
+				.putNumber("delete-user-delay", 10000l)
+				.putNumber("pre-delete-user-delay", 1000l)
+				.putString("delete-cron", "0 */1 * * * ? *")
+				.putString("pre-delete-cron", "0 */1 * * * ? *");
+	}
+
 	@Override
 	public void stop() {
 		if (importTmpFolder != null) {
@@ -156,6 +160,61 @@ public class FeederTest extends TestVerticle {
 		});
 	}
 
+	@Test
+	public void testImportBatchSize() {
+		importWithBatchSize(0, new Handler<Long>() {
+			@Override
+			public void handle(final Long unbatched) {
+				importWithBatchSize(Importer.DEFAULT_BATCH_SIZE, new Handler<Long>() {
+					@Override
+					public void handle(Long batched) {
+						container.logger().info("AAF import : " + unbatched + " ms unbatched, " + batched +
+								" ms with batches of " + Importer.DEFAULT_BATCH_SIZE + " rows");
+						testComplete();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Redeploys the feeder on an empty graph and imports the AAF files with this batch size.
+	 * @param handler receives the import duration in ms.
+	 */
+	private void importWithBatchSize(final int batchSize, final Handler<Long> handler) {
+		container.undeployModule(neo4jDeploymentId, new Handler<AsyncResult<Void>>() {
+			@Override
+			public void handle(AsyncResult<Void> event) {
+				assertTrue(event.succeeded());
+				neo4jDeploymentId = null;
+				neo4j.execute("MATCH (n) OPTIONAL MATCH n-[r]->() DELETE r, n " +
+						"WITH count(*) as deleted CREATE (:DeleteGroup {externalId :'DeleteGroup'})", null,
+						new Handler<Message<JsonObject>>() {
+					@Override
+					public void handle(Message<JsonObject> event) {
+						assertEquals("ok", event.body().getString("status"));
+						container.deployModule(System.getProperty("vertx.modulename"),
+								feederConfig().putNumber("import-batch-size", batchSize), 1,
+								new AsyncResultHandler<String>() {
+							@Override
+							public void handle(AsyncResult<String> ar) {
+								assertTrue(ar.succeeded());
+								neo4jDeploymentId = ar.result();
+								final long start = System.currentTimeMillis();
+								importAAF(new VoidHandler() {
+									@Override
+									protected void handle() {
+										handler.handle(System.currentTimeMillis() - start);
+									}
+								});
+							}
+						});
+					}
+				});
+			}
+		});
+	}
+
 	private void addStructure(final Handler<String> handler) {
 		JsonObject action = new JsonObject().putString("action", "manual-create-structure")
 				.putObject("data", new JsonObject().putString("name", "bla"));
@@ -0,0 +1,104 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.feeder.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChecksumSnapshotTest {
+
+	@Test
+	public void testPutAndUnchanged() {
+		final ChecksumSnapshot snapshot = new ChecksumSnapshot();
+		assertFalse(snapshot.unchanged("u1", "c1"));
+		snapshot.put("u1", "c1");
+		snapshot.put("u2", "c2");
+		assertTrue(snapshot.unchanged("u1", "c1"));
+		assertFalse(snapshot.unchanged("u1", "c2"));
+		assertFalse(snapshot.unchanged("u3", "c1"));
+		assertFalse(snapshot.unchanged(null, "c1"));
+		assertFalse(snapshot.unchanged("u1", null));
+		snapshot.put("u1", "c3");
+		assertEquals(2, snapshot.size());
+		assertTrue(snapshot.unchanged("u1", "c3"));
+		assertFalse(snapshot.unchanged("u1", "c1"));
+		snapshot.put(null, "c1");
+		snapshot.put("u4", null);
+		assertEquals(2, snapshot.size());
+	}
+
+	@Test
+	public void testRehash() {
+		final ChecksumSnapshot snapshot = new ChecksumSnapshot();
+		final int n = 100000;
+		for (int i = 0; i < n; i++) {
+			snapshot.put("user" + i, "checksum" + i);
+		}
+		assertEquals(n, snapshot.size());
+		for (int i = 0; i < n; i++) {
+			assertTrue(snapshot.unchanged("user" + i, "checksum" + i));
+			assertFalse(snapshot.unchanged("user" + i, "checksum" + (i + 1)));
+		}
+		assertFalse(snapshot.unchanged("user" + n, "checksum" + n));
+		snapshot.clear();
+		assertEquals(0, snapshot.size());
+		assertFalse(snapshot.unchanged("user0", "checksum0"));
+	}
+
+	@Test
+	public void testCollisions() {
+		final ChecksumSnapshot snapshot = new ChecksumSnapshot(10);
+		// up to half full, many of these keys share a home slot and are found by probing,
+		// across two rehashes
+		final int n = 600;
+		for (int i = 1; i <= n; i++) {
+			snapshot.put((long) i << 40, i);
+			snapshot.put((long) i * 1024, -i);
+		}
+		assertEquals(2 * n, snapshot.size());
+		for (int i = 1; i <= n; i++) {
+			assertTrue(snapshot.unchanged((long) i << 40, i));
+			assertTrue(snapshot.unchanged((long) i * 1024, -i));
+			assertFalse(snapshot.unchanged((long) i << 40, -i));
+		}
+		assertFalse(snapshot.unchanged((long) (n + 1) << 40, n + 1));
+	}
+
+	@Test
+	public void testZeroHashKey() {
+		final ChecksumSnapshot snapshot = new ChecksumSnapshot();
+		snapshot.put(0L, 42L);
+		assertEquals(1, snapshot.size());
+		assertTrue(snapshot.unchanged(0L, 42L));
+		assertFalse(snapshot.unchanged(0L, 43L));
+		// the zero hash is stored as 1, the two keys share an entry
+		assertTrue(snapshot.unchanged(1L, 42L));
+		snapshot.put(1L, 7L);
+		assertEquals(1, snapshot.size());
+		assertTrue(snapshot.unchanged(0L, 7L));
+		for (long k = 2; k < 3000; k++) {
+			snapshot.put(k, k);
+		}
+		assertTrue(snapshot.unchanged(0L, 7L));
+		assertEquals(2999, snapshot.size());
+	}
+
+}
@@ -0,0 +1,151 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.feeder.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LoginAllocatorTest {
+
+	private static final String[] FIRST_NAMES = { "marie", "jean", "pierre", "michel", "nathalie",
+			"isabelle", "philippe", "sylvie", "catherine", "francoise", "nicolas", "christophe", "sophie",
+			"stephane", "julien", "camille", "lea", "manon", "thomas", "lucas", "emma", "hugo", "chloe",
+			"louis", "ines", "jade", "gabriel", "arthur", "alice", "jules" };
+	private static final String[] LAST_NAMES = { "martin", "bernard", "thomas", "petit", "robert",
+			"richard", "durand", "dubois", "moreau", "laurent", "simon", "michel", "lefebvre", "leroy",
+			"roux", "david", "bertrand", "morel", "fournier", "girard", "bonnet", "dupont", "lambert",
+			"fontaine", "rousseau", "vincent", "muller", "lefevre", "faure", "andre", "mercier", "blanc",
+			"guerin", "boyer", "garnier", "chevalier", "francois", "legrand", "gauthier", "garcia" };
+
+	/**
+	 * Base logins with skewed frequencies, as in a real directory : a few names are very common.
+	 */
+	private static List<String> bases(int n, long seed) {
+		final Random random = new Random(seed);
+		final List<String> bases = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			final double f = random.nextDouble();
+			final double l = random.nextDouble();
+			bases.add(FIRST_NAMES[(int) (f * f * FIRST_NAMES.length)] + "." +
+					LAST_NAMES[(int) (l * l * l * LAST_NAMES.length)]);
+		}
+		return bases;
+	}
+
+	@Test
+	public void testSuffixes() {
+		final LoginAllocator allocator = new LoginAllocator(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+		assertEquals("jean.dupont", allocator.allocate("jean.dupont"));
+		assertEquals("jean.dupont2", allocator.allocate("jean.dupont"));
+		assertEquals("jean.dupont3", allocator.allocate("jean.dupont"));
+		assertEquals("marie.durand", allocator.allocate("marie.durand"));
+	}
+
+	@Test
+	public void testExistingLogins() {
+		final ConcurrentMap<Object, Object> logins = new ConcurrentHashMap<>();
+		final LoginAllocator allocator = new LoginAllocator(logins, new ConcurrentHashMap<>());
+		final Map<String, Integer> suffixes = new HashMap<>();
+		for (String login : new String[] { "jean.dupont", "jean.dupont7", "jean.dupont12", "marie.durand",
+				"agent007", "jean.dupont123456789" }) {
+			logins.put(login, "");
+			LoginAllocator.maxSuffix(login, suffixes);
+		}
+		assertEquals(Integer.valueOf(12), suffixes.get("jean.dupont"));
+		assertEquals(Integer.valueOf(7), suffixes.get("agent"));
+		for (Map.Entry<String, Integer> e : suffixes.entrySet()) {
+			allocator.updateCounter(e.getKey(), e.getValue());
+		}
+		allocator.updateCounter("jean.dupont", 3);
+		assertEquals("jean.dupont13", allocator.allocate("jean.dupont"));
+		// no counter for this base : the taken login moves to the next suffix
+		assertEquals("marie.durand2", allocator.allocate("marie.durand"));
+	}
+
+	@Test
+	public void testHundredThousandLogins() {
+		final int n = 100000;
+		final List<String> bases = bases(n, 42l);
+		final ConcurrentMap<Object, Object> logins = new ConcurrentHashMap<>();
+		final LoginAllocator allocator = new LoginAllocator(logins, new ConcurrentHashMap<>());
+		final Map<String, Integer> homonyms = new HashMap<>();
+		final long start = System.nanoTime();
+		for (String base : bases) {
+			final String login = allocator.allocate(base);
+			final Integer count = homonyms.get(base);
+			homonyms.put(base, (count == null) ? 1 : count + 1);
+			assertEquals((count == null) ? base : base + (count + 1), login);
+		}
+		final long duration = (System.nanoTime() - start) / 1000000;
+		assertEquals(n, logins.size());
+		int max = 0;
+		for (Integer count : homonyms.values()) {
+			max = Math.max(max, count);
+		}
+		assertTrue("not enough collisions to be realistic : " + max, max > 1000);
+		System.out.println("Allocated " + n + " logins (" + homonyms.size() + " bases, up to " + max +
+				" homonyms) in " + duration + " ms.");
+	}
+
+	@Test
+	public void testConcurrentAllocations() throws InterruptedException {
+		final int threads = 4;
+		final int n = 25000;
+		final ConcurrentMap<Object, Object> logins = new ConcurrentHashMap<>();
+		final LoginAllocator allocator = new LoginAllocator(logins, new ConcurrentHashMap<>());
+		final List<Set<String>> allocated = new ArrayList<>();
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final List<String> bases = bases(n, t);
+			final Set<String> mine = new HashSet<>();
+			allocated.add(mine);
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (String base : bases) {
+						mine.add(allocator.allocate(base));
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		done.await();
+		final Set<String> all = new HashSet<>();
+		for (Set<String> mine : allocated) {
+			assertEquals(n, mine.size());
+			all.addAll(mine);
+		}
+		assertEquals(threads * n, all.size());
+		assertEquals(threads * n, logins.size());
+	}
+
+}
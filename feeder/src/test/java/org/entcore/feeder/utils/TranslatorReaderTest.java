@@ -0,0 +1,91 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.feeder.utils;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.text.translate.CharSequenceTranslator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class TranslatorReaderTest {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final CharSequenceTranslator UNESCAPE = StringEscapeUtils.UNESCAPE_HTML4;
+
+	@Test
+	public void testEntitiesAcrossChunks() throws IOException {
+		final String entities = "&eacute;&amp;&#233;&quot;&#x00E9;";
+		for (int shift = 0; shift <= entities.length() + 1; shift++) {
+			final String input = repeat('a', BUFFER_SIZE - shift) + entities + repeat('b', BUFFER_SIZE) + entities;
+			assertEquals("shift " + shift, UNESCAPE.translate(input), read(new StringReader(input)));
+		}
+	}
+
+	@Test
+	public void testAmpersandWithoutEntity() throws IOException {
+		for (int shift = 0; shift <= 3; shift++) {
+			final String input = repeat('a', BUFFER_SIZE - shift) + "a & b &c" + repeat('b', 10) + " &";
+			assertEquals("shift " + shift, UNESCAPE.translate(input), read(new StringReader(input)));
+		}
+	}
+
+	@Test
+	public void testShortReads() throws IOException {
+		final String input = repeat('a', BUFFER_SIZE - 3) + "&eacute;" + repeat('b', 100) + "&amp;";
+		final Reader oneByOne = new StringReader(input) {
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				return super.read(cbuf, off, Math.min(len, 1));
+			}
+		};
+		assertEquals(UNESCAPE.translate(input), read(oneByOne));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		assertEquals("", read(new StringReader("")));
+	}
+
+	private static String read(Reader in) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		try (Reader reader = new TranslatorReader(in, UNESCAPE)) {
+			final char[] buf = new char[1000];
+			int n;
+			while ((n = reader.read(buf, 0, buf.length)) >= 0) {
+				sb.append(buf, 0, n);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String repeat(char c, int n) {
+		final StringBuilder sb = new StringBuilder(n);
+		for (int i = 0; i < n; i++) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+}
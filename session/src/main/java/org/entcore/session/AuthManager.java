@@ -23,9 +23,14 @@ import com.hazelcast.core.BaseMap;
 import com.hazelcast.core.IMap;
 import com.hazelcast.nio.serialization.HazelcastSerializationException;
 import fr.wseduc.mongodb.MongoDb;
+import org.entcore.session.codec.SessionCodec;
+import org.entcore.session.codec.SessionCodecFactory;
 import org.vertx.java.busmods.BusModBase;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.impl.BlockingAction;
 import org.vertx.java.core.impl.VertxInternal;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
@@ -37,22 +42,38 @@ import java.util.*;
 
 public class AuthManager extends BusModBase implements Handler<Message<JsonObject>> {
 
-	protected Map<String, String> sessions;
+	protected Map<String, Object> sessions;
 	protected Map<String, List<LoginInfo>> logins;
 
 	private static final long DEFAULT_SESSION_TIMEOUT = 30 * 60 * 1000;
+	private static final long DEFAULT_EXPIRY_TICK = 30 * 1000;
+	private static final int SEED_PAGE_SIZE = 1000;
 	private static final String SESSIONS_COLLECTION = "sessions";
+	private static final String INVALIDATION_ADDRESS = "wse.session.invalidate";
+	private static final String STRUCTURES_UPDATED_ADDRESS = "feeder.structures.updated";
+	private static final long DEFAULT_STRUCTURES_REFRESH_DELAY = 10 * 60 * 1000;
+	private static final long MIN_STRUCTURES_REFRESH_DELAY = 60 * 1000;
+	private static final long STRUCTURES_REFRESH_TIMEOUT = 60 * 1000;
 
 	private long sessionTimeout;
 	private String neo4jAddress;
 	private MongoDb mongo;
+	private SessionExpiryWheel expiryWheel;
+	private SessionCodec codec;
+	private SessionCodec jsonCodec;
+	private SessionCodec fallbackCodec;
+	private Map<String, Long> lastAccess;
+	private volatile Map<String, String> structureMapping;
+	private boolean refreshingStructures = false;
+	private long structuresRefreshedAt = 0;
+	private long expiryTimerId = -1;
 
 	private static final class LoginInfo implements Serializable {
-		final long timerId;
+		// uid of the former class with a timerId field, so that nodes of both versions share the logins map
+		private static final long serialVersionUID = 6786949219315231188L;
 		final String sessionId;
 
-		private LoginInfo(long timerId, String sessionId) {
-			this.timerId = timerId;
+		private LoginInfo(String sessionId) {
 			this.sessionId = sessionId;
 		}
 	}
@@ -69,11 +90,17 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 			ClusterManager cm = ((VertxInternal) vertx).clusterManager();
 			sessions = cm.getSyncMap("sessions");
 			logins = cm.getSyncMap("logins");
+			lastAccess = cm.getSyncMap("sessionsLastAccess");
 		} else {
 			sessions = new HashMap<>();
 			logins = new HashMap<>();
 		}
 		final String address = getOptionalStringConfig("address", "wse.session");
+		final String codecName = config.getString("session_codec", "json");
+		codec = SessionCodecFactory.getCodec(codecName);
+		jsonCodec = SessionCodecFactory.getCodec("json");
+		// entries written before a codec switch are read with the other codec
+		fallbackCodec = SessionCodecFactory.getCodec("binary".equals(codecName) ? "json" : "binary");
 		Number timeout = config.getNumber("session_timeout");
 		if (timeout != null) {
 			if (timeout instanceof Long) {
@@ -84,10 +111,129 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		} else {
 			this.sessionTimeout = DEFAULT_SESSION_TIMEOUT;
 		}
+		final long tick = Math.min(config.getLong("session_expiry_tick", DEFAULT_EXPIRY_TICK), sessionTimeout);
+		expiryWheel = new SessionExpiryWheel(sessionTimeout, tick, System.currentTimeMillis());
+		seedExpiryWheel();
+		expiryTimerId = vertx.setPeriodic(tick, new Handler<Long>() {
+			@Override
+			public void handle(Long timerId) {
+				for (String sessionId : expiryWheel.advance(System.currentTimeMillis())) {
+					expireSession(sessionId);
+				}
+			}
+		});
+
+		refreshStructureMapping();
+		vertx.setPeriodic(config.getLong("structures_refresh_delay", DEFAULT_STRUCTURES_REFRESH_DELAY),
+				new Handler<Long>() {
+			@Override
+			public void handle(Long timerId) {
+				refreshStructureMapping();
+			}
+		});
+		eb.registerHandler(STRUCTURES_UPDATED_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> event) {
+				refreshStructureMapping();
+			}
+		});
 
 		eb.registerLocalHandler(address, this);
 	}
 
+	/**
+	 * Tracks the sessions already in the cluster map (started node, rolling upgrade), from their last
+	 * access when it is known, from now otherwise, so that they expire even if never touched here.
+	 * Each node only seeds the sessions it owns in the cluster map, read page by page on a worker.
+	 */
+	@SuppressWarnings("unchecked")
+	private void seedExpiryWheel() {
+		if (lastAccess == null) {
+			return;
+		}
+		new BlockingAction<Map<String, Long>>((VertxInternal) vertx, new AsyncResultHandler<Map<String, Long>>() {
+			@Override
+			public void handle(AsyncResult<Map<String, Long>> event) {
+				if (event.failed()) {
+					logger.error("Error seeding session expiry.", event.cause());
+					return;
+				}
+				for (Map.Entry<String, Long> e : event.result().entrySet()) {
+					final Long previous = expiryWheel.touchUntil(e.getKey(), e.getValue());
+					if (previous != null && previous > e.getValue()) {
+						// touched here since the seed was read
+						expiryWheel.touchUntil(e.getKey(), previous);
+					}
+				}
+				logger.info("Session expiry seeded with " + event.result().size() + " existing sessions.");
+			}
+		}) {
+			@Override
+			public Map<String, Long> action() {
+				final long now = System.currentTimeMillis();
+				final Set<String> keys = (sessions instanceof IMap) ?
+						((IMap<String, Object>) sessions).localKeySet() : sessions.keySet();
+				final Map<String, Long> deadlines = new HashMap<>();
+				final Set<String> page = new HashSet<>();
+				final Iterator<String> it = keys.iterator();
+				while (it.hasNext()) {
+					page.add(it.next());
+					if (page.size() == SEED_PAGE_SIZE || !it.hasNext()) {
+						final Map<String, Long> accesses = (lastAccess instanceof IMap) ?
+								((IMap<String, Long>) lastAccess).getAll(page) : null;
+						for (String sessionId : page) {
+							final Long last = (accesses != null) ? accesses.get(sessionId) : lastAccess.get(sessionId);
+							deadlines.put(sessionId, ((last != null) ? last : now) + sessionTimeout);
+						}
+						page.clear();
+					}
+				}
+				return deadlines;
+			}
+		}.run();
+	}
+
+	private void refreshStructureMapping() {
+		if (refreshingStructures) {
+			return;
+		}
+		refreshingStructures = true;
+		final String query = "MATCH (s:Structure) return s.id as id, s.externalId as externalId";
+		JsonArray statements = new JsonArray().add(new JsonObject().putString("statement", query));
+		final JsonObject jo = new JsonObject()
+				.putString("action", "executeTransaction")
+				.putArray("statements", statements)
+				.putBoolean("commit", true);
+		eb.sendWithTimeout(neo4jAddress, jo, STRUCTURES_REFRESH_TIMEOUT, new Handler<AsyncResult<Message<JsonObject>>>() {
+			@Override
+			public void handle(AsyncResult<Message<JsonObject>> ar) {
+				refreshingStructures = false;
+				if (ar.failed()) {
+					logger.error("Error loading structures mapping : " + ar.cause().getMessage());
+					return;
+				}
+				final Message<JsonObject> message = ar.result();
+				structuresRefreshedAt = System.currentTimeMillis();
+				JsonArray results = message.body().getArray("results");
+				if ("ok".equals(message.body().getString("status")) && results != null && results.size() == 1) {
+					structureMapping = structureMapping(results.<JsonArray>get(0));
+				} else {
+					logger.error("Error loading structures mapping : " + message.body().getString("message"));
+				}
+			}
+		});
+	}
+
+	private static Map<String, String> structureMapping(JsonArray structures) {
+		final Map<String, String> mapping = new HashMap<>(structures.size() * 2);
+		for (Object o : structures) {
+			if (!(o instanceof JsonObject)) continue;
+			JsonObject jsonObject = (JsonObject) o;
+			mapping.put(jsonObject.getString("externalId"), jsonObject.getString("id"));
+		}
+		return Collections.unmodifiableMap(mapping);
+	}
+
 	@Override
 	public void handle(Message<JsonObject> message) {
 		String action = message.body().getString("action");
@@ -119,6 +265,9 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		case "removeAttribute":
 			doRemoveAttribute(message);
 			break;
+		case "stats":
+			doStats(message);
+			break;
 		default:
 			sendError(message, "Invalid action: " + action);
 		}
@@ -184,6 +333,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 			sendError(message, "Session not found.");
 			return;
 		}
+		touchSession(info.sessionId);
 		sendOK(message, new JsonObject().putString("status", "ok").putObject("session", session));
 	}
 
@@ -195,13 +345,23 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		return null;
 	}
 
-	private JsonObject unmarshal(String s) {
+	private JsonObject unmarshal(Object s) {
 		if (s != null) {
-			return new JsonObject(s);
+			final JsonObject session = codec.decode(s);
+			return (session != null) ? session : fallbackCodec.decode(s);
 		}
 		return null;
 	}
 
+	private Object marshal(JsonObject session) {
+		try {
+			return codec.encode(session);
+		} catch (IllegalStateException e) {
+			logger.warn("Error encoding session " + session.getString("userId") + ", stored as json.", e);
+			return jsonCodec.encode(session);
+		}
+	}
+
 	private void doFind(final Message<JsonObject> message) {
 		final String sessionId = message.body().getString("sessionId");
 		if (sessionId == null || sessionId.trim().isEmpty()) {
@@ -276,10 +436,51 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 				}
 			});
 		} else {
+			touchSession(sessionId);
 			sendOK(message, new JsonObject().putString("status", "ok").putObject("session", session));
 		}
 	}
 
+	private void touchSession(String sessionId) {
+		final long now = System.currentTimeMillis();
+		final Long previous = expiryWheel.touch(sessionId, now);
+		if (lastAccess != null && (previous == null ||
+				now + sessionTimeout - previous >= expiryWheel.getTick())) {
+			lastAccess.put(sessionId, now);
+		}
+	}
+
+	private void expireSession(String sessionId) {
+		if (lastAccess != null) {
+			final Long last = lastAccess.get(sessionId);
+			if (last != null && last + sessionTimeout > System.currentTimeMillis()) {
+				// used on another node since the last access seen here
+				expiryWheel.touchUntil(sessionId, last + sessionTimeout);
+				return;
+			}
+			lastAccess.remove(sessionId);
+		}
+		JsonObject s = null;
+		try {
+			s = unmarshal(sessions.remove(sessionId));
+		} catch (HazelcastSerializationException e) {
+			logger.warn("Error in deserializing expired hazelcast session " + sessionId);
+		}
+		if (s != null) {
+			removeLoginInfo(sessionId, s.getString("userId"));
+		}
+		publishInvalidation(new JsonArray().addString(sessionId));
+	}
+
+	private void doStats(Message<JsonObject> message) {
+		sendOK(message, new JsonObject()
+				.putNumber("trackedSessions", expiryWheel.size())
+				.putNumber("scheduledEntries", expiryWheel.scheduledCount())
+				.putNumber("wheelSlots", expiryWheel.slotsCount())
+				.putNumber("wheelTick", expiryWheel.getTick())
+				.putNumber("timers", (expiryTimerId >= 0) ? 1 : 0));
+	}
+
 	private void doCreate(final Message<JsonObject> message) {
 		final String userId = message.body().getString("userId");
 		final String sessionIndex = message.body().getString("SessionIndex");
@@ -310,22 +511,17 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 			@Override
 			public void handle(JsonObject infos) {
 				if (infos != null) {
-					long timerId = vertx.setTimer(sessionTimeout, new Handler<Long>() {
-						public void handle(Long timerId) {
-							logins.remove(userId);
-							sessions.remove(sessionId);
-						}
-					});
+					touchSession(sessionId);
 					try {
-						sessions.put(sessionId, infos.encode());
-						addLoginInfo(userId, timerId, sessionId);
+						sessions.put(sessionId, marshal(infos));
+						addLoginInfo(userId, sessionId);
 					} catch (HazelcastSerializationException e) {
 						logger.error("Error putting session in hazelcast map");
 						try {
 							if (sessions instanceof IMap) {
-								((IMap) sessions).putAsync(sessionId, infos.encode());
+								((IMap) sessions).putAsync(sessionId, marshal(infos));
 							}
-							addLoginInfo(userId, timerId, sessionId);
+							addLoginInfo(userId, sessionId);
 						} catch (HazelcastSerializationException e1) {
 							logger.error("Error putting async session in hazelcast map", e1);
 						}
@@ -351,12 +547,12 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		});
 	}
 
-	private void addLoginInfo(String userId, long timerId, String sessionId) {
+	private void addLoginInfo(String userId, String sessionId) {
 		List<LoginInfo> loginInfos = logins.get(userId);
 		if (loginInfos == null) {
 			loginInfos = new ArrayList<>();
 		}
-		loginInfos.add(new LoginInfo(timerId, sessionId));
+		loginInfos.add(new LoginInfo(sessionId));
 		logins.put(userId, loginInfos);
 	}
 
@@ -384,9 +580,9 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 
 	private void dropSession(Message<JsonObject> message, String sessionId, JsonObject meta) {
 		mongo.delete(SESSIONS_COLLECTION, new JsonObject().putString("_id", sessionId));
-		JsonObject session =  null;
+		Object session =  null;
 		try {
-			session = unmarshal(sessions.get(sessionId));
+			session = sessions.get(sessionId);
 		} catch (HazelcastSerializationException e) {
 			try {
 				if (sessions instanceof BaseMap) {
@@ -403,16 +599,21 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 			return;
 		}
 
+		// removed even when it can not be decoded
 		JsonObject s =  unmarshal(sessions.remove(sessionId));
+		publishInvalidation(new JsonArray().addString(sessionId));
+		expiryWheel.remove(sessionId);
+		if (lastAccess != null) {
+			lastAccess.remove(sessionId);
+		}
 		if (s != null) {
 			final String userId = s.getString("userId");
-			LoginInfo info = removeLoginInfo(sessionId, userId);
+			removeLoginInfo(sessionId, userId);
 			if (config.getBoolean("slo", false)) {
 				eb.send("cas", new JsonObject().putString("action", "logout").putString("userId", userId));
 			}
-			if (info != null) {
-				vertx.cancelTimer(info.timerId);
-			}
+		} else {
+			logger.warn("Dropped session " + sessionId + " could not be decoded.");
 		}
 		JsonObject res = new JsonObject().putString("status", "ok");
 		if (meta != null) {
@@ -508,13 +709,20 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 			sendError(message, "[updateSessionByUserId] info is null - Invalid userId : " + message.body().encode());
 			return;
 		}
+		JsonArray sessionIds = new JsonArray();
 		for (LoginInfo info : infos) {
 			try {
-				sessions.put(info.sessionId, session.encode());
+				sessions.put(info.sessionId, marshal(session));
 			} catch (HazelcastSerializationException e) {
 				logger.error("Error putting session in hazelcast map : " + info.sessionId, e);
 			}
+			sessionIds.addString(info.sessionId);
 		}
+		publishInvalidation(sessionIds);
+	}
+
+	private void publishInvalidation(JsonArray sessionIds) {
+		eb.publish(INVALIDATION_ADDRESS, new JsonObject().putArray("sessionIds", sessionIds));
 	}
 
 	private void doRemoveAttribute(Message<JsonObject> message) {
@@ -572,32 +780,38 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 					"application: app.name, " +
 					"mandatory: ANY(a IN authorizations WHERE HAS(a.mandatory) AND a.mandatory = true)"+
 				"}) as widgets";
-		final String query4 = "MATCH (s:Structure) return s.id as id, s.externalId as externalId";
-		final String query5 = "MATCH (u:User {id: {id}})-[:PREFERS]->(uac:UserAppConf) RETURN uac AS preferences";
+		final String query4 = "MATCH (u:User {id: {id}})-[:PREFERS]->(uac:UserAppConf) RETURN uac AS preferences";
+		final String query5 = "MATCH (s:Structure) return s.id as id, s.externalId as externalId";
 		JsonObject params = new JsonObject();
 		params.putString("id", userId);
+		final Map<String, String> loadedMapping = this.structureMapping;
 		JsonArray statements = new JsonArray()
 				.add(new JsonObject().putString("statement", query).putObject("parameters", params))
 				.add(new JsonObject().putString("statement", query2).putObject("parameters", params))
 				.add(new JsonObject().putString("statement", query3).putObject("parameters", params))
-				.add(new JsonObject().putString("statement", query4))
-				.add(new JsonObject().putString("statement", query5).putObject("parameters", params));
+				.add(new JsonObject().putString("statement", query4).putObject("parameters", params));
+		if (loadedMapping == null) {
+			statements.add(new JsonObject().putString("statement", query5));
+		}
+		final int nbStatements = statements.size();
 		executeTransaction(statements, null, true, new Handler<Message<JsonObject>>() {
 
 			@Override
 			public void handle(Message<JsonObject> message) {
 				JsonArray results = message.body().getArray("results");
-				if ("ok".equals(message.body().getString("status")) && results != null && results.size() == 5 &&
+				if ("ok".equals(message.body().getString("status")) && results != null &&
+						results.size() == nbStatements &&
 						results.<JsonArray>get(0).size() > 0 && results.<JsonArray>get(1).size() > 0) {
 					JsonObject j = results.<JsonArray>get(0).get(0);
 					JsonObject j2 = results.<JsonArray>get(1).get(0);
 					JsonObject j3 = results.<JsonArray>get(2).get(0);
-					JsonObject structureMapping = new JsonObject();
-					for (Object o : results.<JsonArray>get(3)) {
-						if (!(o instanceof JsonObject)) continue;
-						JsonObject jsonObject = (JsonObject) o;
-						structureMapping.putString(jsonObject.getString("externalId"), jsonObject.getString("id"));
+					Map<String, String> mapping = loadedMapping;
+					if (mapping == null) {
+						mapping = structureMapping(results.<JsonArray>get(4));
+						structureMapping = mapping;
+						structuresRefreshedAt = System.currentTimeMillis();
 					}
+					boolean unknownStructure = false;
 					j.putString("userId", userId);
 					JsonObject functions = new JsonObject();
 					JsonArray actions = new JsonArray();
@@ -647,10 +861,12 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 							}
 							jo.getArray("structureExternalIds").addString(sf[0]);
 							subject.getArray("structureExternalIds").addString(sf[0]);
-							String sid = structureMapping.getString(sf[0]);
+							String sid = mapping.get(sf[0]);
 							if (sid != null) {
 								jo.getArray("scope").addString(sid);
 								subject.getArray("scope").addString(sid);
+							} else {
+								unknownStructure = true;
 							}
 						}
 					}
@@ -669,10 +885,14 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 					j.putObject("functions", functions);
 					j.putArray("authorizedActions", actions);
 					j.putArray("apps", apps);
-					final JsonObject cache = (results.<JsonArray>get(4) != null && results.<JsonArray>get(4).size() > 0 &&
-							results.<JsonArray>get(4).get(0) != null) ? results.<JsonArray>get(4).<JsonObject>get(0) : new JsonObject();
+					final JsonObject cache = (results.<JsonArray>get(3) != null && results.<JsonArray>get(3).size() > 0 &&
+							results.<JsonArray>get(3).get(0) != null) ? results.<JsonArray>get(3).<JsonObject>get(0) : new JsonObject();
 					j.putObject("cache", cache);
 					j.putArray("widgets", j3.getArray("widgets", new JsonArray()));
+					if (unknownStructure && System.currentTimeMillis() - structuresRefreshedAt > MIN_STRUCTURES_REFRESH_DELAY) {
+						// structure created since the last refresh, the next sessions will get its scope
+						refreshStructureMapping();
+					}
 					handler.handle(j);
 				} else {
 					handler.handle(null);
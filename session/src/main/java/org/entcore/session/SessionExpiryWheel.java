@@ -0,0 +1,125 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Idle expiry of sessions tracked in a hashed timing wheel driven by a single periodic timer.
+ * A touch only updates the session deadline; the session is moved to its new slot lazily,
+ * when its old slot is swept. Not thread safe : must be used from the owning verticle.
+ */
+public class SessionExpiryWheel {
+
+	private final long tick;
+	private final long idleTimeout;
+	private final List<Set<String>> slots;
+	private final Map<String, Long> deadlines = new HashMap<>();
+	private long lastTick;
+
+	public SessionExpiryWheel(long idleTimeout, long tick, long now) {
+		this.idleTimeout = idleTimeout;
+		this.tick = tick;
+		final int size = (int) (idleTimeout / tick) + 2;
+		this.slots = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			slots.add(new HashSet<String>());
+		}
+		this.lastTick = now / tick;
+	}
+
+	/**
+	 * Pushes back the deadline of the session.
+	 * @return the previous deadline, or null if the session was not tracked.
+	 */
+	public Long touch(String sessionId, long now) {
+		return touchUntil(sessionId, now + idleTimeout);
+	}
+
+	public Long touchUntil(String sessionId, long deadline) {
+		final Long previous = deadlines.put(sessionId, deadline);
+		if (previous == null) {
+			schedule(sessionId, deadline);
+		}
+		return previous;
+	}
+
+	public void remove(String sessionId) {
+		deadlines.remove(sessionId);
+	}
+
+	/**
+	 * Sweeps the slots elapsed since the last call.
+	 * @return the sessions whose deadline is reached, which are no longer tracked.
+	 */
+	public List<String> advance(long now) {
+		final List<String> expired = new ArrayList<>();
+		final long currentTick = now / tick;
+		for (long t = lastTick + 1; t <= currentTick; t++) {
+			final int idx = (int) (t % slots.size());
+			final Set<String> slot = slots.get(idx);
+			if (slot.isEmpty()) continue;
+			slots.set(idx, new HashSet<String>());
+			for (String sessionId : slot) {
+				final Long deadline = deadlines.get(sessionId);
+				if (deadline == null) continue;
+				if (deadline <= now) {
+					deadlines.remove(sessionId);
+					expired.add(sessionId);
+				} else {
+					schedule(sessionId, deadline);
+				}
+			}
+		}
+		lastTick = Math.max(lastTick, currentTick);
+		return expired;
+	}
+
+	private void schedule(String sessionId, long deadline) {
+		final long t = Math.max(deadline / tick + 1, lastTick + 1);
+		slots.get((int) (t % slots.size())).add(sessionId);
+	}
+
+	public int size() {
+		return deadlines.size();
+	}
+
+	public int slotsCount() {
+		return slots.size();
+	}
+
+	public int scheduledCount() {
+		int count = 0;
+		for (Set<String> slot : slots) {
+			count += slot.size();
+		}
+		return count;
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+}
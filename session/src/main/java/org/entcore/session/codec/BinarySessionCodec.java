@@ -0,0 +1,276 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.session.codec;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a session, stored as a byte array.
+ * Each distinct string (field names, action names and types, application addresses...) is written
+ * once per session, the next occurrences are written as an index in the table of already written strings.
+ */
+public class BinarySessionCodec implements SessionCodec {
+
+	private static final Logger log = LoggerFactory.getLogger(BinarySessionCodec.class);
+	private static final byte VERSION = 1;
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte STRING_REF = 2;
+	private static final byte TRUE = 3;
+	private static final byte FALSE = 4;
+	private static final byte INT = 5;
+	private static final byte LONG = 6;
+	private static final byte DOUBLE = 7;
+	private static final byte OBJECT = 8;
+	private static final byte ARRAY = 9;
+
+	@Override
+	public Object encode(JsonObject session) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		final Encoder encoder = new Encoder(new DataOutputStream(bytes));
+		try {
+			encoder.out.writeByte(VERSION);
+			encoder.writeObject(session);
+			encoder.out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Error encoding session.", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public JsonObject decode(Object value) {
+		if (!(value instanceof byte[])) {
+			return null;
+		}
+		final Decoder decoder = new Decoder(new DataInputStream(new ByteArrayInputStream((byte[]) value)));
+		try {
+			// an unknown version is handled as a missing session, which is then restored
+			if (decoder.in.readByte() != VERSION || decoder.in.readByte() != OBJECT) {
+				return null;
+			}
+			return decoder.readObject();
+		} catch (IOException | RuntimeException e) {
+			log.error("Error decoding session.", e);
+			return null;
+		}
+	}
+
+	private static final class Encoder {
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings = new HashMap<>();
+
+		private Encoder(DataOutputStream out) {
+			this.out = out;
+		}
+
+		private void writeObject(JsonObject o) throws IOException {
+			out.writeByte(OBJECT);
+			writeVarInt(o.size());
+			for (String field : o.getFieldNames()) {
+				writeString(field);
+				writeValue(o.getValue(field));
+			}
+		}
+
+		private void writeArray(JsonArray a) throws IOException {
+			out.writeByte(ARRAY);
+			writeVarInt(a.size());
+			for (Object v : a) {
+				writeValue(v);
+			}
+		}
+
+		private void writeValue(Object v) throws IOException {
+			if (v == null) {
+				out.writeByte(NULL);
+			} else if (v instanceof String) {
+				writeString((String) v);
+			} else if (v instanceof JsonObject) {
+				writeObject((JsonObject) v);
+			} else if (v instanceof JsonArray) {
+				writeArray((JsonArray) v);
+			} else if (v instanceof Boolean) {
+				out.writeByte(((Boolean) v) ? TRUE : FALSE);
+			} else if (v instanceof Integer || v instanceof Short || v instanceof Byte) {
+				out.writeByte(INT);
+				out.writeInt(((Number) v).intValue());
+			} else if (v instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) v);
+			} else if (v instanceof Number) {
+				out.writeByte(DOUBLE);
+				out.writeDouble(((Number) v).doubleValue());
+			} else {
+				throw new IOException("Unsupported session value type : " + v.getClass().getName());
+			}
+		}
+
+		private void writeString(String s) throws IOException {
+			final Integer idx = strings.get(s);
+			if (idx != null) {
+				out.writeByte(STRING_REF);
+				writeVarInt(idx);
+			} else {
+				strings.put(s, strings.size());
+				final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+				out.writeByte(STRING);
+				writeVarInt(b.length);
+				out.write(b);
+			}
+		}
+
+		private void writeVarInt(int v) throws IOException {
+			while ((v & ~0x7F) != 0) {
+				out.writeByte((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			out.writeByte(v);
+		}
+	}
+
+	private static final class Decoder {
+		private final DataInputStream in;
+		private final List<String> strings = new ArrayList<>();
+
+		private Decoder(DataInputStream in) {
+			this.in = in;
+		}
+
+		private JsonObject readObject() throws IOException {
+			final int size = readVarInt();
+			final JsonObject o = new JsonObject();
+			for (int i = 0; i < size; i++) {
+				final String field = readString(in.readByte());
+				final byte type = in.readByte();
+				switch (type) {
+					case NULL:
+						o.putString(field, null);
+						break;
+					case STRING:
+					case STRING_REF:
+						o.putString(field, readString(type));
+						break;
+					case TRUE:
+					case FALSE:
+						o.putBoolean(field, type == TRUE);
+						break;
+					case INT:
+						o.putNumber(field, in.readInt());
+						break;
+					case LONG:
+						o.putNumber(field, in.readLong());
+						break;
+					case DOUBLE:
+						o.putNumber(field, in.readDouble());
+						break;
+					case OBJECT:
+						o.putObject(field, readObject());
+						break;
+					case ARRAY:
+						o.putArray(field, readArray());
+						break;
+					default:
+						throw new IOException("Invalid value type : " + type);
+				}
+			}
+			return o;
+		}
+
+		private JsonArray readArray() throws IOException {
+			final int size = readVarInt();
+			final JsonArray a = new JsonArray();
+			for (int i = 0; i < size; i++) {
+				final byte type = in.readByte();
+				switch (type) {
+					case NULL:
+						a.addString(null);
+						break;
+					case STRING:
+					case STRING_REF:
+						a.addString(readString(type));
+						break;
+					case TRUE:
+					case FALSE:
+						a.addBoolean(type == TRUE);
+						break;
+					case INT:
+						a.addNumber(in.readInt());
+						break;
+					case LONG:
+						a.addNumber(in.readLong());
+						break;
+					case DOUBLE:
+						a.addNumber(in.readDouble());
+						break;
+					case OBJECT:
+						a.addObject(readObject());
+						break;
+					case ARRAY:
+						a.addArray(readArray());
+						break;
+					default:
+						throw new IOException("Invalid value type : " + type);
+				}
+			}
+			return a;
+		}
+
+		private String readString(byte type) throws IOException {
+			if (type == STRING_REF) {
+				return strings.get(readVarInt());
+			} else if (type != STRING) {
+				throw new IOException("Invalid string type : " + type);
+			}
+			final byte[] b = new byte[readVarInt()];
+			in.readFully(b);
+			final String s = new String(b, StandardCharsets.UTF_8);
+			strings.add(s);
+			return s;
+		}
+
+		private int readVarInt() throws IOException {
+			int v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = in.readByte();
+				v |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return v;
+		}
+	}
+
+}
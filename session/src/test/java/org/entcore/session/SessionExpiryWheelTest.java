@@ -0,0 +1,87 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.session;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionExpiryWheelTest {
+
+	private static final long TIMEOUT = 30 * 60 * 1000;
+	private static final long TICK = 30 * 1000;
+
+	@Test
+	public void expireAfterIdleTimeout() {
+		final SessionExpiryWheel wheel = new SessionExpiryWheel(TIMEOUT, TICK, 0);
+		assertNull(wheel.touch("s1", 0));
+		assertTrue(wheel.advance(TIMEOUT - 1).isEmpty());
+		assertEquals(Collections.singletonList("s1"), wheel.advance(TIMEOUT + TICK));
+		assertEquals(0, wheel.size());
+		assertTrue(wheel.advance(2 * TIMEOUT + 2 * TICK).isEmpty());
+	}
+
+	@Test
+	public void touchSlidesTheDeadline() {
+		final SessionExpiryWheel wheel = new SessionExpiryWheel(TIMEOUT, TICK, 0);
+		wheel.touch("s1", 0);
+		assertEquals(Long.valueOf(TIMEOUT), wheel.touch("s1", TIMEOUT - TICK));
+		assertTrue(wheel.advance(TIMEOUT + TICK).isEmpty());
+		assertEquals(1, wheel.size());
+		assertTrue(wheel.advance(2 * TIMEOUT - 2 * TICK).isEmpty());
+		assertEquals(Collections.singletonList("s1"), wheel.advance(2 * TIMEOUT + TICK));
+	}
+
+	@Test
+	public void touchUntilSeedsAnExistingSession() {
+		final SessionExpiryWheel wheel = new SessionExpiryWheel(TIMEOUT, TICK, 10 * TICK);
+		wheel.touchUntil("old", 3 * TICK);
+		wheel.touchUntil("recent", 10 * TICK + TIMEOUT);
+		assertEquals(Collections.singletonList("old"), wheel.advance(11 * TICK));
+		assertEquals(1, wheel.size());
+	}
+
+	@Test
+	public void removeStopsTracking() {
+		final SessionExpiryWheel wheel = new SessionExpiryWheel(TIMEOUT, TICK, 0);
+		wheel.touch("s1", 0);
+		wheel.remove("s1");
+		assertEquals(0, wheel.size());
+		assertTrue(wheel.advance(TIMEOUT + TICK).isEmpty());
+	}
+
+	@Test
+	public void advanceOverSeveralTurns() {
+		final SessionExpiryWheel wheel = new SessionExpiryWheel(TIMEOUT, TICK, 0);
+		for (int i = 0; i < 100; i++) {
+			wheel.touch("s" + i, i * TICK);
+		}
+		final List<String> expired = wheel.advance(10 * TIMEOUT);
+		assertEquals(100, expired.size());
+		assertEquals(0, wheel.size());
+		assertEquals(0, wheel.scheduledCount());
+	}
+
+}
@@ -0,0 +1,107 @@
+/* Copyright © WebServices pour l'Éducation, 2014
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+
+package org.entcore.session.codec;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinarySessionCodecTest {
+
+	private final SessionCodec codec = new BinarySessionCodec();
+
+	private static JsonObject session() {
+		final JsonArray actions = new JsonArray();
+		for (int i = 0; i < 200; i++) {
+			actions.addObject(new JsonObject()
+					.putString("name", "org.entcore.app" + (i % 10) + ".Controller|action" + i)
+					.putString("displayName", "app.action" + i)
+					.putString("type", "SECURED_ACTION_WORKFLOW"));
+		}
+		return new JsonObject()
+				.putString("userId", "7b6dbd7e-e8f4-4ab6-8e2b-4d4e6bc2b3d2")
+				.putString("firstName", "Éloïse")
+				.putString("lastName", "长城")
+				.putString("level", "")
+				.putString("birthDate", null)
+				.putBoolean("federated", false)
+				.putBoolean("hasPw", true)
+				.putNumber("int", 42)
+				.putNumber("negative", -1)
+				.putNumber("long", 1L << 40)
+				.putNumber("double", 3.5d)
+				.putArray("classes", new JsonArray().addString("c1").addString(null).addString("c1"))
+				.putArray("empty", new JsonArray())
+				.putArray("nested", new JsonArray().addArray(new JsonArray().addNumber(1).addBoolean(true))
+						.addObject(new JsonObject().putString("k", "v")))
+				.putObject("cache", new JsonObject())
+				.putObject("functions", new JsonObject().putObject("ADMIN_LOCAL", new JsonObject()
+						.putString("code", "ADMIN_LOCAL")
+						.putArray("scope", new JsonArray().addString("s1"))))
+				.putArray("authorizedActions", actions);
+	}
+
+	@Test
+	public void roundTrip() {
+		final JsonObject session = session();
+		final Object encoded = codec.encode(session);
+		assertTrue(encoded instanceof byte[]);
+		assertEquals(session, codec.decode(encoded));
+	}
+
+	@Test
+	public void roundTripEmptySession() {
+		final JsonObject session = new JsonObject();
+		assertEquals(session, codec.decode(codec.encode(session)));
+	}
+
+	@Test
+	public void encodedSmallerThanJson() {
+		final JsonObject session = session();
+		final byte[] encoded = (byte[]) codec.encode(session);
+		assertTrue(encoded.length < session.encode().getBytes().length);
+	}
+
+	@Test
+	public void decodeOtherRepresentations() {
+		assertNull(codec.decode(session().encode()));
+		assertNull(codec.decode(null));
+		assertNull(codec.decode(new byte[] { 2, 8, 0 }));
+		assertNull(codec.decode(new byte[] { 1, 8, 5 }));
+	}
+
+	@Test
+	public void jsonCodecFallsBackToNullOnBinary() {
+		final SessionCodec json = new JsonSessionCodec();
+		assertNull(json.decode(codec.encode(session())));
+		assertNull(json.decode("not json"));
+		assertEquals(session(), json.decode(json.encode(session())));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void encodeUnsupportedValue() {
+		codec.encode(new JsonObject().putBinary("bin", new byte[] { 1, 2, 3 }));
+	}
+
+}
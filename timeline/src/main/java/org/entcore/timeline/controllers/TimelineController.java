@@ -26,8 +26,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import fr.wseduc.bus.BusAddress;
 import fr.wseduc.rs.Get;
@@ -43,7 +43,6 @@ import fr.wseduc.webutils.request.RequestUtils;
 
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
-import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.http.RouteMatcher;
@@ -54,6 +53,7 @@ import org.vertx.java.core.spi.cluster.ClusterManager;
 import org.vertx.java.platform.Container;
 
 import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.MustacheException;
 import com.samskivert.mustache.Template;
 import com.samskivert.mustache.Template.Fragment;
 
@@ -80,6 +80,11 @@ public class TimelineController extends BaseController {
 	private ConcurrentMap<String, String> eventsI18n;
 	private HashMap<String, JsonObject> lazyEventsI18n = new HashMap<>();
 	private Map<String, String> registeredNotifications;
+	private final ConcurrentMap<String, CompiledNotification> compiledNotifications = new ConcurrentHashMap<>();
+	private final Mustache.Compiler notificationsCompiler = Mustache.compiler().defaultValue("");
+	private final ConcurrentMap<String, Template> compiledFragments = new ConcurrentHashMap<>();
+	private final Mustache.Compiler fragmentsCompiler = Mustache.compiler();
+	private static final int MAX_COMPILED_FRAGMENTS = 5000;
 	private Set<String> antiFlood;
 
 	//Declaring a TimelineHelper ensures the loading of the i18n/timeline folder.
@@ -90,6 +95,16 @@ public class TimelineController extends BaseController {
 
 	private TimelineMailer mailer;
 
+	private static final class CompiledNotification {
+		private final String source;
+		private final Template template;
+
+		private CompiledNotification(String source, Template template) {
+			this.source = source;
+			this.template = template;
+		}
+	}
+
 	public void init(Vertx vertx, Container container, RouteMatcher rm,
 			Map<String, fr.wseduc.webutils.security.SecuredAction> securedActions) {
 		super.init(vertx, container, rm, securedActions);
@@ -138,7 +153,7 @@ public class TimelineController extends BaseController {
 				if (translatedContents.equals(key)) {
 					translatedContents = timelineI18n.getString(key, key);
 				}
-				Mustache.compiler().compile(translatedContents).execute(ctx, out);
+				getFragmentTemplate(translatedContents).execute(ctx, out);
 			}
 		});
 
@@ -156,7 +171,7 @@ public class TimelineController extends BaseController {
 				String nestedTemplateName = frag.execute();
 				String nestedTemplate = (String) ctx.get(nestedTemplateName);
 				if(nestedTemplate != null)
-					Mustache.compiler().compile(nestedTemplate).execute(ctx, out);
+					getFragmentTemplate(nestedTemplate).execute(ctx, out);
 			}
 		});
 
@@ -167,9 +182,7 @@ public class TimelineController extends BaseController {
 				try {
 					JsonObject nestedTemplate = (JsonObject) nestedArray.get(Integer.parseInt(nestedTemplatePos) - 1);
 					ctx.putAll(nestedTemplate.getObject("params", new JsonObject()).toMap());
-					Mustache.compiler()
-						.compile(nestedTemplate.getString("template", ""))
-						.execute(ctx, out);
+					getFragmentTemplate(nestedTemplate.getString("template", "")).execute(ctx, out);
 				} catch(NumberFormatException e) {
 					log.error("Mustache compiler error while parsing a nested template array lambda.");
 				}
@@ -248,24 +261,10 @@ public class TimelineController extends BaseController {
 									if (res != null && "ok".equals(res.getString("status"))) {
 										JsonArray results = res.getArray("results", new JsonArray());
 										final JsonArray compiledResults = new JsonArray();
-
-										final AtomicInteger countdown = new AtomicInteger(results.size());
-										final VoidHandler endHandler = new VoidHandler() {
-											protected void handle() {
-												if (countdown.decrementAndGet() <= 0) {
-													res.putArray("results", compiledResults);
-													renderJson(request, res);
-												}
-											}
-										};
-										if (results.size() == 0)
-											endHandler.handle(null);
-
 										for (Object notifObj : results) {
 											final JsonObject notif = (JsonObject) notifObj;
 											if (!notif.getString("message", "").isEmpty()) {
 												compiledResults.add(notif);
-												endHandler.handle(null);
 												continue;
 											}
 
@@ -273,23 +272,22 @@ public class TimelineController extends BaseController {
 												+ "."
 												+ notif.getString("event-type", "").toLowerCase();
 
-											String stringifiedRegisteredNotif = registeredNotifications.get(key);
-											if (stringifiedRegisteredNotif == null) {
-												log.error("Failed to retrieve registered from the shared map notification with key : " + key);
-												endHandler.handle(null);
-												continue;
-											}
-											JsonObject registeredNotif = new JsonObject(stringifiedRegisteredNotif);
-
-											StringReader reader = new StringReader(registeredNotif.getString("template", ""));
-											processTemplate(request,notif.getObject("params",new JsonObject()),key, reader, new Handler<Writer>() {
-												public void handle(Writer writer) {
-													notif.putString("message", writer.toString());
-													compiledResults.add(notif);
-													endHandler.handle(null);
+											try {
+												Template template = getNotificationTemplate(key);
+												if (template == null) {
+													log.error("Failed to retrieve registered from the shared map notification with key : " + key);
+													continue;
 												}
-											});
+												Map<String, Object> ctx = notif.getObject("params", new JsonObject()).toMap();
+												setLambdaTemplateRequest(request, ctx);
+												notif.putString("message", template.execute(ctx));
+												compiledResults.add(notif);
+											} catch (MustacheException e) {
+												log.error("Error processing notification template " + key, e);
+											}
 										}
+										res.putArray("results", compiledResults);
+										renderJson(request, res);
 									} else {
 										renderError(request, res);
 									}
@@ -305,6 +303,42 @@ public class TimelineController extends BaseController {
 		});
 	}
 
+	/**
+	 * Returns the compiled template of the registered notification, compiled again only
+	 * when the registration found in the shared map has changed.
+	 */
+	private Template getNotificationTemplate(String key) {
+		final String registered = registeredNotifications.get(key);
+		if (registered == null) {
+			compiledNotifications.remove(key);
+			return null;
+		}
+		CompiledNotification compiled = compiledNotifications.get(key);
+		if (compiled == null || !registered.equals(compiled.source)) {
+			final String template = new JsonObject(registered).getString("template", "");
+			compiled = new CompiledNotification(registered, notificationsCompiler.compile(template));
+			compiledNotifications.put(key, compiled);
+		}
+		return compiled.template;
+	}
+
+	/**
+	 * Returns the compiled template of a translation or nested template, keyed by its source.
+	 * The sources come from the i18n files and the registered notifications, the cache is
+	 * only cleared if it ever grows past MAX_COMPILED_FRAGMENTS.
+	 */
+	private Template getFragmentTemplate(String source) {
+		Template template = compiledFragments.get(source);
+		if (template == null) {
+			if (compiledFragments.size() >= MAX_COMPILED_FRAGMENTS) {
+				compiledFragments.clear();
+			}
+			template = fragmentsCompiler.compile(source);
+			compiledFragments.put(source, template);
+		}
+		return template;
+	}
+
 	@Get("/types")
 	@SecuredAction(value = "timeline.auth", type = ActionType.AUTHENTICATED)
 	public void listTypes(final HttpServerRequest request) {